@@ -0,0 +1,79 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cd20.codegen.SM20Generator;
+import cd20.output.ListingGenerator;
+import cd20.parser.Node;
+import cd20.parser.Parser;
+import cd20.symboltable.SymbolTableManager;
+
+/**
+ * Measures generating an SM20 module from a parsed program.
+ *
+ * Generation assigns offsets to symbols, so each invocation needs a freshly
+ * parsed program. Parsing happens in setup, and is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeGeneratorBenchmark {
+  // Only programs that compile successfully
+  @Param({
+    "simplestPossible.cd",
+    "comp.cd",
+    "functions.cd",
+    "variables.cd",
+    "synthetic-10",
+    "synthetic-100",
+    "synthetic-1000",
+  })
+  public String program;
+
+  private String source;
+  private SM20Generator generator;
+
+  @Setup
+  public void setup() throws IOException {
+    source = Programs.load(program);
+  }
+
+  @Setup(Level.Invocation)
+  public void parse() throws IOException {
+    SymbolTableManager symbolManager = new SymbolTableManager();
+    Node root = new Parser(new StringReader(source), symbolManager, new ListingGenerator(false)).parse();
+
+    if (root == null) {
+      throw new IllegalStateException("Program failed to compile: " + program);
+    }
+
+    generator = new SM20Generator(symbolManager, root);
+  }
+
+  /**
+   * Generate code and render the module, as {@link SM20Generator#writeToFile}
+   * does without its debug output.
+   */
+  @Benchmark
+  public String generateModule() {
+    return generator.generateModule();
+  }
+}
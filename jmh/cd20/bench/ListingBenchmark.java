@@ -0,0 +1,55 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cd20.output.ListingGenerator;
+import cd20.parser.Parser;
+import cd20.symboltable.SymbolTableManager;
+
+/**
+ * Measures rendering the source listing, including any annotations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+  @Param({
+    "simplestPossible.cd",
+    "functions.cd",
+    "shouldFailSemantically.cd",
+    "synthetic-10",
+    "synthetic-100",
+    "synthetic-1000",
+  })
+  public String program;
+
+  private ListingGenerator output;
+
+  @Setup
+  public void setup() throws IOException {
+    output = new ListingGenerator();
+    new Parser(new StringReader(Programs.load(program)), new SymbolTableManager(), output).parse();
+  }
+
+  @Benchmark
+  public String render() {
+    return output.toString();
+  }
+}
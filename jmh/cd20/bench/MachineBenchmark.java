@@ -0,0 +1,83 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cd20.codegen.SM20Generator;
+import cd20.output.ListingGenerator;
+import cd20.parser.Node;
+import cd20.parser.Parser;
+import cd20.symboltable.SymbolTableManager;
+import cd20.vm.Machine;
+import cd20.vm.Module;
+
+/**
+ * Measures running a compiled program on the SM20 virtual machine.
+ *
+ * Programs are compiled and loaded once in setup. Each invocation runs the
+ * program from its entry point on a freshly loaded machine, with no input.
+ * Hot code is compiled to JVM bytecode unless only the interpreter is
+ * measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MachineBenchmark {
+  // Only programs that compile successfully and need no input
+  @Param({
+    "simplestPossible.cd",
+    "comp.cd",
+    "synthetic-10",
+    "synthetic-100",
+    "synthetic-1000",
+  })
+  public String program;
+
+  @Param({"true", "false"})
+  public boolean compile;
+
+  private Module module;
+
+  @Setup
+  public void setup() throws IOException {
+    String source = Programs.load(program);
+    SymbolTableManager symbolManager = new SymbolTableManager();
+    Node root = new Parser(new StringReader(source), symbolManager, new ListingGenerator(false)).parse();
+
+    if (root == null) {
+      throw new IllegalStateException("Program failed to compile: " + program);
+    }
+
+    String text = new SM20Generator(symbolManager, root).generateModule();
+    module = Module.read(new StringReader(text));
+  }
+
+  /**
+   * Load the module and run it until it halts.
+   */
+  @Benchmark
+  public int run() {
+    StringWriter output = new StringWriter();
+    Machine machine = new Machine(module, new StringReader(""), output);
+    machine.setCompilerEnabled(compile);
+    machine.run();
+    return output.getBuffer().length();
+  }
+}
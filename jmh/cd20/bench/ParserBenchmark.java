@@ -0,0 +1,71 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cd20.output.ListingGenerator;
+import cd20.parser.Node;
+import cd20.parser.Parser;
+import cd20.scanner.MappedSourceReader;
+import cd20.scanner.Scanner;
+import cd20.symboltable.SymbolTableManager;
+
+/**
+ * Measures scanning and parsing a program into an AST, including semantic
+ * checks against the symbol table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+  @Param({
+    "simplestPossible.cd",
+    "functions.cd",
+    "areaOfPolygon.cd",
+    "synthetic-10",
+    "synthetic-100",
+    "synthetic-1000",
+  })
+  public String program;
+
+  // Whether to scan into a token buffer ahead of parsing
+  @Param({ "false", "true" })
+  public boolean tokenizeAll;
+
+  private byte[] bytes;
+
+  @Setup
+  public void setup() throws IOException {
+    bytes = Programs.load(program).getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  @Benchmark
+  public Node parse() throws IOException {
+    ListingGenerator output = new ListingGenerator(false);
+    SymbolTableManager symbolManager = new SymbolTableManager();
+    Scanner scanner = new Scanner(new MappedSourceReader(ByteBuffer.wrap(bytes)), output);
+
+    if (tokenizeAll) {
+      return new Parser(scanner.tokenizeAll().cursor(), symbolManager, output).parse();
+    }
+
+    return new Parser(scanner, symbolManager, output).parse();
+  }
+}
@@ -0,0 +1,467 @@
+package cd20.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates valid CD20 programs of a configurable size, for stress testing.
+ *
+ * Programs follow the grammar accepted by the parser: constants, then
+ * functions, then main. Only constructs that type check and that the SM20
+ * generator supports are used, so programs compile all the way to a module.
+ * Every loop is bounded and calls never recurse, so programs also run to
+ * completion without input.
+ *
+ * Note: the parser and code generator recurse once per function and once per
+ * statement, so very large programs need a larger stack, e.g. -Xss1g.
+ */
+public class ProgramGenerator {
+  private static final String NAME = "synthetic";
+  private static final int BLOCK_STATEMENTS = 3;
+  private static final String[] RELATIONAL_OPS = { "<", "<=", ">", ">=", "==", "!=" };
+  private static final String[] COMPOUND_OPS = { "+=", "-=", "*=" };
+
+  private int functions = 10;
+  private int statements = 10;
+  private int depth = 2;
+  private int iterations = 3;
+  private int constants = 5;
+  private int strings = 5;
+  private int globals = 5;
+  private long seed = 0;
+
+  private Random random;
+  private Appendable out;
+
+  /**
+   * Run the generator from the command line.
+   * Usage: ProgramGenerator <output> [--functions=N] [--statements=N]
+   * [--depth=N] [--iterations=N] [--constants=N] [--strings=N] [--globals=N]
+   * [--seed=N]
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Output path not provided.");
+      return;
+    }
+
+    ProgramGenerator generator = new ProgramGenerator();
+
+    for (int idx = 1; idx < args.length; idx++) {
+      String[] option = args[idx].split("=", 2);
+      int value;
+
+      try {
+        value = Integer.parseInt(option.length == 2 ? option[1] : "");
+      } catch (NumberFormatException exception) {
+        System.err.println("Options must be given as --name=N: '" + args[idx] + "'");
+        return;
+      }
+
+      switch (option[0]) {
+        case "--functions":
+          generator.withFunctions(value);
+          break;
+        case "--statements":
+          generator.withStatements(value);
+          break;
+        case "--depth":
+          generator.withDepth(value);
+          break;
+        case "--iterations":
+          generator.withIterations(value);
+          break;
+        case "--constants":
+          generator.withConstants(value);
+          break;
+        case "--strings":
+          generator.withStrings(value);
+          break;
+        case "--globals":
+          generator.withGlobals(value);
+          break;
+        case "--seed":
+          generator.withSeed(value);
+          break;
+        default:
+          System.err.println("Unknown option: '" + args[idx] + "'");
+          return;
+      }
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.ISO_8859_1)) {
+      generator.generate(writer);
+    }
+  }
+
+  /**
+   * @param functions Number of functions, each of which is called from main.
+   */
+  public ProgramGenerator withFunctions(int functions) {
+    this.functions = functions;
+    return this;
+  }
+
+  /**
+   * @param statements Number of top level statements in main and in each
+   * function body. Must be at least one.
+   */
+  public ProgramGenerator withStatements(int statements) {
+    this.statements = Math.max(1, statements);
+    return this;
+  }
+
+  /**
+   * @param depth Maximum nesting of if and for statements.
+   */
+  public ProgramGenerator withDepth(int depth) {
+    this.depth = depth;
+    return this;
+  }
+
+  /**
+   * @param iterations Number of times each for loop runs. Loops nest, so
+   * keep this small along with a large depth.
+   */
+  public ProgramGenerator withIterations(int iterations) {
+    this.iterations = iterations;
+    return this;
+  }
+
+  /**
+   * @param constants Number of integer constants in the constants section.
+   */
+  public ProgramGenerator withConstants(int constants) {
+    this.constants = constants;
+    return this;
+  }
+
+  /**
+   * @param strings Number of distinct string literals to print.
+   */
+  public ProgramGenerator withStrings(int strings) {
+    this.strings = strings;
+    return this;
+  }
+
+  /**
+   * @param globals Number of variables declared in main.
+   */
+  public ProgramGenerator withGlobals(int globals) {
+    this.globals = globals;
+    return this;
+  }
+
+  /**
+   * @param seed Seed for choosing statements. The same seed and sizes always
+   * produce the same program.
+   */
+  public ProgramGenerator withSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Generate a program into a String.
+   */
+  public String generate() {
+    StringBuilder builder = new StringBuilder();
+
+    try {
+      generate(builder);
+    } catch (IOException exception) {
+      // StringBuilder never throws
+      throw new RuntimeException(exception);
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Generate a program straight to an output.
+   * @param out Output to write to.
+   */
+  public void generate(Appendable out) throws IOException {
+    this.random = new Random(seed);
+    this.out = out;
+
+    line(0, "CD20 " + NAME);
+    line(0, "");
+
+    List<String> constantNames = generateConstants();
+
+    for (int idx = 0; idx < functions; idx++) {
+      generateFunction(idx, constantNames);
+    }
+
+    generateMain(constantNames);
+
+    line(0, "CD20 " + NAME);
+  }
+
+  /**
+   * Generate the constants section.
+   * @return Names of the generated constants.
+   */
+  private List<String> generateConstants() throws IOException {
+    List<String> names = new ArrayList<>();
+    if (constants == 0) return names;
+
+    line(0, "constants");
+
+    for (int idx = 0; idx < constants; idx++) {
+      String name = "c" + idx;
+      names.add(name);
+      line(1, name + " = " + random.nextInt(100) + (idx + 1 < constants ? "," : ""));
+    }
+
+    line(0, "");
+    return names;
+  }
+
+  /**
+   * Generate a function. Each function after the first calls one earlier
+   * function, so that call chains are only logarithmic in length.
+   * @param index Function index.
+   * @param constantNames Names of constants in scope.
+   */
+  private void generateFunction(int index, List<String> constantNames) throws IOException {
+    Scope scope = new Scope();
+    scope.assignable.add("a");
+    scope.assignable.add("b");
+    scope.counters.push("t");
+    scope.readable.add("a");
+    scope.readable.add("b");
+    scope.readable.add("t");
+    scope.readable.addAll(constantNames);
+
+    line(0, "/**");
+    line(0, " * Generated function " + index);
+    line(0, " **/");
+    line(0, "func f" + index + "(a: int, b: int): int");
+    line(1, "t: int");
+    line(0, "begin");
+
+    // Locals start out undefined, so initialise the counter before reading it
+    line(1, "t = 0;");
+
+    generateStatements(scope, statements, 0, 1);
+
+    if (index > 0) {
+      line(1, "f" + ((index - 1) / 2) + "(" + operand(scope) + ", " + operand(scope) + ");");
+    }
+
+    line(1, "return " + expression(scope) + ";");
+    line(0, "end");
+    line(0, "");
+  }
+
+  /**
+   * Generate main, which calls every function once.
+   * @param constantNames Names of constants in scope.
+   */
+  private void generateMain(List<String> constantNames) throws IOException {
+    Scope scope = new Scope();
+    List<String> declarations = new ArrayList<>();
+
+    for (int idx = 0; idx < globals; idx++) {
+      scope.assignable.add("g" + idx);
+      declarations.add("g" + idx);
+    }
+
+    // Loop counters are never assigned to outside of their loop
+    for (int idx = depth - 1; idx >= 0; idx--) {
+      scope.counters.push("k" + idx);
+      declarations.add("k" + idx);
+    }
+
+    scope.readable.addAll(declarations);
+    scope.readable.addAll(constantNames);
+
+    line(0, "main");
+    for (int idx = 0; idx < declarations.size(); idx++) {
+      line(1, declarations.get(idx) + ": int" + (idx + 1 < declarations.size() ? "," : ""));
+    }
+    line(0, "begin");
+
+    for (String variable : scope.assignable) {
+      line(1, variable + " = " + random.nextInt(100) + ";");
+    }
+
+    for (String counter : scope.counters) {
+      line(1, counter + " = 0;");
+    }
+
+    generateStatements(scope, statements, 0, 1);
+
+    for (int idx = 0; idx < functions; idx++) {
+      line(1, "println f" + idx + "(" + operand(scope) + ", " + operand(scope) + ");");
+    }
+
+    line(0, "end");
+    line(0, "");
+  }
+
+  /**
+   * Generate a sequence of statements.
+   * @param scope Variables in scope.
+   * @param count Number of statements.
+   * @param level Current nesting level.
+   * @param indent Current indent.
+   */
+  private void generateStatements(Scope scope, int count, int level, int indent) throws IOException {
+    for (int idx = 0; idx < count; idx++) {
+      generateStatement(scope, level, indent);
+    }
+  }
+
+  private void generateStatement(Scope scope, int level, int indent) throws IOException {
+    int choice = random.nextInt(level < depth ? 7 : 5);
+
+    // Nothing to assign to, so print instead
+    if (choice < 3 && scope.assignable.isEmpty()) {
+      choice = 3;
+    }
+
+    switch (choice) {
+      case 0:
+      case 1:
+        line(indent, pick(scope.assignable) + " = " + expression(scope) + ";");
+        return;
+      case 2:
+        line(indent, pick(scope.assignable) + " " + pick(COMPOUND_OPS) + " " + expression(scope) + ";");
+        return;
+      case 3:
+      case 4:
+        generatePrint(scope, indent);
+        return;
+      case 5:
+        generateIf(scope, level, indent);
+        return;
+      default:
+        if (scope.counters.isEmpty()) {
+          generateIf(scope, level, indent);
+        } else {
+          generateFor(scope, level, indent);
+        }
+    }
+  }
+
+  private void generatePrint(Scope scope, int indent) throws IOException {
+    if (strings > 0 && random.nextBoolean()) {
+      line(indent, "println \"Message " + random.nextInt(strings) + "\", " + expression(scope) + ";");
+    } else {
+      line(indent, "print " + expression(scope) + ";");
+    }
+  }
+
+  private void generateIf(Scope scope, int level, int indent) throws IOException {
+    line(indent, "if (" + condition(scope) + ")");
+    generateStatements(scope, 1 + random.nextInt(BLOCK_STATEMENTS), level + 1, indent + 1);
+
+    if (random.nextBoolean()) {
+      line(indent, "else");
+      generateStatements(scope, 1 + random.nextInt(BLOCK_STATEMENTS), level + 1, indent + 1);
+    }
+
+    line(indent, "end");
+  }
+
+  /**
+   * Generate a bounded for loop. The counter is taken out of scope for
+   * assignment until the loop ends.
+   */
+  private void generateFor(Scope scope, int level, int indent) throws IOException {
+    String counter = scope.counters.pop();
+
+    line(indent, "for (" + counter + " = 0; " + counter + " < " + iterations + ")");
+    generateStatements(scope, 1 + random.nextInt(BLOCK_STATEMENTS), level + 1, indent + 1);
+    line(indent + 1, counter + " += 1;");
+    line(indent, "end");
+
+    scope.counters.push(counter);
+  }
+
+  private String condition(Scope scope) {
+    String condition = operand(scope) + " " + pick(RELATIONAL_OPS) + " " + expression(scope);
+    return random.nextInt(4) == 0 ? "not " + condition : condition;
+  }
+
+  /**
+   * Generate an arithmetic expression. The parser only supports two operands
+   * at each level of precedence, so longer chains are built with parentheses.
+   */
+  private String expression(Scope scope) {
+    return expression(scope, 0);
+  }
+
+  private String expression(Scope scope, int nesting) {
+    String term = term(scope, nesting);
+    if (random.nextBoolean()) return term;
+
+    return term + (random.nextBoolean() ? " + " : " - ") + term(scope, nesting);
+  }
+
+  private String term(Scope scope, int nesting) {
+    String factor = factor(scope, nesting);
+
+    switch (random.nextInt(4)) {
+      case 0:
+        return factor + " * " + factor(scope, nesting);
+      case 1:
+        // Only ever divide by a non-zero literal
+        return factor + " / " + (1 + random.nextInt(9));
+      default:
+        return factor;
+    }
+  }
+
+  private String factor(Scope scope, int nesting) {
+    if (nesting == 0 && random.nextInt(6) == 0) {
+      return "(" + expression(scope, nesting + 1) + ")";
+    }
+
+    return operand(scope);
+  }
+
+  private String operand(Scope scope) {
+    if (scope.readable.isEmpty() || random.nextInt(3) == 0) {
+      return String.valueOf(random.nextInt(100));
+    }
+
+    return pick(scope.readable);
+  }
+
+  private String pick(List<String> options) {
+    return options.get(random.nextInt(options.size()));
+  }
+
+  private String pick(String[] options) {
+    return options[random.nextInt(options.length)];
+  }
+
+  private void line(int indent, String text) throws IOException {
+    for (int idx = 0; idx < indent; idx++) {
+      out.append("  ");
+    }
+
+    out.append(text).append('\n');
+  }
+
+  /**
+   * Variables available to statements.
+   */
+  private static class Scope {
+    private final List<String> assignable = new ArrayList<>();
+    private final List<String> readable = new ArrayList<>();
+    private final Deque<String> counters = new ArrayDeque<>();
+  }
+}
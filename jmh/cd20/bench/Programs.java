@@ -0,0 +1,38 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Source programs to run benchmarks over.
+ *
+ * Programs are named either by a file within samples/, or as "synthetic-N"
+ * for a generated program containing N functions.
+ */
+public class Programs {
+  private static final String SYNTHETIC_PREFIX = "synthetic-";
+
+  /**
+   * Load a program by name.
+   * @param name File name within samples/, or "synthetic-N".
+   * @return Program source.
+   */
+  public static String load(String name) throws IOException {
+    if (name.startsWith(SYNTHETIC_PREFIX)) {
+      return synthetic(Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length())));
+    }
+
+    byte[] bytes = Files.readAllBytes(Paths.get("samples", name));
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Generate a program that compiles.
+   * @param functions Number of functions to generate.
+   */
+  public static String synthetic(int functions) {
+    return new ProgramGenerator().withFunctions(functions).generate();
+  }
+}
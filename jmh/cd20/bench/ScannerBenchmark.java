@@ -0,0 +1,96 @@
+package cd20.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cd20.output.ListingGenerator;
+import cd20.scanner.MappedSourceReader;
+import cd20.scanner.Scanner;
+import cd20.scanner.ScannerEngine;
+import cd20.scanner.TokenBuffer;
+import cd20.scanner.TokenType;
+
+/**
+ * Measures how quickly the {@link Scanner} turns source into tokens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+  @Param({
+    "simplestPossible.cd",
+    "functions.cd",
+    "exhaustiveSample.cd",
+    "synthetic-10",
+    "synthetic-100",
+    "synthetic-1000",
+  })
+  public String program;
+
+  @Param({ "HAND_WRITTEN", "TABLE_DRIVEN" })
+  public ScannerEngine engine;
+
+  private String source;
+  private byte[] bytes;
+
+  @Setup
+  public void setup() throws IOException {
+    source = Programs.load(program);
+    bytes = source.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Pull tokens one at a time through a {@link java.io.Reader}.
+   */
+  @Benchmark
+  public int nextTokenReader() throws IOException {
+    return scan(new Scanner(new StringReader(source), new ListingGenerator(false)));
+  }
+
+  /**
+   * Pull tokens one at a time from a buffer, as when scanning a mapped file.
+   */
+  @Benchmark
+  public int nextTokenBuffer() throws IOException {
+    return scan(new Scanner(new MappedSourceReader(ByteBuffer.wrap(bytes)), new ListingGenerator(false)));
+  }
+
+  /**
+   * Scan the whole source into a {@link TokenBuffer} up front.
+   */
+  @Benchmark
+  public TokenBuffer tokenizeAll() throws IOException {
+    Scanner scanner = new Scanner(new MappedSourceReader(ByteBuffer.wrap(bytes)), new ListingGenerator(false));
+    scanner.setEngine(engine);
+    return scanner.tokenizeAll();
+  }
+
+  private int scan(Scanner scanner) throws IOException {
+    scanner.setEngine(engine);
+
+    int count = 0;
+    while (scanner.nextToken().getType() != TokenType.EOF) {
+      count++;
+    }
+
+    return count;
+  }
+}
@@ -1,12 +1,19 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import cd20.output.ListingGenerator;
 import cd20.scanner.Scanner;
+import cd20.scanner.ScannerEngine;
 import cd20.scanner.Token;
 import cd20.scanner.TokenType;
 
@@ -18,6 +25,10 @@ public class A1 {
     this.scanner = new Scanner(reader, outputController);
   }
 
+  public A1(Path path) throws IOException {
+    this.scanner = new Scanner(path, outputController);
+  }
+
   public void run() throws IOException {
     int lineWidth = 0;
 
@@ -45,31 +56,39 @@ public class A1 {
     }
 
     System.out.println('\n');
-    System.out.println(outputController.toString());
-    outputController.writeToFile("listing.txt");
+
+    // Output listing to file and stdout in a single pass
+    Writer stdout = new BufferedWriter(new OutputStreamWriter(System.out));
+    outputController.writeToFile("listing.txt", stdout);
+    stdout.append('\n');
+    stdout.flush();
   }
 
   public static void main(String[] args) {
-    Reader reader;
-
-    if (args.length < 1) {
-      // Read from stdin
-      reader = new InputStreamReader(System.in);
-    } else {
-      // Read from file at path
-      File file = new File(args[0]);
-
-      try {
-        reader = new FileReader(file);
-      } catch (FileNotFoundException exception) {
-        System.err.println("File not found: '" + args[0] + "'");
+    List<String> arguments = new ArrayList<>(Arrays.asList(args));
+    boolean tableDriven = arguments.remove("--table-driven");
+    Path path = null;
+
+    if (!arguments.isEmpty()) {
+      path = Paths.get(arguments.get(0));
+
+      if (!Files.isRegularFile(path)) {
+        System.err.println("File not found: '" + arguments.get(0) + "'");
         return;
       }
     }
 
     // Attempt to run app
     try {
-      new A1(reader).run();
+      A1 app = path == null
+        ? new A1(new InputStreamReader(System.in)) // Read from stdin
+        : new A1(path); // Read from file at path
+
+      if (tableDriven) {
+        app.scanner.setEngine(ScannerEngine.TABLE_DRIVEN);
+      }
+
+      app.run();
     } catch (IOException exception) {
       exception.printStackTrace();
     }
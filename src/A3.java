@@ -1,30 +1,57 @@
 import cd20.StringUtils;
+import cd20.codegen.JVMGenerator;
 import cd20.codegen.SM20Generator;
 import cd20.output.HTMLBuilder;
 import cd20.output.ListingGenerator;
 import cd20.parser.Node;
 import cd20.parser.Parser;
+import cd20.scanner.Scanner;
+import cd20.scanner.TokenBuffer;
 import cd20.symboltable.SymbolTableManager;
 
 import java.awt.Desktop;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
 public class A3 {
   private static final String LISTING_EXTENSION = ".lst";
   private static final String MODULE_EXTENSION = ".mod";
+  private static final String JAR_EXTENSION = ".jar";
   private static final String AST_OUTPUT_PATH = "ast.html";
 
   // Represents the output path before any extensions are applied.
   // e.g. ~/workspace/file.cd would become ~/workspace/file
   private final String outputBasePath;
   private final boolean shouldOpenAst;
+  private final boolean shouldTokenizeAll;
+  private final boolean shouldWriteJar;
   private final ListingGenerator output;
 
   public A3(String outputPath, boolean shouldOpenAst) {
+    this(outputPath, shouldOpenAst, false);
+  }
+
+  /**
+   * @param shouldTokenizeAll Whether to scan the whole file into
+   * a {@link TokenBuffer} before parsing.
+   */
+  public A3(String outputPath, boolean shouldOpenAst, boolean shouldTokenizeAll) {
+    this(outputPath, shouldOpenAst, shouldTokenizeAll, false);
+  }
+
+  /**
+   * @param shouldWriteJar Whether to also compile the program to a runnable
+   * jar, with {@link JVMGenerator}.
+   */
+  public A3(String outputPath, boolean shouldOpenAst, boolean shouldTokenizeAll, boolean shouldWriteJar) {
     this.outputBasePath = StringUtils.stripExtension(outputPath);
     this.shouldOpenAst = shouldOpenAst;
+    this.shouldTokenizeAll = shouldTokenizeAll;
+    this.shouldWriteJar = shouldWriteJar;
     this.output = new ListingGenerator();
   }
 
@@ -32,15 +59,33 @@ public class A3 {
    * Run the application
    */
   public void run(Reader reader) throws IOException {
-    SymbolTableManager symbolManager = new SymbolTableManager();
+    run(new Parser(reader, new SymbolTableManager(), output));
+  }
+
+  /**
+   * Run the application over a source file.
+   */
+  public void run(Path path) throws IOException {
+    if (shouldTokenizeAll) {
+      TokenBuffer tokens = new Scanner(path, output).tokenizeAll();
+      run(new Parser(tokens.cursor(), new SymbolTableManager(), output));
+      return;
+    }
+
+    run(new Parser(path, new SymbolTableManager(), output));
+  }
+
+  private void run(Parser parser) throws IOException {
+    SymbolTableManager symbolManager = parser.getSymbolManager();
 
     // Parse
-    Parser parser = new Parser(reader, symbolManager, output);
     Node rootNode = parser.parse();
 
-    // Output listing
-    output.writeToFile(this.outputBasePath + LISTING_EXTENSION);
-    System.out.println(output.toString());
+    // Output listing to file and stdout in a single pass
+    Writer stdout = new BufferedWriter(new OutputStreamWriter(System.out));
+    output.writeToFile(this.outputBasePath + LISTING_EXTENSION, stdout);
+    stdout.append('\n');
+    stdout.flush();
 
     if (rootNode == null) {
       System.out.println("Compilation failed.");
@@ -64,10 +109,27 @@ public class A3 {
       Desktop.getDesktop().open(new File(AST_OUTPUT_PATH));
     } 
 
+    // Check the program can be compiled to the JVM before generating anything
+    JVMGenerator jvmGenerator = null;
+    if (this.shouldWriteJar) {
+      jvmGenerator = new JVMGenerator(symbolManager, rootNode);
+      String construct = jvmGenerator.findUnsupported();
+
+      if (construct != null) {
+        System.out.println("Cannot compile to JVM, which doesn't support " + construct + ".");
+        System.out.println("No jar will be written.");
+        jvmGenerator = null;
+      }
+    }
+
     // Generate code
     SM20Generator generator = new SM20Generator(symbolManager, rootNode);
     generator.writeToFile(this.outputBasePath + MODULE_EXTENSION);
 
+    if (jvmGenerator != null) {
+      jvmGenerator.writeToFile(this.outputBasePath + JAR_EXTENSION);
+    }
+
     System.out.println(this.outputBasePath + " compiled successfully");
   }
 
@@ -80,19 +142,21 @@ public class A3 {
     }
 
     // Read from file at path
-    File file = new File(args[0]);
-    Reader reader;
+    Path path = Paths.get(args[0]);
 
-    try {
-      reader = new FileReader(file);
-    } catch (FileNotFoundException exception) {
+    if (!Files.isRegularFile(path)) {
       System.err.println("File not found: '" + args[0] + "'");
       return;
     }
 
     // Attempt to run app
     try {
-      new A3(arguments.get(0), arguments.contains("--open-ast")).run(reader);
+      new A3(
+        arguments.get(0),
+        arguments.contains("--open-ast"),
+        arguments.contains("--tokenize-all"),
+        arguments.contains("--jar")
+      ).run(path);
     } catch (IOException exception) {
       exception.printStackTrace();
     }
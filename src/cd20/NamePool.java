@@ -0,0 +1,88 @@
+package cd20;
+
+/**
+ * A pool of the identifier names in a single source file.
+ *
+ * Every name is stored exactly once, so interned names may be compared by
+ * reference. Names can be interned straight from a {@link CharSequence}
+ * slice, which only allocates a String the first time a name is seen.
+ *
+ * Each {@link cd20.scanner.Scanner} owns its own pool, so names don't
+ * outlive a compile. Pools aren't thread safe.
+ */
+public class NamePool {
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private String[] names = new String[1024];
+  private int size = 0;
+
+  /**
+   * Get the canonical instance of a name.
+   * @param name Name to intern. May be null.
+   * @return Interned name, or null.
+   */
+  public String intern(CharSequence name) {
+    if (name == null) return null;
+
+    int hash = hash(name);
+    int mask = names.length - 1;
+
+    // Linear probe until we find the name or an empty slot
+    for (int idx = hash & mask; ; idx = (idx + 1) & mask) {
+      String candidate = names[idx];
+
+      if (candidate == null) {
+        String string = name.toString();
+        names[idx] = string;
+
+        if (++size > names.length * LOAD_FACTOR) {
+          grow();
+        }
+
+        return string;
+      }
+
+      if (candidate.hashCode() == hash && contentEquals(candidate, name)) {
+        return candidate;
+      }
+    }
+  }
+
+  /**
+   * Hash a sequence exactly as {@link String#hashCode()} would.
+   */
+  private static int hash(CharSequence name) {
+    if (name instanceof String) {
+      return name.hashCode();
+    }
+
+    int hash = 0;
+    for (int idx = 0; idx < name.length(); idx++) {
+      hash = 31 * hash + name.charAt(idx);
+    }
+
+    return hash;
+  }
+
+  private static boolean contentEquals(String candidate, CharSequence name) {
+    if (candidate == name) return true;
+    return candidate.contentEquals(name);
+  }
+
+  private void grow() {
+    String[] old = names;
+    names = new String[old.length * 2];
+    int mask = names.length - 1;
+
+    for (String name : old) {
+      if (name == null) continue;
+
+      int idx = name.hashCode() & mask;
+      while (names[idx] != null) {
+        idx = (idx + 1) & mask;
+      }
+
+      names[idx] = name;
+    }
+  }
+}
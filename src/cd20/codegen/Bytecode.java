@@ -0,0 +1,488 @@
+package cd20.codegen;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles the code of a method in a {@link ClassFile}.
+ *
+ * Only the instructions that the JVM backends need are supported. The depth
+ * of the operand stack is tracked as instructions are added, assuming that
+ * it's the same on every path to a label.
+ */
+public class Bytecode {
+  public static final int ICONST_0 = 3;
+  public static final int LCONST_0 = 9;
+  public static final int LCONST_1 = 10;
+  public static final int DCONST_0 = 14;
+  public static final int DCONST_1 = 15;
+  public static final int BIPUSH = 16;
+  public static final int SIPUSH = 17;
+  public static final int LDC_W = 19;
+  public static final int LDC2_W = 20;
+  public static final int ILOAD = 21;
+  public static final int LLOAD = 22;
+  public static final int DLOAD = 24;
+  public static final int ALOAD = 25;
+  public static final int IALOAD = 46;
+  public static final int LALOAD = 47;
+  public static final int BALOAD = 51;
+  public static final int ISTORE = 54;
+  public static final int LSTORE = 55;
+  public static final int DSTORE = 57;
+  public static final int ASTORE = 58;
+  public static final int IASTORE = 79;
+  public static final int LASTORE = 80;
+  public static final int BASTORE = 84;
+  public static final int POP = 87;
+  public static final int POP2 = 88;
+  public static final int DUP = 89;
+  public static final int IADD = 96;
+  public static final int LADD = 97;
+  public static final int DADD = 99;
+  public static final int ISUB = 100;
+  public static final int LSUB = 101;
+  public static final int DSUB = 103;
+  public static final int LMUL = 105;
+  public static final int DMUL = 107;
+  public static final int LDIV = 109;
+  public static final int DDIV = 111;
+  public static final int ISHL = 120;
+  public static final int IAND = 126;
+  public static final int LAND = 127;
+  public static final int IOR = 128;
+  public static final int LOR = 129;
+  public static final int IXOR = 130;
+  public static final int LXOR = 131;
+  public static final int IINC = 132;
+  public static final int I2L = 133;
+  public static final int L2D = 138;
+  public static final int D2L = 143;
+  public static final int LCMP = 148;
+  public static final int DCMPL = 151;
+  public static final int DCMPG = 152;
+  public static final int IFEQ = 153;
+  public static final int IFNE = 154;
+  public static final int IFLT = 155;
+  public static final int IFGE = 156;
+  public static final int IFGT = 157;
+  public static final int IFLE = 158;
+  public static final int IF_ICMPEQ = 159;
+  public static final int IF_ICMPNE = 160;
+  public static final int IF_ICMPLT = 161;
+  public static final int IF_ICMPGE = 162;
+  public static final int IF_ICMPGT = 163;
+  public static final int IF_ICMPLE = 164;
+  public static final int GOTO = 167;
+  public static final int IRETURN = 172;
+  public static final int LRETURN = 173;
+  public static final int DRETURN = 175;
+  public static final int RETURN = 177;
+  public static final int GETSTATIC = 178;
+  public static final int PUTSTATIC = 179;
+  public static final int INVOKEVIRTUAL = 182;
+  public static final int INVOKESPECIAL = 183;
+  public static final int INVOKESTATIC = 184;
+  public static final int NEW = 187;
+  public static final int ARRAYLENGTH = 190;
+  public static final int ATHROW = 191;
+  public static final int WIDE = 196;
+
+  /**
+   * A position in the code, which may be jumped to before it's placed.
+   */
+  public static final class Label {
+    private int position = -1;
+    private int depth = -1;
+    private final List<Integer> jumps = new ArrayList<>();
+  }
+
+  private final ClassFile file;
+
+  private byte[] code = new byte[256];
+  private int size = 0;
+
+  private int depth = 0;
+  private int maxDepth = 0;
+
+  // Start, end and handler of each exception handler, catching anything
+  private final List<Label[]> handlers = new ArrayList<>();
+
+  /**
+   * @param file Class that the code belongs to, which holds its constants.
+   */
+  public Bytecode(ClassFile file) {
+    this.file = file;
+  }
+
+  /**
+   * Get the number of bytes of code so far.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the deepest the operand stack gets, in slots.
+   */
+  public int getMaxStack() {
+    return maxDepth;
+  }
+
+  /**
+   * Append an instruction without operands.
+   */
+  public void op(int opcode) {
+    put(opcode);
+    adjust(effect(opcode));
+
+    if (isTerminal(opcode)) depth = 0;
+  }
+
+  /**
+   * Append an instruction which takes a local variable.
+   */
+  public void local(int opcode, int index) {
+    if (index > 0xFF) {
+      put(WIDE);
+      put(opcode);
+      putShort(index);
+    } else {
+      put(opcode);
+      put(index);
+    }
+
+    adjust(effect(opcode));
+  }
+
+  /**
+   * Add to an int local variable.
+   */
+  public void increment(int index, int amount) {
+    if (index > 0xFF || amount < Byte.MIN_VALUE || amount > Byte.MAX_VALUE) {
+      put(WIDE);
+      put(IINC);
+      putShort(index);
+      putShort(amount);
+    } else {
+      put(IINC);
+      put(index);
+      put(amount);
+    }
+  }
+
+  /**
+   * Push an int constant.
+   */
+  public void pushInt(int value) {
+    if (value >= -1 && value <= 5) {
+      put(ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      put(BIPUSH);
+      put(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      put(SIPUSH);
+      putShort(value);
+    } else {
+      put(LDC_W);
+      putShort(file.integer(value));
+    }
+
+    adjust(1);
+  }
+
+  /**
+   * Push a long constant.
+   */
+  public void pushLong(long value) {
+    if (value == 0 || value == 1) {
+      put(LCONST_0 + (int) value);
+    } else {
+      put(LDC2_W);
+      putShort(file.longConstant(value));
+    }
+
+    adjust(2);
+  }
+
+  /**
+   * Push a double constant.
+   */
+  public void pushDouble(double value) {
+    if (Double.doubleToRawLongBits(value) == 0) {
+      put(DCONST_0);
+    } else if (value == 1) {
+      put(DCONST_1);
+    } else {
+      put(LDC2_W);
+      putShort(file.doubleConstant(value));
+    }
+
+    adjust(2);
+  }
+
+  /**
+   * Push a string constant.
+   */
+  public void pushString(String value) {
+    put(LDC_W);
+    putShort(file.string(value));
+    adjust(1);
+  }
+
+  /**
+   * Append an instruction which takes a class, e.g. NEW.
+   * @param name Internal name of the class.
+   */
+  public void type(int opcode, String name) {
+    put(opcode);
+    putShort(file.classReference(name));
+    adjust(opcode == NEW ? 1 : 0);
+  }
+
+  /**
+   * Append GETSTATIC or PUTSTATIC.
+   */
+  public void field(int opcode, String owner, String name, String descriptor) {
+    put(opcode);
+    putShort(file.fieldReference(owner, name, descriptor));
+
+    int slots = size(descriptor.charAt(0));
+    adjust(opcode == GETSTATIC ? slots : -slots);
+  }
+
+  /**
+   * Append an INVOKEVIRTUAL, INVOKESPECIAL or INVOKESTATIC.
+   */
+  public void invoke(int opcode, String owner, String name, String descriptor) {
+    put(opcode);
+    putShort(file.methodReference(owner, name, descriptor));
+
+    int end = descriptor.indexOf(')');
+    int effect = size(descriptor.charAt(end + 1));
+    if (opcode != INVOKESTATIC) effect--;
+
+    for (int i = 1; i < end; i++) {
+      char type = descriptor.charAt(i);
+      effect -= size(type);
+
+      if (type == 'L') {
+        i = descriptor.indexOf(';', i);
+      } else if (type == '[') {
+        throw new UnsupportedOperationException("Array parameters: " + descriptor);
+      }
+    }
+
+    adjust(effect);
+  }
+
+  /**
+   * Append a branch to a label.
+   */
+  public void jump(int opcode, Label label) {
+    int position = size;
+    put(opcode);
+
+    if (label.position >= 0) {
+      putShort(offset(label.position - position));
+    } else {
+      label.jumps.add(position);
+      putShort(0);
+    }
+
+    adjust(effect(opcode));
+    label.depth = depth;
+
+    if (opcode == GOTO) depth = 0;
+  }
+
+  /**
+   * Place a label at the current position.
+   */
+  public void mark(Label label) {
+    label.position = size;
+
+    for (int position : label.jumps) {
+      int offset = offset(size - position);
+      code[position + 1] = (byte) (offset >> 8);
+      code[position + 2] = (byte) offset;
+    }
+
+    label.jumps.clear();
+
+    if (label.depth >= 0) depth = label.depth;
+  }
+
+  /**
+   * Catch any exception thrown between two labels. The handler is entered
+   * with just the exception on the stack.
+   * @param start Start of the covered code.
+   * @param end End of the covered code, exclusive.
+   * @param handler Start of the handler.
+   */
+  public void addHandler(Label start, Label end, Label handler) {
+    handlers.add(new Label[] { start, end, handler });
+    handler.depth = 1;
+  }
+
+  int getHandlerCount() {
+    return handlers.size();
+  }
+
+  /**
+   * Write the length of the code, the code itself and then its exception
+   * table, as they appear in a Code attribute.
+   */
+  void writeTo(DataOutputStream output) throws IOException {
+    output.writeInt(size);
+    output.write(code, 0, size);
+    output.writeShort(handlers.size());
+
+    for (Label[] handler : handlers) {
+      output.writeShort(handler[0].position);
+      output.writeShort(handler[1].position);
+      output.writeShort(handler[2].position);
+      output.writeShort(0);
+    }
+  }
+
+  private static int offset(int offset) {
+    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+      throw new IllegalStateException("Branch is too far: " + offset + " bytes");
+    }
+
+    return offset;
+  }
+
+  private void adjust(int effect) {
+    depth += effect;
+    maxDepth = Math.max(maxDepth, depth);
+  }
+
+  /**
+   * Get the number of stack slots a value of a type takes up.
+   * @param type First character of a field descriptor.
+   */
+  private static int size(char type) {
+    switch (type) {
+      case 'V':
+        return 0;
+      case 'J':
+      case 'D':
+        return 2;
+      default:
+        return 1;
+    }
+  }
+
+  private static boolean isTerminal(int opcode) {
+    switch (opcode) {
+      case IRETURN:
+      case LRETURN:
+      case DRETURN:
+      case RETURN:
+      case ATHROW:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Get how many slots an instruction pushes, less those it pops.
+   */
+  private static int effect(int opcode) {
+    switch (opcode) {
+      case LCONST_0:
+      case LCONST_1:
+      case DCONST_0:
+      case DCONST_1:
+      case LLOAD:
+      case DLOAD:
+        return 2;
+      case ILOAD:
+      case ALOAD:
+      case DUP:
+      case I2L:
+        return 1;
+      case LALOAD:
+      case L2D:
+      case D2L:
+      case ARRAYLENGTH:
+      case GOTO:
+        return 0;
+      case IALOAD:
+      case BALOAD:
+      case ISTORE:
+      case ASTORE:
+      case POP:
+      case IADD:
+      case ISUB:
+      case ISHL:
+      case IAND:
+      case IOR:
+      case IXOR:
+      case IFEQ:
+      case IFNE:
+      case IFLT:
+      case IFGE:
+      case IFGT:
+      case IFLE:
+      case IRETURN:
+      case ATHROW:
+        return -1;
+      case LSTORE:
+      case DSTORE:
+      case POP2:
+      case LADD:
+      case DADD:
+      case LSUB:
+      case DSUB:
+      case LMUL:
+      case DMUL:
+      case LDIV:
+      case DDIV:
+      case LAND:
+      case LOR:
+      case LXOR:
+      case IF_ICMPEQ:
+      case IF_ICMPNE:
+      case IF_ICMPLT:
+      case IF_ICMPGE:
+      case IF_ICMPGT:
+      case IF_ICMPLE:
+      case LRETURN:
+      case DRETURN:
+        return -2;
+      case IASTORE:
+      case BASTORE:
+      case LCMP:
+      case DCMPL:
+      case DCMPG:
+        return -3;
+      case LASTORE:
+        return -4;
+      case RETURN:
+        return 0;
+      default:
+        if (opcode >= ICONST_0 - 1 && opcode <= ICONST_0 + 5) return 1;
+        throw new IllegalArgumentException("Unsupported instruction: " + opcode);
+    }
+  }
+
+  private void put(int value) {
+    if (size == code.length) {
+      code = Arrays.copyOf(code, size * 2);
+    }
+
+    code[size++] = (byte) value;
+  }
+
+  private void putShort(int value) {
+    put(value >> 8);
+    put(value);
+  }
+}
@@ -0,0 +1,251 @@
+package cd20.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JVM class file: its constant pool, static fields and static
+ * methods.
+ *
+ * Classes are written in the Java 5 format, so that they are checked by the
+ * type inferencing verifier and methods don't need stack map frames.
+ */
+public class ClassFile {
+  public static final int ACC_PUBLIC = 0x0001;
+  public static final int ACC_PRIVATE = 0x0002;
+  public static final int ACC_STATIC = 0x0008;
+  public static final int ACC_FINAL = 0x0010;
+
+  private static final int ACC_SUPER = 0x0020;
+  private static final int JAVA_5 = 49;
+  private static final int MAX_CODE_SIZE = 0xFFFF;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELD = 9;
+  private static final int CONSTANT_METHOD = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private final String name;
+
+  private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+  private final DataOutputStream poolOutput = new DataOutputStream(pool);
+  private final Map<List<Object>, Integer> constants = new HashMap<>();
+  private int poolCount = 1;
+
+  private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+  private final DataOutputStream fieldOutput = new DataOutputStream(fields);
+  private int fieldCount = 0;
+
+  private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+  private final DataOutputStream methodOutput = new DataOutputStream(methods);
+  private int methodCount = 0;
+
+  /**
+   * @param name Internal name of the class, e.g. {@code a/b/C}.
+   */
+  public ClassFile(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Add a static field.
+   * @param access Access flags, e.g. {@link #ACC_PRIVATE}.
+   * @param name Field name.
+   * @param descriptor Field descriptor, e.g. {@code J}.
+   */
+  public void addField(int access, String name, String descriptor) {
+    try {
+      fieldOutput.writeShort(access | ACC_STATIC);
+      fieldOutput.writeShort(utf8(name));
+      fieldOutput.writeShort(utf8(descriptor));
+      fieldOutput.writeShort(0);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+
+    fieldCount++;
+  }
+
+  /**
+   * Add a static method.
+   * @param access Access flags, e.g. {@link #ACC_PUBLIC}.
+   * @param name Method name.
+   * @param descriptor Method descriptor, e.g. {@code (J)V}.
+   * @param code The method's code, which must have been written for this
+   * class.
+   * @param maxStack Maximum depth of the operand stack.
+   * @param maxLocals Number of local variable slots, including parameters.
+   */
+  public void addMethod(int access, String name, String descriptor, Bytecode code, int maxStack, int maxLocals) {
+    if (code.size() > MAX_CODE_SIZE) {
+      throw new IllegalStateException("Method is too large: " + name);
+    }
+
+    int codeAttribute = utf8("Code");
+    int handlerCount = code.getHandlerCount();
+
+    try {
+      methodOutput.writeShort(access | ACC_STATIC);
+      methodOutput.writeShort(utf8(name));
+      methodOutput.writeShort(utf8(descriptor));
+      methodOutput.writeShort(1);
+
+      methodOutput.writeShort(codeAttribute);
+      methodOutput.writeInt(12 + code.size() + handlerCount * 8);
+      methodOutput.writeShort(maxStack);
+      methodOutput.writeShort(maxLocals);
+      code.writeTo(methodOutput);
+      methodOutput.writeShort(0);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+
+    methodCount++;
+  }
+
+  /**
+   * Write the class file.
+   */
+  public byte[] toByteArray() {
+    int thisClass = classReference(name);
+    int superClass = classReference("java/lang/Object");
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(pool.size() + fields.size() + methods.size() + 32);
+      DataOutputStream output = new DataOutputStream(bytes);
+
+      output.writeInt(0xCAFEBABE);
+      output.writeShort(0);
+      output.writeShort(JAVA_5);
+      output.writeShort(poolCount);
+      pool.writeTo(output);
+
+      output.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      output.writeShort(thisClass);
+      output.writeShort(superClass);
+      output.writeShort(0);
+
+      output.writeShort(fieldCount);
+      fields.writeTo(output);
+      output.writeShort(methodCount);
+      methods.writeTo(output);
+
+      output.writeShort(0);
+      return bytes.toByteArray();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  int utf8(String value) {
+    return constant(CONSTANT_UTF8, value);
+  }
+
+  int integer(int value) {
+    return constant(CONSTANT_INTEGER, value);
+  }
+
+  int longConstant(long value) {
+    return constant(CONSTANT_LONG, value);
+  }
+
+  int doubleConstant(double value) {
+    // Compare bits, so that e.g. 0.0 and -0.0 are different constants
+    return constant(CONSTANT_DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  int string(String value) {
+    return constant(CONSTANT_STRING, value);
+  }
+
+  int classReference(String name) {
+    return constant(CONSTANT_CLASS, name);
+  }
+
+  int fieldReference(String owner, String name, String descriptor) {
+    return constant(CONSTANT_FIELD, Arrays.asList(owner, name, descriptor));
+  }
+
+  int methodReference(String owner, String name, String descriptor) {
+    return constant(CONSTANT_METHOD, Arrays.asList(owner, name, descriptor));
+  }
+
+  /**
+   * Get the index of a constant, adding it to the pool if necessary.
+   */
+  private int constant(int tag, Object value) {
+    List<Object> key = Arrays.asList(tag, value);
+    Integer index = constants.get(key);
+    if (index != null) return index;
+
+    try {
+      switch (tag) {
+        case CONSTANT_UTF8:
+          poolOutput.writeByte(tag);
+          poolOutput.writeUTF((String) value);
+          break;
+        case CONSTANT_INTEGER:
+          poolOutput.writeByte(tag);
+          poolOutput.writeInt((Integer) value);
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          poolOutput.writeByte(tag);
+          poolOutput.writeLong((Long) value);
+          break;
+        case CONSTANT_FIELD:
+        case CONSTANT_METHOD: {
+          List<?> member = (List<?>) value;
+          int owner = classReference((String) member.get(0));
+          int nameAndType = constant(CONSTANT_NAME_AND_TYPE, member.subList(1, 3));
+          poolOutput.writeByte(tag);
+          poolOutput.writeShort(owner);
+          poolOutput.writeShort(nameAndType);
+          break;
+        }
+        case CONSTANT_NAME_AND_TYPE: {
+          List<?> member = (List<?>) value;
+          int name = utf8((String) member.get(0));
+          int descriptor = utf8((String) member.get(1));
+          poolOutput.writeByte(tag);
+          poolOutput.writeShort(name);
+          poolOutput.writeShort(descriptor);
+          break;
+        }
+        default:
+          int text = utf8((String) value);
+          poolOutput.writeByte(tag);
+          poolOutput.writeShort(text);
+          break;
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+
+    index = poolCount;
+    constants.put(key, index);
+
+    // Longs and doubles take up two entries
+    poolCount += tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE ? 2 : 1;
+    if (poolCount > 0xFFFF) {
+      throw new IllegalStateException("Too many constants in class " + name);
+    }
+
+    return index;
+  }
+}
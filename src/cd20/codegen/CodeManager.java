@@ -1,47 +1,158 @@
 package cd20.codegen;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.StringJoiner;
 
-import cd20.codegen.generators.Generator;
 import cd20.ByteUtils;
-import cd20.codegen.generators.FloatConstantGenerator;
-import cd20.codegen.generators.InstructionGenerator;
-import cd20.codegen.generators.IntegerConstantGenerator;
-import cd20.codegen.generators.StringConstantGenerator;
+import cd20.StringUtils;
+import cd20.symboltable.BaseRegister;
 import cd20.symboltable.Symbol;
+import cd20.symboltable.SymbolBuilder;
+import cd20.symboltable.SymbolType;
 
+/**
+ * Collects generated code and constants, and links them into a module.
+ *
+ * Instructions are encoded into a growable code buffer as they are inserted.
+ * Loads whose symbol address isn't known yet are recorded as relocations, and
+ * patched in place once constants have been laid out.
+ */
 public class CodeManager {
-  private Map<Integer, Instruction> instructions = new LinkedHashMap<>();
-  private List<Constant<Integer>> integerConstants = new ArrayList<>();
-  private List<Constant<Float>> floatConstants = new ArrayList<>();
-  private List<Constant<String>> stringConstants = new ArrayList<>();
+  private byte[] code = new byte[256];
   private int codeGenerationPosition = 0;
   private int lastInstruction = 0;
+  private int instructionCount = 0;
+
+  private final RelocationTable relocations = new RelocationTable();
+  private final ConstantPool constants = new ConstantPool();
+  private boolean isLinked = false;
+
+  /**
+   * Insert a new operation, which takes no operands.
+   * @param operation Operation to insert.
+   * @return Code generation position of instruction.
+   */
+  public int insert(Operation operation) {
+    return insert(operation, 0);
+  }
 
   /**
    * Insert a new instruction.
-   * @param instruction Instruction to insert.
+   * @param operation Operation to insert.
+   * @param operand Operand, encoded in as many bytes as the operation takes.
    * @return Code generation position of instruction.
    */
-  public int insert(Instruction instruction) {
-    lastInstruction = codeGenerationPosition;
+  public int insert(Operation operation, int operand) {
+    int size = operation.getOperandSize();
     int position = codeGenerationPosition;
-    instructions.put(position, instruction);
-    codeGenerationPosition += instruction.getSize();
+    ensureCapacity(size + 1);
+
+    code[position] = (byte) operation.getCode();
+    writeOperand(position + 1, size, operand);
+
+    lastInstruction = position;
+    codeGenerationPosition += size + 1;
+    instructionCount++;
     return position;
   }
 
   /**
-   * Insert a new operation.
-   * @param operation Operation to insert.
+   * Insert a load that needs a symbol's address, which will be backfilled
+   * once it is known.
+   * @param symbol Symbol to load.
+   * @param placeholder Either {@link Operation#PLACEHOLDER_LA} or
+   * {@link Operation#PLACEHOLDER_LV}.
+   * @return Code generation position of instruction.
    */
-  public int insert(Operation operation) {
-    return insert(new Instruction(operation));
+  public int insertBackfill(Symbol symbol, Operation placeholder) {
+    int position = insert(placeholder, 0);
+    relocations.add(position, symbol, placeholder == Operation.PLACEHOLDER_LA);
+    return position;
+  }
+
+  /**
+   * Load an integer, in the shortest form that fits it. Integers that don't
+   * fit in a half word are added to the constant pool and loaded from there.
+   * @param value Integer to load.
+   * @return Code generation position of instruction.
+   */
+  public int insertInteger(long value) {
+    if (value == (byte) value) {
+      return insert(Operation.LB, (int) value);
+    }
+
+    if (value == (short) value) {
+      return insert(Operation.LH, (int) value);
+    }
+
+    // No source constant to attach to, so pool the value under its own symbol
+    Symbol symbol = SymbolBuilder.fromType(SymbolType.INTEGER_CONSTANT)
+      .withValue(String.valueOf(value))
+      .build();
+    symbol.setRegister(BaseRegister.CONSTANTS);
+    constants.addInteger(value, symbol);
+
+    return insertBackfill(symbol, Operation.PLACEHOLDER_LV);
+  }
+
+  /**
+   * Load an integer constant, immediately if it fits in a half word, or
+   * otherwise from the constant pool.
+   * @param value Integer to load.
+   * @param symbol Constant's symbol, which is in the pool if it doesn't fit.
+   * @return Code generation position of instruction.
+   */
+  public int insertInteger(long value, Symbol symbol) {
+    if (!isImmediate(value)) {
+      return insertBackfill(symbol, Operation.PLACEHOLDER_LV);
+    }
+
+    return insertInteger(value);
+  }
+
+  /**
+   * Determine whether an integer can be loaded with {@link Operation#LB} or
+   * {@link Operation#LH}, rather than from the constant pool.
+   */
+  private static boolean isImmediate(long value) {
+    return value == (short) value;
+  }
+
+  /**
+   * Replace the operand of an existing instruction.
+   * @param position Code generation position of instruction.
+   * @param operand New operand.
+   */
+  public void setOperand(int position, int operand) {
+    Operation operation = Operation.fromCode(code[position]);
+    writeOperand(position + 1, operation.getOperandSize(), operand);
+  }
+
+  /**
+   * Encode an operand, big endian.
+   * @param position Position of first operand byte.
+   * @param size Number of bytes to encode.
+   * @param operand Operand value.
+   */
+  private void writeOperand(int position, int size, int operand) {
+    for (int i = size - 1; i >= 0; i--) {
+      code[position + i] = (byte) operand;
+      operand >>>= 8;
+    }
+  }
+
+  /**
+   * Grow the code buffer to fit the given number of bytes.
+   */
+  private void ensureCapacity(int length) {
+    if (codeGenerationPosition + length > code.length) {
+      code = Arrays.copyOf(code, Math.max(code.length * 2, codeGenerationPosition + length));
+    }
   }
 
   /**
@@ -50,16 +161,20 @@ public class CodeManager {
    * @param symbol Corresponding symbol.
    */
   public void addStringConstant(String constant, Symbol symbol) {
-    stringConstants.add(new Constant<String>(constant, symbol));
+    constants.addString(constant, symbol);
   }
 
   /**
    * Add a new integer constant.
+   * Note: load it with {@link #insertInteger(long, Symbol)}.
    * @param constant Integer constant.
    * @param symbol Corresponding symbol.
    */
-  public void addIntegerConstant(Integer constant, Symbol symbol) {
-    integerConstants.add(new Constant<Integer>(constant, symbol));
+  public void addIntegerConstant(long constant, Symbol symbol) {
+    // Small constants are always loaded immediately, so needn't be stored
+    if (isImmediate(constant)) return;
+
+    constants.addInteger(constant, symbol);
   }
 
   /**
@@ -67,100 +182,92 @@ public class CodeManager {
    * @param constant Float constant.
    * @param symbol Corresponding symbol.
    */
-  public void addFloatConstant(Float constant, Symbol symbol) {
-    floatConstants.add(new Constant<Float>(constant, symbol));
+  public void addFloatConstant(double constant, Symbol symbol) {
+    constants.addFloat(constant, symbol);
   }
 
   /**
-   * Set offsets on all constants in list.
-   * @param constants A list of constants to set offsets for.
-   * @param offsetAccumulator An accumulator containing the current starting
-   * offset.
-   * @return New offset value.
+   * Backfill all relocations to include symbol offsets.
+   * Note: This function must be run after all symbols have been assigned
+   * a register and an offset.
    */
-  private <T> int setConstantOffset(List<Constant<T>> constants, int offsetAccumulator) {
-    int offset = offsetAccumulator;
-
-    for (Constant<T> constant : constants) {
-      constant.getSymbol().setOffset(offset);
+  private void backfill() {
+    for (int i = 0; i < relocations.size(); i++) {
+      int position = relocations.getPosition(i);
+      Symbol symbol = relocations.getSymbol(i);
 
-      if (constant.getValue() instanceof String) {
-        offset += ((String) constant.getValue()).length() + 1;
-      } else {
-        offset += 8;
+      if (symbol.getRegister() == null || symbol.getOffset() == Integer.MIN_VALUE) {
+        throw new RuntimeException(String.format(
+          "Encountered a symbol that was not ready to be backfilled. (%s) [%s]",
+          describe(position),
+          symbol.toString()
+        ));
       }
+
+      code[position] = (byte) relocations.getOperation(i).getCode();
+      setOperand(position, symbol.getOffset());
     }
+  }
 
-    return offset;
+  /**
+   * Assign constants their offsets, and backfill instructions with them.
+   * Note: this must be run after all code has been inserted. Subsequent calls
+   * have no effect.
+   */
+  public void link() {
+    if (isLinked) return;
+
+    // Update constant offsets now that we know where they are
+    constants.assignOffsets(ByteUtils.getNextByteBoundary(codeGenerationPosition));
+
+    // At this point, the position of all symbols will be known. Back fill.
+    backfill();
+    isLinked = true;
   }
 
   /**
-   * Backfill all instructions to include symbol offsets.
-   * Note: This function must be run after all symbols have been assigned
-   * a register and an offset.
+   * Link and write the module to a channel.
+   * See {@link ModuleWriter} for the format.
+   * @param channel Channel to write to. The channel is not closed.
    */
-  private void backfill() {
-    // Find all back fill instructions
-    for (Instruction instruction : instructions.values()) {
-      if (instruction instanceof BackfillInstruction) {
-        ((BackfillInstruction) instruction).backfill();
-      }
-    }
+  public void writeModule(WritableByteChannel channel) throws IOException {
+    link();
+    new ModuleWriter(channel).write(code, codeGenerationPosition, constants);
   }
 
   /**
-   * Generate module and backfill instructions.
-   * Format:
-   * 1. Instruction section
-   *    a. Number of lines to expect
-   *    b. Instructions, word-filled with HALT instructions.
-   * 2. Integer constants section
-   *    a. Number of values to expect
-   *    b. One line for each integer constant. May be negative.
-   * 3. Floating point constants section.
-   *    a. Number of values to expect
-   *    b. One line for reach floating point constant.
-   * 4. String constants section.
-   *    a. Number of strings to expect
-   *    b. Each string constant, delimited by null characters (00). Each new
-   *    string does not need to start on a word boundary. Word filled with null
-   *    characters (00).
+   * Link and generate the module as a String.
+   * See {@link ModuleWriter} for the format.
    */
   public String generateModule() {
-    // Update constant offsets now that we know where they are 
-    int offset = ByteUtils.getNextByteBoundary(codeGenerationPosition);
-    offset = setConstantOffset(integerConstants, offset);
-    offset = setConstantOffset(floatConstants, offset);
-    offset = setConstantOffset(stringConstants, offset);
-
-    // At this point, the position of all symbols will be known. Back fill.
-    backfill();
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
 
-    // Generate code
-    StringJoiner joiner = new StringJoiner("\n");
-    joiner.add(generate(new InstructionGenerator(), instructions.values()));
-    joiner.add(generate(new IntegerConstantGenerator(), integerConstants));
-    joiner.add(generate(new FloatConstantGenerator(), floatConstants));
-    joiner.add(generate(new StringConstantGenerator(), stringConstants));
+    try {
+      writeModule(Channels.newChannel(stream));
+    } catch (IOException exception) {
+      // Writing to memory doesn't fail
+      throw new UncheckedIOException(exception);
+    }
 
-    return joiner.toString();
+    return stream.toString();
   }
 
   /**
-   * Generate code.
-   * @param generator Generator to use.
-   * @param collection Collection to seed to generator.
-   * @return A string containing generated code and preceding size.
+   * Describe the instruction at the given position, e.g. "LB    (41): 05".
+   * @param position Code generation position of instruction.
    */
-  private <T, G extends Generator<T>> String generate(G generator, Collection<T> collection) {
-    StringJoiner joiner = new StringJoiner("\n");
-    generator.generate(collection);
+  private String describe(int position) {
+    Operation operation = Operation.fromCode(code[position]);
+    StringJoiner joiner = new StringJoiner(" ");
+    joiner.add(String.format(
+        "%s (%s):",
+        StringUtils.rightPad(5, operation.name()),
+        StringUtils.leftPad(2, "" + operation.getCode(), '0')
+    ));
 
-    // Generate size and body
-    joiner.add(generator.getSize() + "");
-    String body = generator.getBody();
-    if (body.length() > 0) {
-      joiner.add(generator.getBody());
+    for (int i = 1; i <= operation.getOperandSize(); i++) {
+      int unsignedByte = code[position + i] & 0xFF;
+      joiner.add(StringUtils.leftPad(2, "" + unsignedByte, '0'));
     }
 
     return joiner.toString();
@@ -169,11 +276,13 @@ public class CodeManager {
   public void printDebug() {
     System.out.println("\n==================");
     System.out.println("CODE MANAGER DEBUG");
-    System.out.println("Number of instructions: " + instructions.size());
+    System.out.println("Number of instructions: " + instructionCount);
     System.out.println("Instructions:");
 
-    for (Instruction instruction : instructions.values()) {
-      System.out.println(instruction.toString());
+    int position = 0;
+    while (position < codeGenerationPosition) {
+      System.out.println(describe(position));
+      position += Operation.fromCode(code[position]).getOperandSize() + 1;
     }
 
     System.out.println("==================");
@@ -183,7 +292,10 @@ public class CodeManager {
     return codeGenerationPosition;
   }
 
-  public Instruction getLastInstruction() {
-    return instructions.get(lastInstruction);
+  /**
+   * Get the operation of the most recently inserted instruction.
+   */
+  public Operation getLastOperation() {
+    return Operation.fromCode(code[lastInstruction]);
   }
 }
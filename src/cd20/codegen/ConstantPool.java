@@ -0,0 +1,195 @@
+package cd20.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cd20.symboltable.Symbol;
+
+/**
+ * The constant section of an SM20 module.
+ *
+ * Constants are deduplicated by value, so every symbol with the same value
+ * shares one entry, regardless of which scope it was used from. Integers and
+ * floats are stored unboxed, and strings are stored null terminated in
+ * a single byte arena.
+ */
+public class ConstantPool {
+  private static final int INTEGER_SECTION = 0;
+  private static final int FLOAT_SECTION = 1;
+  private static final int STRING_SECTION = 2;
+  private static final int ENTRY_SIZE = 8;
+
+  private long[] integers = new long[16];
+  private int integerCount = 0;
+  private final Map<Long, Integer> integerIndex = new HashMap<>();
+
+  private double[] floats = new double[16];
+  private int floatCount = 0;
+  private final Map<Long, Integer> floatIndex = new HashMap<>();
+
+  private byte[] strings = new byte[64];
+  private int stringLength = 0;
+  private int stringCount = 0;
+  private final Map<String, Integer> stringIndex = new HashMap<>();
+
+  // Symbols to assign offsets to, with the entry each one refers to
+  private final List<Symbol> symbols = new ArrayList<>();
+  private int[] sections = new int[16];
+  private int[] entries = new int[16];
+
+  /**
+   * Add an integer constant.
+   * @param value Constant value.
+   * @param symbol Symbol to receive the constant's offset.
+   */
+  public void addInteger(long value, Symbol symbol) {
+    Integer index = integerIndex.get(value);
+
+    if (index == null) {
+      index = integerCount;
+      if (integerCount == integers.length) {
+        integers = Arrays.copyOf(integers, integerCount * 2);
+      }
+      integers[integerCount++] = value;
+      integerIndex.put(value, index);
+    }
+
+    addReference(symbol, INTEGER_SECTION, index * ENTRY_SIZE);
+  }
+
+  /**
+   * Add a floating point constant.
+   * @param value Constant value.
+   * @param symbol Symbol to receive the constant's offset.
+   */
+  public void addFloat(double value, Symbol symbol) {
+    // Key on the exact bits, so that e.g. 0.0 and -0.0 stay distinct
+    long bits = Double.doubleToLongBits(value);
+    Integer index = floatIndex.get(bits);
+
+    if (index == null) {
+      index = floatCount;
+      if (floatCount == floats.length) {
+        floats = Arrays.copyOf(floats, floatCount * 2);
+      }
+      floats[floatCount++] = value;
+      floatIndex.put(bits, index);
+    }
+
+    addReference(symbol, FLOAT_SECTION, index * ENTRY_SIZE);
+  }
+
+  /**
+   * Add a string constant.
+   * @param value Constant value.
+   * @param symbol Symbol to receive the constant's offset.
+   */
+  public void addString(String value, Symbol symbol) {
+    Integer start = stringIndex.get(value);
+
+    if (start == null) {
+      byte[] bytes = value.getBytes();
+      start = stringLength;
+
+      // Grow to fit the string and its terminator
+      int required = stringLength + bytes.length + 1;
+      if (required > strings.length) {
+        strings = Arrays.copyOf(strings, Math.max(required, strings.length * 2));
+      }
+
+      System.arraycopy(bytes, 0, strings, stringLength, bytes.length);
+      stringLength += bytes.length;
+      strings[stringLength++] = 0;
+      stringCount++;
+      stringIndex.put(value, start);
+    }
+
+    addReference(symbol, STRING_SECTION, start);
+  }
+
+  /**
+   * Record that a symbol refers to the given entry.
+   */
+  private void addReference(Symbol symbol, int section, int entry) {
+    int count = symbols.size();
+    if (count == sections.length) {
+      sections = Arrays.copyOf(sections, count * 2);
+      entries = Arrays.copyOf(entries, count * 2);
+    }
+
+    symbols.add(symbol);
+    sections[count] = section;
+    entries[count] = entry;
+  }
+
+  /**
+   * Set the offset of every constant symbol, given where the pool starts.
+   * Sections are laid out in order: integers, floats and then strings.
+   * @param start Offset of the first constant.
+   * @return Offset after the last constant.
+   */
+  public int assignOffsets(int start) {
+    int floatStart = start + integerCount * ENTRY_SIZE;
+    int stringStart = floatStart + floatCount * ENTRY_SIZE;
+
+    for (int i = 0; i < symbols.size(); i++) {
+      int base;
+      switch (sections[i]) {
+        case INTEGER_SECTION:
+          base = start;
+          break;
+        case FLOAT_SECTION:
+          base = floatStart;
+          break;
+        default:
+          base = stringStart;
+          break;
+      }
+
+      symbols.get(i).setOffset(base + entries[i]);
+    }
+
+    return stringStart + stringLength;
+  }
+
+  public int getIntegerCount() {
+    return integerCount;
+  }
+
+  public long getInteger(int index) {
+    return integers[index];
+  }
+
+  public int getFloatCount() {
+    return floatCount;
+  }
+
+  public double getFloat(int index) {
+    return floats[index];
+  }
+
+  /**
+   * Get the number of distinct strings.
+   */
+  public int getStringCount() {
+    return stringCount;
+  }
+
+  /**
+   * Get the string arena. Only the first {@link #getStringLength()} bytes are
+   * used.
+   */
+  public byte[] getStrings() {
+    return strings;
+  }
+
+  /**
+   * Get the total length of all strings, including terminators.
+   */
+  public int getStringLength() {
+    return stringLength;
+  }
+}
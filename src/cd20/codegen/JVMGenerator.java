@@ -0,0 +1,1237 @@
+package cd20.codegen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import cd20.parser.DataType;
+import cd20.parser.Node;
+import cd20.parser.NodeType;
+import cd20.symboltable.Symbol;
+import cd20.symboltable.SymbolTable;
+import cd20.symboltable.SymbolType;
+import cd20.symboltable.attribute.*;
+import cd20.symboltable.SymbolTableManager;
+
+/**
+ * Generates a JVM class for a CD20 program, as an alternative to SM20 code.
+ *
+ * The class has a static method for each CD20 function, and a main method
+ * which initialises constants and runs the main section. Parameters and
+ * locals are JVM locals, and constants are static fields. Integers, reals
+ * and booleans are longs, doubles and booleans.
+ *
+ * Programs behave as they do on the SM20 machine: arithmetic and comparisons
+ * work the same way, and output is formatted the same. Unlike SM20,
+ * variables start out as zero, returning from main ends the program, and
+ * faults are thrown as Java exceptions.
+ *
+ * A main section too large for HotSpot to compile is split into several
+ * methods, and its variables are kept in static fields instead.
+ */
+public class JVMGenerator {
+  private static final String WRITER = "java/io/PrintWriter";
+  private static final String SCANNER = "java/util/Scanner";
+
+  // Fields for program output and input. CD20 identifiers can't contain $.
+  private static final String OUTPUT = "$out";
+  private static final String INPUT = "$in";
+
+  // Same tolerance as the SM20 machine uses for reals
+  private static final double FLOAT_TOLERANCE = 0.000001;
+
+  // HotSpot leaves methods with more bytecode than this interpreted
+  private static final int MAX_METHOD_SIZE = 8000;
+
+  // Size at which a part of a split main method is ended
+  private static final int PART_SIZE = 4000;
+
+  private final SymbolTableManager symbolManager;
+  private final Node root;
+  private final ClassFile file;
+
+  // Name of the static field holding each variable that isn't a local
+  private final Map<Symbol, String> fields = new HashMap<>();
+  private final Map<Node, DataType> types = new IdentityHashMap<>();
+
+  // State of the method being generated
+  private Bytecode code;
+  private final Map<Symbol, Integer> locals = new HashMap<>();
+  private int localCount;
+  private int scratch;
+  private DataType returnType;
+  private Bytecode.Label end;
+
+  /**
+   * Construct a new JVM code generator.
+   * @param symbolManager Symbol table manager.
+   * @param root AST root node.
+   */
+  public JVMGenerator(SymbolTableManager symbolManager, Node root) {
+    this.symbolManager = symbolManager;
+    this.root = root;
+    this.file = new ClassFile(root.getValue());
+  }
+
+  /**
+   * Write an executable jar holding the generated class at the given path.
+   * @param path Path to create file.
+   */
+  public void writeToFile(String path) throws IOException {
+    // Generate before creating the file, so a failure doesn't leave it empty
+    byte[] bytes = generateClass();
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, file.getName());
+
+    try (
+      OutputStream output = Files.newOutputStream(Paths.get(path));
+      JarOutputStream jar = new JarOutputStream(output, manifest)
+    ) {
+      jar.putNextEntry(new JarEntry(file.getName() + ".class"));
+      jar.write(bytes);
+      jar.closeEntry();
+    }
+  }
+
+  /**
+   * Generate the class file for the program, without writing it anywhere.
+   * The class is named after the program.
+   * Note: code can only be generated once per generator.
+   * @return Class file contents.
+   */
+  public byte[] generateClass() {
+    generateProgram(root);
+    return file.toByteArray();
+  }
+
+  /**
+   * Find the first construct in the program which can't be compiled to
+   * a class. Only int, real and bool variables are supported, so arrays and
+   * structs are not, and neither are repeat loops, % and ^, several
+   * assignments in a for loop, or ordering bools.
+   * @return Description of the construct, or null if the whole program is
+   * supported.
+   */
+  public String findUnsupported() {
+    return findUnsupported(root);
+  }
+
+  /**
+   * Search a subtree, children first, so that a node's operands are known to
+   * be supported before its own types are checked.
+   */
+  private String findUnsupported(Node node) {
+    for (Node child : node.getChildren()) {
+      String construct = findUnsupported(child);
+      if (construct != null) return construct;
+    }
+
+    switch (node.getType()) {
+      case TYPE_LIST:
+      case STRUCT_DEF:
+      case ARRAY_DEF:
+      case ARRAY_DECLS:
+      case ARRAY_DECL:
+        return "arrays and structs";
+      case ARRAY_PARAM:
+      case CONST_ARRAY_PARAM:
+        return "array parameters";
+      case ARRAY_VARIABLE:
+        return "array elements, such as '" + node.getValue() + "'";
+      case REPEAT:
+        return "repeat loops";
+      case ASSIGN_LIST:
+        return "several assignments in a for loop";
+      case MODULO:
+        return "the % operator";
+      case POWER:
+        return "the ^ operator";
+      case LESS:
+      case LESS_OR_EQUAL:
+      case GREATER:
+      case GREATER_OR_EQUAL:
+        if (typeOf(node.getLeftChild()).isBoolean() && typeOf(node.getRightChild()).isBoolean()) {
+          return "ordering bools with <, <=, > or >=";
+        }
+        return null;
+      default:
+        Symbol symbol = node.getSymbol();
+        if (symbol != null && symbol.getType() == SymbolType.STRUCT_OR_ARRAY_VARIABLE) {
+          return "struct and array variables, such as '" + symbol.getName() + "'";
+        }
+        return null;
+    }
+  }
+
+  /**
+   * Generate code for the program.
+   */
+  private void generateProgram(Node node) {
+    SymbolTable table = symbolManager.enterScope("global");
+
+    file.addField(ClassFile.ACC_PRIVATE, OUTPUT, "L" + WRITER + ";");
+    file.addField(ClassFile.ACC_PRIVATE, INPUT, "L" + SCANNER + ";");
+
+    for (Symbol symbol : table.getSymbols()) {
+      if (symbol.getType().isVariable()) {
+        addField(symbol, symbol.getName());
+      }
+    }
+
+    Node main = null;
+    for (Node child : node.getChildren()) {
+      switch (child.getType()) {
+        case FUNCTIONS:
+          generateFunctions(child);
+          continue;
+        case GLOBALS:
+          continue;
+        case MAIN:
+          main = child;
+          continue;
+        default:
+          throw new UnsupportedOperationException("Unknown token type");
+      }
+    }
+
+    generateMain(node, main);
+    symbolManager.leaveScope();
+  }
+
+  /**
+   * Generate code for functions.
+   */
+  private void generateFunctions(Node node) {
+    for (Node func : node.getChildren()) {
+      // Handle possible nested functions
+      if (func.getType() == NodeType.FUNCTIONS) {
+        generateFunctions(func);
+        continue;
+      }
+
+      generateFunction(func);
+    }
+  }
+
+  /**
+   * Generate a static method for a function.
+   * @param node Function node.
+   */
+  private void generateFunction(Node node) {
+    Symbol symbol = node.getSymbol();
+    SymbolTable table = symbolManager.enterScope("__function__" + symbol.getName());
+
+    startMethod(0);
+    returnType = symbol.getFirstAttribute(ReturnTypeAttribute.class).getType();
+
+    // Parameters come first, in order
+    for (Symbol parameter : parametersOf(symbol)) {
+      allocateLocal(parameter);
+    }
+
+    for (Symbol local : table.getSymbols()) {
+      if (local.getType().isVariable() && !local.hasAttribute(IsParamAttribute.class)) {
+        initialiseLocal(local);
+      }
+    }
+
+    for (Node child : node.getChildren()) {
+      switch (child.getType()) {
+        case PARAM_LIST:
+        case SDECL_LIST:
+        case DECL_LIST:
+        case SDECL:
+          continue;
+        default:
+          generateStatement(child);
+      }
+    }
+
+    // Add return statement in case the end is reachable
+    if (returnType.isVoid()) {
+      code.op(Bytecode.RETURN);
+    } else {
+      pushZero(returnType);
+      code.op(returnOpcode(returnType));
+    }
+
+    file.addMethod(ClassFile.ACC_PRIVATE, symbol.getName(), descriptorOf(symbol), code, code.getMaxStack(), localCount);
+    symbolManager.leaveScope();
+  }
+
+  /**
+   * Generate the main method, which sets up input and output, initialises
+   * constants and then runs the main section.
+   * @param program Program node.
+   * @param node Main node.
+   */
+  private void generateMain(Node program, Node node) {
+    SymbolTable table = symbolManager.enterScope("main");
+
+    List<Node> statements = new ArrayList<>();
+    for (Node child : node.getChildren()) {
+      switch (child.getType()) {
+        case SDECL:
+        case SDECL_LIST:
+          continue;
+        default:
+          collectStatements(child, statements);
+      }
+    }
+
+    Bytecode.Label start = startMain();
+    for (Symbol local : table.getSymbols()) {
+      if (local.getType().isVariable()) {
+        initialiseLocal(local);
+      }
+    }
+
+    generateGlobals(program);
+    for (Node statement : statements) {
+      generateStatement(statement);
+    }
+
+    // Split main up if it's too large to be compiled, with its variables in
+    // fields rather than locals
+    if (code.size() > MAX_METHOD_SIZE) {
+      start = startMain();
+      for (Symbol variable : table.getSymbols()) {
+        if (variable.getType().isVariable()) {
+          addField(variable, "main$" + variable.getName());
+        }
+      }
+
+      generateGlobals(program);
+      generateParts(statements);
+    }
+
+    // Write output so far, even if the program fails
+    Bytecode.Label handler = new Bytecode.Label();
+    code.mark(end);
+    flushOutput();
+    code.op(Bytecode.RETURN);
+
+    code.addHandler(start, end, handler);
+    code.mark(handler);
+    flushOutput();
+    code.op(Bytecode.ATHROW);
+
+    file.addMethod(ClassFile.ACC_PUBLIC, "main", "([Ljava/lang/String;)V", code, code.getMaxStack(), localCount);
+    symbolManager.leaveScope();
+  }
+
+  /**
+   * Start generating the main method, by creating the input and output
+   * streams.
+   * @return Label after the streams are created.
+   */
+  private Bytecode.Label startMain() {
+    // Locals start after the arguments array
+    startMethod(1);
+    returnType = null;
+    end = new Bytecode.Label();
+
+    createStream(OUTPUT, WRITER, "out", "Ljava/io/PrintStream;", "Ljava/io/OutputStream;");
+    createStream(INPUT, SCANNER, "in", "Ljava/io/InputStream;", "Ljava/io/InputStream;");
+
+    Bytecode.Label start = new Bytecode.Label();
+    code.mark(start);
+    return start;
+  }
+
+  /**
+   * Generate main's statements as a series of methods, called from main in
+   * turn. Each part returns false if the program has returned.
+   * @param statements Main's statements.
+   */
+  private void generateParts(List<Node> statements) {
+    Bytecode main = code;
+    Bytecode.Label mainEnd = end;
+    int mainLocals = localCount;
+
+    int index = 0;
+    for (int part = 0; index < statements.size(); part++) {
+      startMethod(0);
+      end = null;
+
+      while (index < statements.size() && code.size() < PART_SIZE) {
+        generateStatement(statements.get(index++));
+      }
+
+      code.pushInt(1);
+      code.op(Bytecode.IRETURN);
+
+      String name = "main$" + part;
+      file.addMethod(ClassFile.ACC_PRIVATE, name, "()Z", code, code.getMaxStack(), localCount);
+
+      main.invoke(Bytecode.INVOKESTATIC, file.getName(), name, "()Z");
+      main.jump(Bytecode.IFEQ, mainEnd);
+    }
+
+    code = main;
+    end = mainEnd;
+    localCount = mainLocals;
+  }
+
+  /**
+   * Flatten nested statement lists.
+   */
+  private void collectStatements(Node node, List<Node> statements) {
+    if (node.getType() != NodeType.STATEMENTS) {
+      statements.add(node);
+      return;
+    }
+
+    for (Node child : node.getChildren()) {
+      collectStatements(child, statements);
+    }
+  }
+
+  private void addField(Symbol symbol, String name) {
+    fields.put(symbol, name);
+    file.addField(ClassFile.ACC_PRIVATE, name, descriptorOf(typeOf(symbol)));
+  }
+
+  /**
+   * Store a new stream wrapping one from {@link System} in a field.
+   * @param field Field to store in.
+   * @param type Internal name of the stream's class.
+   * @param systemField Name of the field of {@link System} to wrap.
+   * @param systemType Descriptor of that field.
+   * @param parameterType Descriptor of the constructor's parameter.
+   */
+  private void createStream(String field, String type, String systemField, String systemType, String parameterType) {
+    code.type(Bytecode.NEW, type);
+    code.op(Bytecode.DUP);
+    code.field(Bytecode.GETSTATIC, "java/lang/System", systemField, systemType);
+    code.invoke(Bytecode.INVOKESPECIAL, type, "<init>", "(" + parameterType + ")V");
+    code.field(Bytecode.PUTSTATIC, file.getName(), field, "L" + type + ";");
+  }
+
+  private void flushOutput() {
+    code.field(Bytecode.GETSTATIC, file.getName(), OUTPUT, "L" + WRITER + ";");
+    code.invoke(Bytecode.INVOKEVIRTUAL, WRITER, "flush", "()V");
+  }
+
+  /**
+   * Generate code for the globals section, which initialises constants.
+   * @param program Program node.
+   */
+  private void generateGlobals(Node program) {
+    for (Node globals : program.getChildren()) {
+      if (globals.getType() != NodeType.GLOBALS) continue;
+
+      for (Node child : globals.getChildren()) {
+        switch (child.getType()) {
+          case INIT_LIST:
+            generateInitList(child);
+            continue;
+          default:
+            throw new UnsupportedOperationException("Not sure how to handle node of type: " + child.getType().toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate code for an initialiser list.
+   */
+  private void generateInitList(Node node) {
+    for (Node child : node.getChildren()) {
+      // Handle possible init list nesting
+      if (child.getType() == NodeType.INIT_LIST) {
+        generateInitList(child);
+        continue;
+      }
+
+      Symbol symbol = child.getSymbol();
+      generateExpression(child.getLeftChild(), typeOf(symbol));
+      storeVariable(symbol);
+    }
+  }
+
+  /**
+   * Reset the state for a new method.
+   * @param firstLocal Index of the first local after any arguments.
+   */
+  private void startMethod(int firstLocal) {
+    code = new Bytecode(file);
+    locals.clear();
+    localCount = firstLocal;
+    scratch = -1;
+  }
+
+  /**
+   * Assign a variable the next local variable index.
+   */
+  private void allocateLocal(Symbol symbol) {
+    locals.put(symbol, localCount);
+    localCount += sizeOf(typeOf(symbol));
+  }
+
+  /**
+   * Get a local variable which can briefly hold a value of any type.
+   */
+  private int scratchLocal() {
+    if (scratch < 0) {
+      scratch = localCount;
+      localCount += 2;
+    }
+
+    return scratch;
+  }
+
+  /**
+   * Allocate a local variable and set it to zero, since the JVM doesn't allow
+   * reading unassigned locals.
+   */
+  private void initialiseLocal(Symbol symbol) {
+    allocateLocal(symbol);
+    pushZero(typeOf(symbol));
+    storeVariable(symbol);
+  }
+
+  /**
+   * Generate code for a statement.
+   * @param node Statement node.
+   */
+  private void generateStatement(Node node) {
+    switch (node.getType()) {
+      case STATEMENTS:
+        for (Node child : node.getChildren()) {
+          generateStatement(child);
+        }
+        return;
+      case INPUT:
+        generateInput(node);
+        return;
+      case PRINTLN:
+        generatePrint(node, true);
+        return;
+      case PRINT:
+        generatePrint(node, false);
+        return;
+      case ASSIGN:
+        generateAssignment(node);
+        return;
+      case INCREMENT:
+        generateOperationAssign(node, NodeType.ADD);
+        return;
+      case DECREMENT:
+        generateOperationAssign(node, NodeType.SUBTRACT);
+        return;
+      case STAR_EQUALS:
+        generateOperationAssign(node, NodeType.MULTIPLY);
+        return;
+      case DIVIDE_EQUALS:
+        generateOperationAssign(node, NodeType.DIVIDE);
+        return;
+      case FOR:
+        generateFor(node);
+        return;
+      case IF:
+      case IF_ELSE:
+        generateIf(node);
+        return;
+      case FUNCTION_CALL:
+        // Discard the return value
+        DataType type = generateFunctionCall(node);
+        if (!type.isVoid()) {
+          code.op(sizeOf(type) == 2 ? Bytecode.POP2 : Bytecode.POP);
+        }
+        return;
+      case RETURN:
+        generateReturn(node);
+        return;
+      default:
+        throw new UnsupportedOperationException(node.toString());
+    }
+  }
+
+  /**
+   * Generate code for stdin.
+   * @param node Input node.
+   */
+  private void generateInput(Node node) {
+    for (Node child : node.getChildren()) {
+      generateInputVar(child);
+    }
+  }
+
+  /**
+   * Generate code for an input variable.
+   */
+  private void generateInputVar(Node node) {
+    switch (node.getType()) {
+      case VARIABLE_LIST:
+        for (Node child : node.getChildren()) {
+          generateInputVar(child);
+        }
+        return;
+      case SIMPLE_VARIABLE:
+        DataType type = typeOf(node.getSymbol());
+        code.field(Bytecode.GETSTATIC, file.getName(), INPUT, "L" + SCANNER + ";");
+        code.invoke(Bytecode.INVOKEVIRTUAL, SCANNER, "next", "()Ljava/lang/String;");
+
+        if (type.isInteger()) {
+          code.invoke(Bytecode.INVOKESTATIC, "java/lang/Long", "parseLong", "(Ljava/lang/String;)J");
+        } else if (type.isReal()) {
+          code.invoke(Bytecode.INVOKESTATIC, "java/lang/Double", "parseDouble", "(Ljava/lang/String;)D");
+        } else {
+          throw new RuntimeException("Received variable that is not numeric.");
+        }
+
+        storeVariable(node.getSymbol());
+        return;
+      default:
+        throw new RuntimeException("Encountered input var of type: " + node.getType().toString());
+    }
+  }
+
+  /**
+   * Generate code for a for loop.
+   */
+  private void generateFor(Node node) {
+    generateAssignment(node.getLeftChild());
+
+    // Check the condition before the first iteration
+    Bytecode.Label start = new Bytecode.Label();
+    Bytecode.Label done = new Bytecode.Label();
+    generateCondition(node.getCentreChild(), done, false);
+
+    // Repeat while the condition holds
+    code.mark(start);
+    generateStatement(node.getRightChild());
+    generateCondition(node.getCentreChild(), start, true);
+    code.mark(done);
+  }
+
+  /**
+   * Generate code for an IF statement.
+   */
+  private void generateIf(Node node) {
+    Bytecode.Label otherwise = new Bytecode.Label();
+    generateCondition(node.getLeftChild(), otherwise, false);
+    generateStatement(node.getCentreChild());
+
+    Node elseStatements = node.getRightChild();
+    if (elseStatements == null) {
+      code.mark(otherwise);
+      return;
+    }
+
+    Bytecode.Label done = new Bytecode.Label();
+    code.jump(Bytecode.GOTO, done);
+    code.mark(otherwise);
+    generateStatement(elseStatements);
+    code.mark(done);
+  }
+
+  /**
+   * Generate code for printing.
+   * @param node Print or printline node.
+   * @param shouldInsertNewline Whether a newline should be inserted after each
+   * entry, as SM20 code does.
+   */
+  private void generatePrint(Node node, boolean shouldInsertNewline) {
+    for (Node child : node.getChildren()) {
+      if (child.getType() == NodeType.PRINT_LIST) {
+        generatePrint(child, shouldInsertNewline);
+        continue;
+      }
+
+      generatePrintEntry(child);
+      if (shouldInsertNewline) {
+        printCharacter('\n');
+      }
+    }
+  }
+
+  /**
+   * Generate code for a print entry. Values are preceded by a space, except
+   * for bools, which SM20 doesn't print at all.
+   */
+  private void generatePrintEntry(Node node) {
+    if (node.getType() == NodeType.STRING) {
+      String text = node.getSymbol().getFirstAttribute(StringConstantAttribute.class).getConstant();
+      code.field(Bytecode.GETSTATIC, file.getName(), OUTPUT, "L" + WRITER + ";");
+      code.pushString(text);
+      code.invoke(Bytecode.INVOKEVIRTUAL, WRITER, "print", "(Ljava/lang/String;)V");
+      return;
+    }
+
+    // Evaluate the value before printing the space, since it may call a
+    // function which prints
+    DataType type = typeOf(node);
+    generateExpression(node, type);
+
+    if (type.isBoolean()) {
+      code.op(Bytecode.POP);
+      return;
+    }
+
+    code.local(storeOpcode(type), scratchLocal());
+
+    printCharacter(' ');
+    code.field(Bytecode.GETSTATIC, file.getName(), OUTPUT, "L" + WRITER + ";");
+    code.local(loadOpcode(type), scratchLocal());
+    code.invoke(Bytecode.INVOKEVIRTUAL, WRITER, "print", "(" + descriptorOf(type) + ")V");
+  }
+
+  private void printCharacter(char character) {
+    code.field(Bytecode.GETSTATIC, file.getName(), OUTPUT, "L" + WRITER + ";");
+    code.pushInt(character);
+    code.invoke(Bytecode.INVOKEVIRTUAL, WRITER, "print", "(C)V");
+  }
+
+  /**
+   * Generate code for an assignment.
+   */
+  private void generateAssignment(Node node) {
+    Symbol symbol = variableOf(node.getLeftChild());
+    generateExpression(node.getRightChild(), typeOf(symbol));
+    storeVariable(symbol);
+  }
+
+  /**
+   * Generate code for an operation + assignment, e.g. +=.
+   * @param node Node to generate code for.
+   * @param operation Arithmetic node type of the operation.
+   */
+  private void generateOperationAssign(Node node, NodeType operation) {
+    Symbol symbol = variableOf(node.getLeftChild());
+    DataType type = arithmeticType(typeOf(symbol), typeOf(node.getRightChild()));
+
+    loadVariable(symbol);
+    convert(typeOf(symbol), type);
+    generateExpression(node.getRightChild(), type);
+    code.op(arithmeticOpcode(operation, type));
+
+    convert(type, typeOf(symbol));
+    storeVariable(symbol);
+  }
+
+  /**
+   * Generate return.
+   */
+  private void generateReturn(Node node) {
+    // Returning from main ends the program. Parts of main return false.
+    if (returnType == null) {
+      if (end != null) {
+        code.jump(Bytecode.GOTO, end);
+      } else {
+        code.pushInt(0);
+        code.op(Bytecode.IRETURN);
+      }
+      return;
+    }
+
+    Node expression = node.getLeftChild();
+    if (returnType.isVoid()) {
+      if (expression != null) {
+        throw new UnsupportedOperationException("Returning a value from a void function");
+      }
+
+      code.op(Bytecode.RETURN);
+      return;
+    }
+
+    if (expression != null) {
+      generateExpression(expression, returnType);
+    } else {
+      pushZero(returnType);
+    }
+
+    code.op(returnOpcode(returnType));
+  }
+
+  /**
+   * Generate code for calling a function.
+   * @param node Function call node.
+   * @return Return type of the function.
+   */
+  private DataType generateFunctionCall(Node node) {
+    Symbol symbol = node.getSymbol();
+    List<Symbol> parameters = parametersOf(symbol);
+
+    List<Node> arguments = new ArrayList<>();
+    for (Node child : node.getChildren()) {
+      collectArguments(child, arguments);
+    }
+
+    if (arguments.size() != parameters.size()) {
+      throw new UnsupportedOperationException(
+        String.format("Function '%s' expects %d arguments", symbol.getName(), parameters.size())
+      );
+    }
+
+    for (int i = 0; i < arguments.size(); i++) {
+      generateExpression(arguments.get(i), typeOf(parameters.get(i)));
+    }
+
+    code.invoke(Bytecode.INVOKESTATIC, file.getName(), symbol.getName(), descriptorOf(symbol));
+    return symbol.getFirstAttribute(ReturnTypeAttribute.class).getType();
+  }
+
+  private void collectArguments(Node node, List<Node> arguments) {
+    if (node.getType() != NodeType.EXPRESSION_LIST) {
+      arguments.add(node);
+      return;
+    }
+
+    for (Node child : node.getChildren()) {
+      collectArguments(child, arguments);
+    }
+  }
+
+  /**
+   * Generate code for an expression, converting its value to a type.
+   * @param node Expression node.
+   * @param type Type to convert to.
+   */
+  private void generateExpression(Node node, DataType type) {
+    switch (node.getType()) {
+      case TRUE:
+      case FALSE:
+        code.pushInt(node.getType() == NodeType.TRUE ? 1 : 0);
+        break;
+      case INTEGER_LITERAL:
+        code.pushLong(node.getSymbol().getFirstAttribute(IntegerConstantAttribute.class).getConstant());
+        break;
+      case REAL_LITERAL: {
+        // Modules hold a real's shortest float representation, which SM20
+        // reads back as a double, rather than the float's exact value
+        float constant = node.getSymbol().getFirstAttribute(FloatConstantAttribute.class).getConstant();
+        code.pushDouble(Double.parseDouble(Float.toString(constant)));
+        break;
+      }
+      case ADD:
+      case SUBTRACT:
+      case MULTIPLY:
+      case DIVIDE: {
+        DataType operandType = typeOf(node);
+        generateExpression(node.getLeftChild(), operandType);
+        generateExpression(node.getRightChild(), operandType);
+        code.op(arithmeticOpcode(node.getType(), operandType));
+        break;
+      }
+      case SIMPLE_VARIABLE:
+        loadVariable(node.getSymbol());
+        break;
+      case FUNC_CALL:
+        generateFunctionCall(node);
+        break;
+      case BOOLEAN:
+      case NOT:
+      case AND:
+      case OR:
+      case XOR:
+        generateBool(node);
+        break;
+      case EQUAL:
+      case NOT_EQUAL:
+      case LESS:
+      case LESS_OR_EQUAL:
+      case GREATER:
+      case GREATER_OR_EQUAL: {
+        Bytecode.Label isTrue = new Bytecode.Label();
+        Bytecode.Label done = new Bytecode.Label();
+        generateCondition(node, isTrue, true);
+        code.pushInt(0);
+        code.jump(Bytecode.GOTO, done);
+        code.mark(isTrue);
+        code.pushInt(1);
+        code.mark(done);
+        break;
+      }
+      default:
+        throw new UnsupportedOperationException(node.toString());
+    }
+
+    convert(typeOf(node), type);
+  }
+
+  /**
+   * Generate code for a logical operation on bools. Both operands are always
+   * evaluated, as in SM20 code.
+   * @param node Node to generate code for.
+   */
+  private void generateBool(Node node) {
+    switch (node.getType()) {
+      case BOOLEAN:
+        generateExpression(onlyChild(node), DataType.BOOLEAN);
+        return;
+      case NOT:
+        generateExpression(node.getLeftChild(), DataType.BOOLEAN);
+        code.pushInt(1);
+        code.op(Bytecode.IXOR);
+        return;
+      case AND:
+        generateExpression(node.getLeftChild(), DataType.BOOLEAN);
+        generateExpression(node.getRightChild(), DataType.BOOLEAN);
+        code.op(Bytecode.IAND);
+        return;
+      case OR:
+        generateExpression(node.getLeftChild(), DataType.BOOLEAN);
+        generateExpression(node.getRightChild(), DataType.BOOLEAN);
+        code.op(Bytecode.IOR);
+        return;
+      default:
+        generateExpression(node.getLeftChild(), DataType.BOOLEAN);
+        generateExpression(node.getRightChild(), DataType.BOOLEAN);
+        code.op(Bytecode.IXOR);
+        return;
+    }
+  }
+
+  /**
+   * Generate code which jumps to a label depending on a bool.
+   * @param node Bool node.
+   * @param target Label to jump to.
+   * @param jumpIf Whether to jump when the bool is true, rather than false.
+   */
+  private void generateCondition(Node node, Bytecode.Label target, boolean jumpIf) {
+    switch (node.getType()) {
+      case BOOLEAN:
+        generateCondition(onlyChild(node), target, jumpIf);
+        return;
+      case NOT:
+        generateCondition(node.getLeftChild(), target, !jumpIf);
+        return;
+      case EQUAL:
+      case NOT_EQUAL:
+      case LESS:
+      case LESS_OR_EQUAL:
+      case GREATER:
+      case GREATER_OR_EQUAL:
+        generateComparison(node, target, jumpIf);
+        return;
+      default:
+        generateExpression(node, DataType.BOOLEAN);
+        code.jump(jumpIf ? Bytecode.IFNE : Bytecode.IFEQ, target);
+        return;
+    }
+  }
+
+  /**
+   * Generate a comparison which jumps to a label. Numbers are subtracted and
+   * the difference compared with zero, as in SM20 code, so reals are equal
+   * if they're within a tolerance.
+   */
+  private void generateComparison(Node node, Bytecode.Label target, boolean jumpIf) {
+    NodeType comparison = node.getType();
+    DataType left = typeOf(node.getLeftChild());
+    DataType right = typeOf(node.getRightChild());
+
+    if (left.isBoolean() && right.isBoolean()) {
+      if (comparison != NodeType.EQUAL && comparison != NodeType.NOT_EQUAL) {
+        throw new UnsupportedOperationException("Ordering bools: " + node);
+      }
+
+      generateExpression(node.getLeftChild(), DataType.BOOLEAN);
+      generateExpression(node.getRightChild(), DataType.BOOLEAN);
+      code.jump(branchOpcode(comparison, jumpIf, Bytecode.IF_ICMPEQ - Bytecode.IFEQ), target);
+      return;
+    }
+
+    DataType type = arithmeticType(left, right);
+    generateExpression(node.getLeftChild(), type);
+    generateExpression(node.getRightChild(), type);
+
+    if (type.isInteger()) {
+      code.op(Bytecode.LSUB);
+      code.pushLong(0);
+      code.op(Bytecode.LCMP);
+      code.jump(branchOpcode(comparison, jumpIf, 0), target);
+      return;
+    }
+
+    code.op(Bytecode.DSUB);
+
+    switch (comparison) {
+      case EQUAL:
+      case NOT_EQUAL:
+        // The absolute difference is compared with the tolerance instead
+        code.invoke(Bytecode.INVOKESTATIC, "java/lang/Math", "abs", "(D)D");
+        code.pushDouble(FLOAT_TOLERANCE);
+        code.op(comparison == NodeType.EQUAL ? Bytecode.DCMPG : Bytecode.DCMPL);
+        code.jump(branchOpcode(comparison == NodeType.EQUAL ? NodeType.LESS : NodeType.GREATER, jumpIf, 0), target);
+        return;
+      default:
+        // Pick the instruction which makes NaN compare false
+        code.pushDouble(0);
+        code.op(comparison == NodeType.LESS || comparison == NodeType.LESS_OR_EQUAL ? Bytecode.DCMPG : Bytecode.DCMPL);
+        code.jump(branchOpcode(comparison, jumpIf, 0), target);
+        return;
+    }
+  }
+
+  /**
+   * Get the branch instruction for a comparison with zero.
+   * @param comparison Comparison node type.
+   * @param jumpIf Whether to branch when the comparison holds, rather than
+   * when it doesn't.
+   * @param offset Added to the opcode, to get the IF_ICMP form.
+   */
+  private static int branchOpcode(NodeType comparison, boolean jumpIf, int offset) {
+    if (!jumpIf) {
+      comparison = negate(comparison);
+    }
+
+    switch (comparison) {
+      case EQUAL:
+        return Bytecode.IFEQ + offset;
+      case NOT_EQUAL:
+        return Bytecode.IFNE + offset;
+      case LESS:
+        return Bytecode.IFLT + offset;
+      case LESS_OR_EQUAL:
+        return Bytecode.IFLE + offset;
+      case GREATER:
+        return Bytecode.IFGT + offset;
+      default:
+        return Bytecode.IFGE + offset;
+    }
+  }
+
+  private static NodeType negate(NodeType comparison) {
+    switch (comparison) {
+      case EQUAL:
+        return NodeType.NOT_EQUAL;
+      case NOT_EQUAL:
+        return NodeType.EQUAL;
+      case LESS:
+        return NodeType.GREATER_OR_EQUAL;
+      case LESS_OR_EQUAL:
+        return NodeType.GREATER;
+      case GREATER:
+        return NodeType.LESS_OR_EQUAL;
+      default:
+        return NodeType.LESS;
+    }
+  }
+
+  private static int arithmeticOpcode(NodeType operation, DataType type) {
+    boolean isReal = type.isReal();
+
+    switch (operation) {
+      case ADD:
+        return isReal ? Bytecode.DADD : Bytecode.LADD;
+      case SUBTRACT:
+        return isReal ? Bytecode.DSUB : Bytecode.LSUB;
+      case MULTIPLY:
+        return isReal ? Bytecode.DMUL : Bytecode.LMUL;
+      default:
+        return isReal ? Bytecode.DDIV : Bytecode.LDIV;
+    }
+  }
+
+  private static int loadOpcode(DataType type) {
+    if (type.isInteger()) return Bytecode.LLOAD;
+    if (type.isReal()) return Bytecode.DLOAD;
+    return Bytecode.ILOAD;
+  }
+
+  private static int storeOpcode(DataType type) {
+    if (type.isInteger()) return Bytecode.LSTORE;
+    if (type.isReal()) return Bytecode.DSTORE;
+    return Bytecode.ISTORE;
+  }
+
+  private static int returnOpcode(DataType type) {
+    if (type.isInteger()) return Bytecode.LRETURN;
+    if (type.isReal()) return Bytecode.DRETURN;
+    return Bytecode.IRETURN;
+  }
+
+  private void loadVariable(Symbol symbol) {
+    DataType type = typeOf(symbol);
+    Integer local = locals.get(symbol);
+
+    if (local != null) {
+      code.local(loadOpcode(type), local);
+    } else if (fields.containsKey(symbol)) {
+      code.field(Bytecode.GETSTATIC, file.getName(), fields.get(symbol), descriptorOf(type));
+    } else {
+      throw new RuntimeException("Variable is out of scope: " + symbol.getName());
+    }
+  }
+
+  private void storeVariable(Symbol symbol) {
+    DataType type = typeOf(symbol);
+    Integer local = locals.get(symbol);
+
+    if (local != null) {
+      code.local(storeOpcode(type), local);
+    } else if (fields.containsKey(symbol)) {
+      code.field(Bytecode.PUTSTATIC, file.getName(), fields.get(symbol), descriptorOf(type));
+    } else {
+      throw new RuntimeException("Variable is out of scope: " + symbol.getName());
+    }
+  }
+
+  /**
+   * Get the symbol of a variable which can be assigned to.
+   */
+  private Symbol variableOf(Node node) {
+    if (node.getType() != NodeType.SIMPLE_VARIABLE) {
+      throw new UnsupportedOperationException("Not implemented yet");
+    }
+
+    return node.getSymbol();
+  }
+
+  private void pushZero(DataType type) {
+    if (type.isInteger()) {
+      code.pushLong(0);
+    } else if (type.isReal()) {
+      code.pushDouble(0);
+    } else {
+      code.pushInt(0);
+    }
+  }
+
+  /**
+   * Convert the value on top of the stack between types. Only numbers can be
+   * converted.
+   */
+  private void convert(DataType from, DataType to) {
+    if (from == to) return;
+
+    if (from.isInteger() && to.isReal()) {
+      code.op(Bytecode.L2D);
+    } else if (from.isReal() && to.isInteger()) {
+      code.op(Bytecode.D2L);
+    } else {
+      throw new UnsupportedOperationException(String.format("Converting %s to %s", from, to));
+    }
+  }
+
+  /**
+   * Get the type of an expression's value.
+   */
+  private DataType typeOf(Node node) {
+    DataType type = types.get(node);
+    if (type == null) {
+      type = findType(node);
+      types.put(node, type);
+    }
+
+    return type;
+  }
+
+  private DataType findType(Node node) {
+    switch (node.getType()) {
+      case INTEGER_LITERAL:
+        return DataType.INTEGER;
+      case REAL_LITERAL:
+        return DataType.REAL;
+      case ADD:
+      case SUBTRACT:
+      case MULTIPLY:
+      case DIVIDE:
+        return arithmeticType(typeOf(node.getLeftChild()), typeOf(node.getRightChild()));
+      case SIMPLE_VARIABLE:
+        return typeOf(node.getSymbol());
+      case FUNC_CALL:
+        return node.getSymbol().getFirstAttribute(ReturnTypeAttribute.class).getType();
+      case TRUE:
+      case FALSE:
+      case BOOLEAN:
+      case NOT:
+      case AND:
+      case OR:
+      case XOR:
+      case EQUAL:
+      case NOT_EQUAL:
+      case LESS:
+      case LESS_OR_EQUAL:
+      case GREATER:
+      case GREATER_OR_EQUAL:
+        return DataType.BOOLEAN;
+      default:
+        throw new UnsupportedOperationException(node.toString());
+    }
+  }
+
+  /**
+   * Get the type of a variable. Only ints, reals and bools are supported.
+   */
+  private static DataType typeOf(Symbol symbol) {
+    DataTypeAttribute attribute = symbol.getFirstAttribute(DataTypeAttribute.class);
+    DataType type = attribute != null ? attribute.getType() : null;
+
+    if (type == null || !(type.isInteger() || type.isReal() || type.isBoolean())) {
+      throw new UnsupportedOperationException("Variable type of " + symbol.getName());
+    }
+
+    return type;
+  }
+
+  /**
+   * Get the type of arithmetic on two numbers. Integers are promoted to reals
+   * if either is a real.
+   */
+  private static DataType arithmeticType(DataType left, DataType right) {
+    if (!left.isNumeric() || !right.isNumeric()) {
+      throw new UnsupportedOperationException(String.format("Arithmetic on %s and %s", left, right));
+    }
+
+    return left.isReal() || right.isReal() ? DataType.REAL : DataType.INTEGER;
+  }
+
+  private static List<Symbol> parametersOf(Symbol function) {
+    List<Symbol> parameters = new ArrayList<>();
+    for (Attribute attribute : function.getAttributes(ParameterAttribute.class)) {
+      parameters.add(((ParameterAttribute) attribute).getSymbol());
+    }
+
+    return parameters;
+  }
+
+  private static Node onlyChild(Node node) {
+    List<Node> children = node.getChildren();
+    if (children.size() != 1) {
+      throw new UnsupportedOperationException(node.toString());
+    }
+
+    return children.get(0);
+  }
+
+  /**
+   * Get the method descriptor of a function.
+   */
+  private static String descriptorOf(Symbol function) {
+    StringBuilder descriptor = new StringBuilder("(");
+    for (Symbol parameter : parametersOf(function)) {
+      descriptor.append(descriptorOf(typeOf(parameter)));
+    }
+
+    DataType returnType = function.getFirstAttribute(ReturnTypeAttribute.class).getType();
+    descriptor.append(')').append(returnType.isVoid() ? "V" : descriptorOf(returnType));
+    return descriptor.toString();
+  }
+
+  private static String descriptorOf(DataType type) {
+    if (type.isInteger()) return "J";
+    if (type.isReal()) return "D";
+    if (type.isBoolean()) return "Z";
+    throw new UnsupportedOperationException("Type " + type);
+  }
+
+  private static int sizeOf(DataType type) {
+    return type.isBoolean() ? 1 : 2;
+  }
+}
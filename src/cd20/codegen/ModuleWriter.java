@@ -0,0 +1,186 @@
+package cd20.codegen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes an SM20 module in its textual format, straight to a channel.
+ *
+ * Numbers are encoded digit by digit into a reusable buffer, so no
+ * intermediate Strings are created, except for floating point constants.
+ * Format:
+ * 1. Instruction section
+ *    a. Number of lines to expect
+ *    b. Instructions, word-filled with HALT instructions.
+ * 2. Integer constants section
+ *    a. Number of values to expect
+ *    b. One line for each integer constant. May be negative.
+ * 3. Floating point constants section.
+ *    a. Number of values to expect
+ *    b. One line for reach floating point constant.
+ * 4. String constants section.
+ *    a. Number of lines to expect
+ *    b. Each string constant, delimited by null characters (00). Each new
+ *    string does not need to start on a word boundary. Word filled with null
+ *    characters (00).
+ */
+public class ModuleWriter {
+  private static final int BYTES_PER_LINE = 8;
+  private static final int BUFFER_SIZE = 8192;
+
+  // Room for the longest value that is written in one go
+  private static final int MAX_VALUE_LENGTH = 32;
+
+  private final WritableByteChannel channel;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+  private int position = 0;
+
+  // Sections are separated, rather than terminated, by new lines
+  private boolean isFirstLine = true;
+
+  /**
+   * @param channel Channel to write to. The channel is not closed.
+   */
+  public ModuleWriter(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Write a whole module and flush it to the channel.
+   * @param code Code segment.
+   * @param length Length of the code segment.
+   * @param constants Constant pool.
+   */
+  public void write(byte[] code, int length, ConstantPool constants) throws IOException {
+    writeWords(code, length);
+
+    writeLine(constants.getIntegerCount());
+    for (int i = 0; i < constants.getIntegerCount(); i++) {
+      writeLine(constants.getInteger(i));
+    }
+
+    writeLine(constants.getFloatCount());
+    for (int i = 0; i < constants.getFloatCount(); i++) {
+      // Literals are parsed at single precision, so print them that way
+      writeLine(Float.toString((float) constants.getFloat(i)));
+    }
+
+    writeWords(constants.getStrings(), constants.getStringLength());
+    flush();
+  }
+
+  /**
+   * Write a word-filled section: the number of lines, followed by eight
+   * bytes per line, filled with zeros.
+   * @param bytes Bytes to write.
+   * @param length Number of bytes to write.
+   */
+  private void writeWords(byte[] bytes, int length) throws IOException {
+    int lines = (length + BYTES_PER_LINE - 1) / BYTES_PER_LINE;
+    writeLine(lines);
+
+    for (int line = 0; line < lines; line++) {
+      startLine();
+
+      int start = line * BYTES_PER_LINE;
+      for (int i = start; i < start + BYTES_PER_LINE; i++) {
+        writeByte(i < length ? bytes[i] & 0xFF : 0);
+      }
+    }
+  }
+
+  /**
+   * Write a single unsigned byte, right aligned in four characters and with
+   * at least two digits.
+   */
+  private void writeByte(int value) throws IOException {
+    ensureCapacity(4);
+    buffer[position++] = ' ';
+
+    if (value >= 100) {
+      buffer[position++] = (byte) ('0' + value / 100);
+      value %= 100;
+    } else {
+      buffer[position++] = ' ';
+    }
+
+    buffer[position++] = (byte) ('0' + value / 10);
+    buffer[position++] = (byte) ('0' + value % 10);
+  }
+
+  /**
+   * Write a line containing a single integer.
+   */
+  private void writeLine(long value) throws IOException {
+    startLine();
+    ensureCapacity(MAX_VALUE_LENGTH);
+
+    // Work with negative values, so that Long.MIN_VALUE needs no special case
+    if (value < 0) {
+      buffer[position++] = '-';
+    } else {
+      value = -value;
+    }
+
+    // Write digits backwards, then reverse them
+    int start = position;
+    do {
+      buffer[position++] = (byte) ('0' - value % 10);
+      value /= 10;
+    } while (value != 0);
+
+    for (int i = start, j = position - 1; i < j; i++, j--) {
+      byte digit = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = digit;
+    }
+  }
+
+  /**
+   * Write a line containing ASCII text.
+   */
+  private void writeLine(String text) throws IOException {
+    startLine();
+
+    for (int i = 0; i < text.length(); i++) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) text.charAt(i);
+    }
+  }
+
+  /**
+   * Separate a new line from the previous one.
+   */
+  private void startLine() throws IOException {
+    if (isFirstLine) {
+      isFirstLine = false;
+      return;
+    }
+
+    ensureCapacity(1);
+    buffer[position++] = '\n';
+  }
+
+  /**
+   * Make room for at least the given number of bytes.
+   */
+  private void ensureCapacity(int length) throws IOException {
+    if (position + length > buffer.length) {
+      flush();
+    }
+  }
+
+  /**
+   * Write everything buffered so far to the channel.
+   */
+  public void flush() throws IOException {
+    wrapper.clear().limit(position);
+    while (wrapper.hasRemaining()) {
+      channel.write(wrapper);
+    }
+
+    position = 0;
+  }
+}
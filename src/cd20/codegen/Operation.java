@@ -374,16 +374,56 @@ public enum Operation {
    */
   PLACEHOLDER_LA(110);
 
+  private static final Operation[] byCode = new Operation[256];
+
+  static {
+    for (Operation operation : values()) {
+      byCode[operation.code] = operation;
+    }
+  }
+
   private final int code;
 
   Operation(int code) {
     this.code = code;
   }
 
+  /**
+   * Get the operation with the given code.
+   * @param code Operation code, as an unsigned byte.
+   * @return Matching operation, or null.
+   */
+  public static Operation fromCode(int code) {
+    return byCode[code & 0xFF];
+  }
+
   public int getCode() {
     return code;
   }
 
+  /**
+   * Get the number of operand bytes that follow this operation.
+   */
+  public int getOperandSize() {
+    switch (this) {
+      case LB:
+        return 1;
+      case LH:
+        return 2;
+      case LV0:
+      case LV1:
+      case LV2:
+      case PLACEHOLDER_LV:
+      case LA0:
+      case LA1:
+      case LA2:
+      case PLACEHOLDER_LA:
+        return 4;
+      default:
+        return 0;
+    }
+  }
+
   @Override
   public String toString() {
     return StringUtils.leftPad(2, code + "");
@@ -0,0 +1,77 @@
+package cd20.codegen;
+
+import java.util.Arrays;
+
+import cd20.symboltable.Symbol;
+
+/**
+ * The sites in a code segment that load a symbol's address or value, where
+ * the symbol's final location isn't known when the code is generated.
+ *
+ * Each relocation records the position of its instruction, the symbol it
+ * refers to, and whether it loads an address or a value.
+ */
+public class RelocationTable {
+  private int[] positions = new int[64];
+  private Symbol[] symbols = new Symbol[64];
+  private boolean[] loadsAddress = new boolean[64];
+  private int size = 0;
+
+  /**
+   * Record a new relocation.
+   * @param position Code generation position of the instruction.
+   * @param symbol Symbol to load.
+   * @param isLoadAddress Whether to load the symbol's address, rather than
+   * its value.
+   */
+  public void add(int position, Symbol symbol, boolean isLoadAddress) {
+    if (size == positions.length) {
+      positions = Arrays.copyOf(positions, size * 2);
+      symbols = Arrays.copyOf(symbols, size * 2);
+      loadsAddress = Arrays.copyOf(loadsAddress, size * 2);
+    }
+
+    positions[size] = position;
+    symbols[size] = symbol;
+    loadsAddress[size] = isLoadAddress;
+    size++;
+  }
+
+  /**
+   * Get the number of relocations.
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getPosition(int index) {
+    return positions[index];
+  }
+
+  public Symbol getSymbol(int index) {
+    return symbols[index];
+  }
+
+  /**
+   * Get the operation a relocation resolves to, given where its symbol lives.
+   * @param index Relocation index.
+   */
+  public Operation getOperation(int index) {
+    boolean isLoadAddress = loadsAddress[index];
+
+    switch (symbols[index].getRegister()) {
+      case CONSTANTS:
+        return isLoadAddress ? Operation.LA0 : Operation.LV0;
+      case GLOBALS:
+        return isLoadAddress ? Operation.LA1 : Operation.LV1;
+      case DECLARATIONS:
+        return isLoadAddress ? Operation.LA2 : Operation.LV2;
+      default:
+        throw new IllegalStateException(String.format(
+          "Cannot relocate a symbol in register %s [%s]",
+          symbols[index].getRegister(),
+          symbols[index]
+        ));
+    }
+  }
+}
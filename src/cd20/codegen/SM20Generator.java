@@ -1,14 +1,15 @@
 package cd20.codegen;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 
-import cd20.ByteUtils;
 import cd20.parser.DataType;
 import cd20.parser.Node;
 import cd20.parser.NodeType;
@@ -41,16 +42,33 @@ public class SM20Generator {
    * @param path Path to create file.
    */
   public void writeToFile(String path) throws IOException {
+    // Link before creating the file, so a failure doesn't leave it empty
     generateProgram(root);
-    
-    BufferedWriter writer = new BufferedWriter(new FileWriter(path));
-    String module = codeManager.generateModule();
-    writer.append(module);
-    writer.close();
+    codeManager.link();
+
+    try (FileChannel channel = FileChannel.open(
+      Paths.get(path),
+      StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.WRITE
+    )) {
+      codeManager.writeModule(channel);
+    }
 
     symbolManager.printDebug();
     codeManager.printDebug();
-    System.out.println(module);
+    codeManager.writeModule(Channels.newChannel(System.out));
+    System.out.println();
+  }
+
+  /**
+   * Generate the SM20 module for the program, without writing it anywhere.
+   * Note: code can only be generated once per generator.
+   * @return Module contents.
+   */
+  public String generateModule() {
+    generateProgram(root);
+    return codeManager.generateModule();
   }
 
   /**
@@ -78,22 +96,27 @@ public class SM20Generator {
     // Now that all global variables have been assigned an offset, we can
     // allocate space on the stack
     if (totalVariables > 0) {
-      codeManager.insert(new Instruction(Operation.LB, (byte) totalVariables));
+      codeManager.insertInteger(totalVariables);
       codeManager.insert(Operation.ALLOC);
     }
 
+    // Initialise globals and constants before main can use them
+    for (Node child : node.getChildren()) {
+      if (child.getType() == NodeType.GLOBALS) {
+        generateGlobals(child);
+      }
+    }
+
     // Generate main ahead of functions
     Node main = extractMain(node);
     generateMain(main);
 
     for (Node child : node.getChildren()) {
       switch (child.getType()) {
-        case GLOBALS:
-          generateGlobals(child);
-          continue;
         case FUNCTIONS:
           generateFunctions(child);
           continue;
+        case GLOBALS:
         case MAIN:
           continue;
         default:
@@ -139,7 +162,7 @@ public class SM20Generator {
    */
   private void generateInit(Node node) {
     // Load address for value
-    codeManager.insert(new BackfillInstruction(node.getSymbol(), Operation.PLACEHOLDER_LA));
+    codeManager.insertBackfill(node.getSymbol(), Operation.PLACEHOLDER_LA);
 
     // Load and store
     generateExpression(node.getLeftChild());
@@ -185,7 +208,7 @@ public class SM20Generator {
 
     // Allocate space for local variables
     if (variableCount != 0) {
-      codeManager.insert(new Instruction(Operation.LB, (byte) variableCount));
+      codeManager.insertInteger(variableCount);
       codeManager.insert(Operation.ALLOC);
     }
 
@@ -201,8 +224,7 @@ public class SM20Generator {
     }
 
     // Add return statement if none explicitly defined
-    Instruction instruction = codeManager.getLastInstruction();
-    if (!instruction.getOperation().equals(Operation.RETN)) {
+    if (codeManager.getLastOperation() != Operation.RETN) {
       codeManager.insert(Operation.RETN);
     }
 
@@ -389,8 +411,7 @@ public class SM20Generator {
     generateAssignment(node.getLeftChild());
 
     // Generate initial condition and check
-    Instruction skipToEndInstruction = new Instruction(Operation.LA0, ByteUtils.toByteArray(0));
-    codeManager.insert(skipToEndInstruction);
+    int skipToEndInstruction = codeManager.insert(Operation.LA0, 0);
     generateBool(node.getCentreChild());
     codeManager.insert(Operation.BF);
 
@@ -399,13 +420,13 @@ public class SM20Generator {
     generateStatement(node.getRightChild());
 
     // Repeat loop if necessary
-    codeManager.insert(new Instruction(Operation.LA0, ByteUtils.toByteArray(startAddress)));
+    codeManager.insert(Operation.LA0, startAddress);
     generateBool(node.getCentreChild());
     codeManager.insert(Operation.BT);
 
     // Update end instruction address
     int address = codeManager.getCodeGenerationPosition();
-    skipToEndInstruction.setOperands(ByteUtils.toByteArray(address));
+    codeManager.setOperand(skipToEndInstruction, address);
   }
 
   /**
@@ -413,8 +434,7 @@ public class SM20Generator {
    */
   private void generateIf(Node node) {
     // Branch depending on whether the condition was successful
-    Instruction skipToElseInstruction = new Instruction(Operation.LA0, ByteUtils.toByteArray(0));
-    codeManager.insert(skipToElseInstruction);
+    int skipToElseInstruction = codeManager.insert(Operation.LA0, 0);
 
     // Generate condition and branch
     generateBool(node.getLeftChild());
@@ -425,22 +445,21 @@ public class SM20Generator {
 
     // Prepare to generate skip over else
     Node elseStatements = node.getRightChild();
-    Instruction skipToEndInstruction = null;
+    int skipToEndInstruction = -1;
     if (elseStatements != null) {
-      skipToEndInstruction = new Instruction(Operation.LA0, ByteUtils.toByteArray(0));
-      codeManager.insert(skipToEndInstruction);
+      skipToEndInstruction = codeManager.insert(Operation.LA0, 0);
       codeManager.insert(Operation.BR);
     }
 
     // Update instruction to point to instruction immediately after statements
     int address = codeManager.getCodeGenerationPosition();
-    skipToElseInstruction.setOperands(ByteUtils.toByteArray(address));
+    codeManager.setOperand(skipToElseInstruction, address);
 
     // Generate else statements
     if (elseStatements != null) {
       generateStatement(elseStatements);
       int endAddress = codeManager.getCodeGenerationPosition();
-      skipToEndInstruction.setOperands(ByteUtils.toByteArray(endAddress));
+      codeManager.setOperand(skipToEndInstruction, endAddress);
     }
   }
 
@@ -591,7 +610,7 @@ public class SM20Generator {
   private void generatePrintEntry(Node node) {
     switch (node.getType()) {
       case STRING:
-        codeManager.insert(new BackfillInstruction(node.getSymbol(), Operation.PLACEHOLDER_LA));
+        codeManager.insertBackfill(node.getSymbol(), Operation.PLACEHOLDER_LA);
         codeManager.insert(Operation.STRPR);
         return;
       default:
@@ -631,12 +650,7 @@ public class SM20Generator {
    */
   private void loadSimpleVariableAddress(Node node) {
     // Generate backfillable instruction with target symbol handle
-    codeManager.insert(
-      new BackfillInstruction(
-        node.getSymbol(),
-        Operation.PLACEHOLDER_LA
-      )
-    );
+    codeManager.insertBackfill(node.getSymbol(), Operation.PLACEHOLDER_LA);
   }
 
   private void loadArrayVariableAddress(Node node) {
@@ -664,7 +678,7 @@ public class SM20Generator {
    * Load a simple variable's value onto the stack.
    */
   private void loadSimpleVariable(Node node) {
-    codeManager.insert(new BackfillInstruction(node.getSymbol(), Operation.PLACEHOLDER_LV));
+    codeManager.insertBackfill(node.getSymbol(), Operation.PLACEHOLDER_LV);
   }
 
   /**
@@ -687,8 +701,13 @@ public class SM20Generator {
         generateBoolean(false);
         return;
       case INTEGER_LITERAL:
+        codeManager.insertInteger(
+          node.getSymbol().getFirstAttribute(IntegerConstantAttribute.class).getConstant(),
+          node.getSymbol()
+        );
+        return;
       case REAL_LITERAL:
-        codeManager.insert(new BackfillInstruction(node.getSymbol(), Operation.PLACEHOLDER_LV));
+        codeManager.insertBackfill(node.getSymbol(), Operation.PLACEHOLDER_LV);
         return;
       case ADD:
         generateNoOperandInstruction(node, Operation.ADD);
@@ -734,7 +753,7 @@ public class SM20Generator {
     // Push return value
     DataType returnType = symbol.getFirstAttribute(ReturnTypeAttribute.class).getType();
     if (!returnType.isVoid()) {
-      codeManager.insert(new Instruction(Operation.LB, (byte) 0));
+      codeManager.insert(Operation.LB, 0);
     }
 
     // Push parameters in reverse order
@@ -744,8 +763,8 @@ public class SM20Generator {
     }
 
     // Push no. of params + address of sub program
-    codeManager.insert(new Instruction(Operation.LB, (byte) numberOfParams));
-    codeManager.insert(new BackfillInstruction(symbol, Operation.PLACEHOLDER_LA));
+    codeManager.insertInteger(numberOfParams);
+    codeManager.insertBackfill(symbol, Operation.PLACEHOLDER_LA);
     codeManager.insert(Operation.JS2);
 
     symbolManager.leaveScope();
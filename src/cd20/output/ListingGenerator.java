@@ -4,43 +4,66 @@ import java.util.List;
 import java.util.Map;
 
 import cd20.StringUtils;
+import cd20.scanner.LineIndex;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
  * Manages source code listing.
+ *
+ * Lines are recorded as offsets into the source, and are only rendered when
+ * the listing is output. A listing may also leave out the source and only
+ * report annotations.
  */
 public class ListingGenerator {
-  private List<String> lines;
+  private CharSequence source = "";
+  private LineIndex lines = new LineIndex();
+  private int end = 0;
   private Map<Integer, List<Annotation>> annotationMap;
+  private final boolean isSourceListed;
 
   public ListingGenerator() {
-    lines = new ArrayList<>();
-    annotationMap = new HashMap<>();
+    this(true);
   }
 
   /**
-   * Add a single Character.
-   * Note: Characters must be added in order, and no line may be skipped.
+   * @param isSourceListed Whether to list the source alongside annotations.
+   * If not, the source doesn't have to be kept in memory.
    */
-  public void addCharacter(int line, Character ch) {
-    addString(line, ch.toString());
+  public ListingGenerator(boolean isSourceListed) {
+    this.isSourceListed = isSourceListed;
+    annotationMap = new HashMap<>();
+  }
+
+  public boolean isSourceListed() {
+    return isSourceListed;
   }
 
   /**
-   * Add a String to a line.
-   * Note: Strings must be added in order, and no line may be skipped.
+   * Set the source to list.
+   * @param source Source text, indexed by offset.
+   * @param lines Index of line starts, which may continue to grow as the
+   * source is scanned.
    */
-  public void addString(int line, String string) {
-    if (lines.size() < line) {
-      lines.add(line - 1, "");
-    }
+  public void setSource(CharSequence source, LineIndex lines) {
+    this.source = source;
+    this.lines = lines;
+  }
 
-    lines.set(line - 1, lines.get(line - 1).concat(string));
+  /**
+   * Set how much of the source has been read. Nothing past this offset will be
+   * included in the listing.
+   * @param offset Offset immediately after the last character read.
+   */
+  public void setEnd(int offset) {
+    this.end = offset;
   }
 
   /**
@@ -63,9 +86,21 @@ public class ListingGenerator {
    * Warning: this will replace any existing file.
    */
   public void writeToFile(String path) throws IOException {
-    BufferedWriter writer = new BufferedWriter(new FileWriter(path));
-    writer.append(toString());
-    writer.close();
+    writeToFile(path, null);
+  }
+
+  /**
+   * Write the contents of the controller to a file, while also copying it to
+   * another output.
+   *
+   * Warning: this will replace any existing file.
+   * @param path Path to file.
+   * @param copy Another output to write to, or null.
+   */
+  public void writeToFile(String path, Appendable copy) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), Charset.defaultCharset())) {
+      writeTo(copy == null ? writer : new TeeAppendable(writer, copy));
+    }
   }
 
   /**
@@ -74,19 +109,46 @@ public class ListingGenerator {
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
-    int lineNumberWidth = String.valueOf(lines.size()).length();
+
+    try {
+      writeTo(builder);
+    } catch (IOException exception) {
+      // StringBuilder never throws
+      throw new UncheckedIOException(exception);
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * Render the listing, line by line, straight to an output.
+   * @param out Output to write to.
+   */
+  public void writeTo(Appendable out) throws IOException {
+    int lineCount = lines.getLineCount();
+
+    // Only list lines that have been read into
+    while (lineCount > 0 && lines.getLineStart(lineCount - 1) >= end) {
+      lineCount--;
+    }
+
+    int lineNumberWidth = String.valueOf(lineCount).length();
 
     // Include each line
-    for (int idx = 0; idx < lines.size(); idx++) {
-      String line = lines.get(idx);
+    for (int idx = 0; idx < lineCount; idx++) {
+      int start = lines.getLineStart(idx);
+      int stop = idx + 1 < lineCount ? lines.getLineStart(idx + 1) : end;
       String lineNumber = StringUtils.leftPad(lineNumberWidth, String.valueOf(idx + 1));
 
-      // Strip trailing newline
-      if (line.endsWith("\n")) {
-        line = line.substring(0, line.length() - 1);
-      }
+      if (isSourceListed) {
+        // Strip trailing newline
+        if (stop > start && source.charAt(stop - 1) == '\n') {
+          stop--;
+        }
 
-      builder.append(lineNumber + " | " + line + "\n");
+        out.append(lineNumber).append(" | ");
+        out.append(source, start, stop).append('\n');
+      }
 
       // Are there any annotationMap for this line?
       if (!annotationMap.containsKey(idx)) {
@@ -95,10 +157,8 @@ public class ListingGenerator {
 
       // Append any annotationMap
       for (Annotation annotation : annotationMap.get(idx)) {
-        builder.append(annotation.format(lineNumberWidth) + "\n");
+        out.append(annotation.format(lineNumberWidth)).append('\n');
       }
     }
-
-    return builder.toString();
   }
 }
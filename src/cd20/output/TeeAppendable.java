@@ -0,0 +1,42 @@
+package cd20.output;
+
+import java.io.IOException;
+
+/**
+ * An {@link Appendable} that copies everything appended to it into several
+ * other appendables.
+ */
+public class TeeAppendable implements Appendable {
+  private final Appendable[] targets;
+
+  public TeeAppendable(Appendable... targets) {
+    this.targets = targets;
+  }
+
+  @Override
+  public Appendable append(CharSequence sequence) throws IOException {
+    for (Appendable target : targets) {
+      target.append(sequence);
+    }
+
+    return this;
+  }
+
+  @Override
+  public Appendable append(CharSequence sequence, int start, int end) throws IOException {
+    for (Appendable target : targets) {
+      target.append(sequence, start, end);
+    }
+
+    return this;
+  }
+
+  @Override
+  public Appendable append(char ch) throws IOException {
+    for (Appendable target : targets) {
+      target.append(ch);
+    }
+
+    return this;
+  }
+}
@@ -1,50 +1,79 @@
 package cd20.parser;
 
+/**
+ * A CD20 data type.
+ *
+ * Instances are canonical: there is exactly one instance per type, so types
+ * may be compared by reference and checks only compare a {@link Kind}.
+ * Struct and array types aren't parsed yet, so only the simple types exist.
+ */
 public class DataType {
+  public enum Kind {
+    INTEGER,
+    REAL,
+    BOOLEAN,
+    STRING,
+    VOID,
+    STRUCT,
+    ARRAY
+  }
+
+  public static final DataType INTEGER = new DataType(Kind.INTEGER, "int");
+  public static final DataType REAL = new DataType(Kind.REAL, "real");
+  public static final DataType BOOLEAN = new DataType(Kind.BOOLEAN, "bool");
+  public static final DataType STRING = new DataType(Kind.STRING, "string");
+  public static final DataType VOID = new DataType(Kind.VOID, "void");
+
+  private final Kind kind;
   private final String type;
 
-  public DataType(String type) {
+  private DataType(Kind kind, String type) {
+    this.kind = kind;
     this.type = type;
   }
 
+  public Kind getKind() {
+    return kind;
+  }
+
   public String getType() {
     return type;
   }
 
   public boolean isInteger() {
-    return type.equals("int");
+    return kind == Kind.INTEGER;
   }
 
   public boolean isReal() {
-    return type.equals("real");
+    return kind == Kind.REAL;
   }
 
   public boolean isBoolean() {
-    return type.equals("bool");
+    return kind == Kind.BOOLEAN;
   }
 
   public boolean isString() {
-    return type.equals("string");
+    return kind == Kind.STRING;
   }
 
   public boolean isVoid() {
-    return type.equals("void");
+    return kind == Kind.VOID;
   }
 
   public boolean isStruct() {
-    return type.startsWith("__struct__"); 
+    return kind == Kind.STRUCT;
   }
 
   public boolean isArray() {
-    return type.startsWith("__array__");
+    return kind == Kind.ARRAY;
   }
 
   public boolean isNumeric() {
-    return isReal() || isInteger();
+    return kind == Kind.INTEGER || kind == Kind.REAL;
   }
 
   public boolean equals(DataType type) {
-    return type.getType().equals(getType());
+    return this == type;
   }
 
   public boolean isAssignable(DataType type) {
@@ -2,6 +2,7 @@ package cd20.parser;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,7 +10,9 @@ import cd20.output.Annotation;
 import cd20.output.ListingGenerator;
 import cd20.output.WarningAnnotation;
 import cd20.scanner.Scanner;
+import cd20.scanner.StreamTokenCursor;
 import cd20.scanner.Token;
+import cd20.scanner.TokenCursor;
 import cd20.scanner.TokenType;
 import cd20.symboltable.BaseRegister;
 import cd20.symboltable.Symbol;
@@ -25,24 +28,43 @@ import cd20.symboltable.attribute.*;
  */
 public class Parser {
   private final ListingGenerator output;
-  private final Scanner scanner;
+  private final TokenCursor tokens;
   private final SymbolTableManager symbolManager;
 
-  private Token nextToken;
   private Node rootNode;
 
   public Parser(Reader reader, SymbolTableManager symbolManager, ListingGenerator output) {
-    this.scanner = new Scanner(reader, output);
+    this(new Scanner(reader, output), symbolManager, output);
+  }
+
+  public Parser(Path path, SymbolTableManager symbolManager, ListingGenerator output) throws IOException {
+    this(new Scanner(path, output), symbolManager, output);
+  }
+
+  public Parser(Scanner scanner, SymbolTableManager symbolManager, ListingGenerator output) {
+    this(new StreamTokenCursor(scanner), symbolManager, output);
+  }
+
+  /**
+   * Construct a parser over any source of tokens, such as a
+   * {@link cd20.scanner.TokenBuffer}.
+   */
+  public Parser(TokenCursor tokens, SymbolTableManager symbolManager, ListingGenerator output) {
+    this.tokens = tokens;
     this.output = output;
     this.symbolManager = symbolManager;
   }
 
+  public SymbolTableManager getSymbolManager() {
+    return symbolManager;
+  }
+
   /**
    * Begin parsing a CD20 program.
    * @return An abstract syntax tree.
    */
   public Node parse() throws IOException {
-    nextToken = scanner.nextToken();
+    tokens.advance();
 
     try {
       return parseProgram();
@@ -72,8 +94,8 @@ public class Parser {
    */
   private void expect(TokenType type) throws UnexpectedTokenException {
     // Handle unexpected token
-    if (nextToken.getType() != type) {
-      throw new UnexpectedTokenException(type, nextToken);
+    if (tokens.getType() != type) {
+      throw new UnexpectedTokenException(type, tokens.getToken());
     }
   }
 
@@ -81,7 +103,7 @@ public class Parser {
    * Expects and consumes an identifier, and returns consumed lexeme.
    */
   private String expectIdentifier() throws IOException, UnexpectedTokenException {
-    String lexeme = nextToken.getLexeme();
+    String lexeme = tokens.getLexeme();
     expect(TokenType.IDENTIFIER);
     return lexeme;
   }
@@ -107,23 +129,23 @@ public class Parser {
 
     warn(
       String.format("Expected %s. Will try continuing anyway.", type.getHumanReadable()),
-      nextToken
+      tokens.getToken()
     );
   }
 
   /**
    * Throw a semantic exception if the node is not numeric.
    * @param node Node to check type of.
-   * @param token Token to annotate exception to.
+   * @param mark Mark of the token to annotate exception to.
    */
-  private void expectNumeric(Node node, Token token) throws SemanticException {
+  private void expectNumeric(Node node, int mark) throws SemanticException {
     DataType nodeType = AttributeUtils.getDataType(node);
 
     // Ensure exponent is numeric
     if (!nodeType.isNumeric()) {
       throw new SemanticException(
           String.format("Type must be numerical. Instead found type: %s", nodeType.toString()),
-          token
+          tokens.getToken(mark)
       );
     }
   }
@@ -131,31 +153,46 @@ public class Parser {
   /**
    * Throw a semantic exception if the node is not a boolean.
    * @param node Node to check type of.
-   * @param token Token to annotate exception to.
+   * @param mark Mark of the token to annotate exception to.
    */
-  private void expectBoolean(Node node, Token token) throws SemanticException {
+  private void expectBoolean(Node node, int mark) throws SemanticException {
     DataType type = AttributeUtils.getDataType(node);
 
     if (!type.isBoolean()) {
       throw new SemanticException(
           String.format("Type must be boolean. Instead found type: %s", type.toString()),
-          token
+          tokens.getToken(mark)
       );
     }
   }
 
+  /**
+   * Propagate a child's data type to its parent, whose symbol is placed at
+   * a marked token.
+   */
+  private void propogateDataType(Node child, Node parent, int mark) {
+    AttributeUtils.propogateDataType(child, parent, tokens.getPosition(mark), tokens.getLineIndex());
+  }
+
+  /**
+   * Create a temporary symbol at the current token, for type checking.
+   */
+  private Symbol createTemporary() {
+    return new Symbol(SymbolType.TEMPORARY, null, tokens.getPosition(), tokens.getLineIndex());
+  }
+
   /**
    * Determine whether the next token is of the given {@link TokenType}.
    */
   private boolean isNext(TokenType type) {
-    return nextToken.getType() == type;
+    return tokens.getType() == type;
   }
 
   /**
    * Move to the next available {@link Token}
    */
   private void consume() throws IOException {
-    nextToken = scanner.nextToken();
+    tokens.advance();
   }
 
   /**
@@ -186,7 +223,7 @@ public class Parser {
           endLexeme,
           rootNode.getValue()
         ),
-        nextToken
+        tokens.getToken()
       );
     }
 
@@ -261,12 +298,12 @@ public class Parser {
     if (symbolManager.containsSymbol(lexeme)) {
       throw new SemanticException(
         String.format("Duplicate identifier: '%s'. Function names must be unique.", lexeme),
-        nextToken
+        tokens.getToken()
       );
     }
 
     // Create symbol
-    Symbol symbol = new Symbol(SymbolType.FUNCTION, nextToken);
+    Symbol symbol = new Symbol(SymbolType.FUNCTION, lexeme, tokens.getPosition(), tokens.getLineIndex());
     func.setSymbol(symbol);
     symbolManager.insertSymbol(symbol);
     symbolManager.createScope(String.format("__function__%s", lexeme));
@@ -303,7 +340,7 @@ public class Parser {
     // Handle void
     if (isNext(TokenType.VOID)) {
       consume();
-      return new ReturnTypeAttribute(new DataType("void"));
+      return new ReturnTypeAttribute(DataType.VOID);
     }
 
     Node stype = parseDataType();
@@ -478,11 +515,14 @@ public class Parser {
     if (isNext(TokenType.ELSE) || isNext(TokenType.END) || isNext(TokenType.UNTIL)) {
       warn(
         "At least one statement is required here.\nWill try continuing anyway.",
-        nextToken
+        tokens.getToken()
       );
       return null;
     }
 
+    // Marks taken in earlier statements are no longer needed
+    tokens.clearMarks();
+
     // First, handle simpler <strstat>
     Node statement = parseBlockStatement();
 
@@ -509,7 +549,7 @@ public class Parser {
    * Parses optionally more statements.
    */
   private Node parseOptionalStatements() throws IOException, ParserException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case ELSE:
       case END:
       case UNTIL:
@@ -524,7 +564,7 @@ public class Parser {
    * @return A {@link Node} containing a block statement.
    */
   private Node parseBlockStatement() throws IOException, ParserException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case FOR:
         return parseForStatement();
       case IF:
@@ -632,7 +672,7 @@ public class Parser {
    * Parse a simple inline statement
    */
   private Node parseInlineStatement() throws IOException, ParserException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case REPEAT:
         return parseRepeatStatement();
       case INPUT:
@@ -652,14 +692,14 @@ public class Parser {
    */
   private Node parseStatementPrime() throws ParserException, IOException {
     String lexeme = expectIdentifier();
-    Token token = nextToken;
+    int mark = tokens.mark();
     consume();
 
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case LEFT_PAREN:
         return parseFunctionCallStatement(lexeme);
       default:
-        return parseAssignment(lexeme, token);
+        return parseAssignment(lexeme, mark);
     }
   }
 
@@ -688,14 +728,14 @@ public class Parser {
    * Parse a function call statement
    */
   private Node parseFunctionCallStatement(String lexeme) throws IOException, ParserException {
-    Token callToken = nextToken;
+    int callMark = tokens.mark();
     Node node = new Node(NodeType.FUNCTION_CALL, lexeme);
 
     Symbol symbol = symbolManager.resolve(lexeme);
     if (symbol == null) {
       throw new SemanticException(
           String.format("Unknown function: '%s'", lexeme),
-          callToken
+          tokens.getToken(callMark)
       );
     }
     node.setSymbol(symbol);
@@ -747,27 +787,27 @@ public class Parser {
    */
   private Node parseAssignment() throws ParserException, IOException {
     String identifier = expectIdentifier();
-    Token token = nextToken;
+    int mark = tokens.mark();
     consume();
-    return parseAssignment(identifier, token);
+    return parseAssignment(identifier, mark);
   }
 
   /**
    * Parse an assignment statement.
    * @param lexeme Lexeme of the variable being assigned to.
-   * @param token Token.
+   * @param mark Mark of the variable's token.
    */
-  private Node parseAssignment(String lexeme, Token token) throws ParserException, IOException {
+  private Node parseAssignment(String lexeme, int mark) throws ParserException, IOException {
     // Handle <var><asgnop>
-    Token varToken = nextToken;
-    Node varNode = parseVar(lexeme, token);
+    int varMark = tokens.mark();
+    Node varNode = parseVar(lexeme, mark);
     Node asignOp = parseAssignmentOp();
     asignOp.setLeftChild(varNode);
 
     // Find relevant symbol
     Symbol symbol = symbolManager.resolve(lexeme);
     if (symbol.hasAttribute(ImmutableAttribute.class)) {
-      throw new SemanticException("Attempted to assign to an immutable constant variable.", varToken);
+      throw new SemanticException("Attempted to assign to an immutable constant variable.", tokens.getToken(varMark));
     }
 
     asignOp.setSymbol(symbol);
@@ -781,7 +821,7 @@ public class Parser {
     if (!varType.isAssignable(boolType)) {
       throw new SemanticException(
           String.format("Cannot assign type %s to %s.", boolType.toString(), varType.toString()),
-          varToken
+          tokens.getToken(varMark)
       );
     }
 
@@ -794,7 +834,7 @@ public class Parser {
    * Parse an assignment operator
    */
   private Node parseAssignmentOp() throws IOException, UnexpectedTokenException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case ASSIGN:
         consume();
         return new Node(NodeType.ASSIGN);
@@ -811,7 +851,7 @@ public class Parser {
         consume();
         return new Node(NodeType.DIVIDE_EQUALS);
       default:
-        throw new UnexpectedTokenException("an assignment operator", nextToken);
+        throw new UnexpectedTokenException("an assignment operator", tokens.getToken());
     }
   }
 
@@ -843,7 +883,7 @@ public class Parser {
    * Parse an I/O statment.
    */
   private Node parseIoStatement() throws IOException, ParserException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case INPUT:
         return parseInputStatement();
       case PRINT:
@@ -851,7 +891,7 @@ public class Parser {
       case PRINTLN:
         return parsePrintLineStatement();
       default:
-        throw new UnexpectedTokenException("'input', 'print', or 'println'", nextToken);
+        throw new UnexpectedTokenException("'input', 'print', or 'println'", tokens.getToken());
     }
   }
 
@@ -925,15 +965,15 @@ public class Parser {
   private Node parsePrint() throws IOException, ParserException {
     // Handle <string>
     if (isNext(TokenType.STRING_LITERAL)) {
-      Node node = new Node(NodeType.STRING, nextToken.getLexeme());
-      String symName = "__string__" + nextToken.getLexeme().replace(" ", "_");
+      Node node = new Node(NodeType.STRING, tokens.getLexeme());
+      String symName = "__string__" + tokens.getLexeme().replace(" ", "_");
       Symbol symbol = symbolManager.resolveConstant(symName);
 
       if (symbol == null) {
         symbol = SymbolBuilder.fromType(SymbolType.STRING_CONSTANT)
           .withValue(symName)
-          .withTokenPosition(nextToken)
-          .withAttribute(new StringConstantAttribute(nextToken.getLexeme()))
+          .withPosition(tokens.getPosition(), tokens.getLineIndex())
+          .withAttribute(new StringConstantAttribute(tokens.getLexeme()))
           .build();
         symbolManager.insertConstant(symbol);
       }
@@ -1000,18 +1040,18 @@ public class Parser {
     // Handle identifier
     expect(TokenType.IDENTIFIER);
 
-    Node node = new Node(NodeType.INIT, nextToken.getLexeme());
+    Node node = new Node(NodeType.INIT, tokens.getLexeme());
 
     // Ensure that this symbol has not already been defined.
-    if (symbolManager.containsSymbol(nextToken.getLexeme())) {
+    if (symbolManager.containsSymbol(tokens.getLexeme())) {
       throw new SemanticException(
-        String.format("Duplicate identifier: '%s'", nextToken.getLexeme()),
-        nextToken
+        String.format("Duplicate identifier: '%s'", tokens.getLexeme()),
+        tokens.getToken()
       );
     }
 
     // Move on
-    Token initToken = nextToken;
+    int initMark = tokens.mark();
     consume();
     expectAndConsume(TokenType.ASSIGN);
 
@@ -1019,8 +1059,8 @@ public class Parser {
     Node expression = parseExpression();
     DataType type = AttributeUtils.getDataType(expression);
     Symbol symbol = SymbolBuilder.fromType(SymbolType.fromDataType(type))
-      .withValue(initToken.getLexeme())
-      .withTokenPosition(initToken)
+      .withValue(node.getValue())
+      .withPosition(tokens.getPosition(initMark), tokens.getLineIndex())
       .withAttribute(new DataTypeAttribute(type))
       .withAttribute(new ImmutableAttribute())
       .build();
@@ -1102,7 +1142,7 @@ public class Parser {
     // Handle of <structid>
     expectAndConsume(TokenType.OF);
     expect(TokenType.IDENTIFIER);
-    node.setNextChild(new Node(NodeType.SIMPLE_VARIABLE, nextToken.getLexeme()));
+    node.setNextChild(new Node(NodeType.SIMPLE_VARIABLE, tokens.getLexeme()));
     consume();
 
     return node;
@@ -1156,8 +1196,9 @@ public class Parser {
    */
   private Node parseDeclaration(BaseRegister register, boolean isParameter) throws ParserException, IOException {
     // Handle <ident> :
-    Token token = nextToken;
-    Node node = new Node(NodeType.SDECL, expectIdentifier());
+    int mark = tokens.mark();
+    String lexeme = expectIdentifier();
+    Node node = new Node(NodeType.SDECL, lexeme);
     consume();
 
     expectAndConsumeOrInsert(TokenType.COLON);
@@ -1167,10 +1208,10 @@ public class Parser {
     node.setNextChild(dataType);
 
     // Ensure this isn't a duplicate declaration
-    if (symbolManager.containsSymbol(token.getLexeme())) {
+    if (symbolManager.containsSymbol(lexeme)) {
       throw new SemanticException(
-        String.format("Duplicate identifier: '%s'", token.getLexeme()),
-        token
+        String.format("Duplicate identifier: '%s'", lexeme),
+        tokens.getToken(mark)
       );
     }
 
@@ -1179,8 +1220,8 @@ public class Parser {
 
     // Create symbol
     SymbolBuilder builder = SymbolBuilder.fromType(SymbolType.fromDataType(type))
-      .withValue(token.getLexeme())
-      .withTokenPosition(token)
+      .withValue(lexeme)
+      .withPosition(tokens.getPosition(mark), tokens.getLineIndex())
       .withAttribute(new DataTypeAttribute(type));
 
     if (isParameter) {
@@ -1200,25 +1241,25 @@ public class Parser {
   private Node parseDataType() throws UnexpectedTokenException, IOException {
     DataType type;
 
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case INT:
-        type = new DataType("int");
+        type = DataType.INTEGER;
         break;
       case REAL:
-        type = new DataType("real");
+        type = DataType.REAL;
         break;
       case BOOL:
-        type = new DataType("bool");
+        type = DataType.BOOLEAN;
         break;
       case IDENTIFIER:
         // TODO
-        // lexeme = nextToken.getLexeme();
+        // lexeme = tokens.getLexeme();
         throw new UnsupportedOperationException("Not implemented");
       default:
-        throw new UnexpectedTokenException("'int', 'real', 'bool', or an identifier", nextToken);
+        throw new UnexpectedTokenException("'int', 'real', 'bool', or an identifier", tokens.getToken());
     }
 
-    Symbol symbol = new Symbol(SymbolType.TEMPORARY, nextToken);
+    Symbol symbol = createTemporary();
     symbol.addAttribute(new DataTypeAttribute(type));
 
     consume();
@@ -1274,7 +1315,7 @@ public class Parser {
   private Node parseArrayDecl() throws UnexpectedTokenException, IOException {
     // Handle <id>
     expect(TokenType.IDENTIFIER);
-    Node node = new Node(NodeType.ARRAY_DECL, nextToken.getLexeme());
+    Node node = new Node(NodeType.ARRAY_DECL, tokens.getLexeme());
     consume();
 
     // Handle :
@@ -1282,7 +1323,7 @@ public class Parser {
 
     // Handle <typeid>
     expect(TokenType.IDENTIFIER);
-    node.setNextChild(new Node(NodeType.SIMPLE_VARIABLE, nextToken.getLexeme()));
+    node.setNextChild(new Node(NodeType.SIMPLE_VARIABLE, tokens.getLexeme()));
     consume();
 
     return node;
@@ -1292,14 +1333,14 @@ public class Parser {
    * Parse an expression.
    */
   private Node parseExpression() throws IOException, ParserException {
-    Token termToken = nextToken;
+    int termMark = tokens.mark();
     Node term = parseTerm();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseExpressionPrime();
 
     if (chain != null) {
-      expectNumeric(term, termToken);
-      expectNumeric(chain, chainToken);
+      expectNumeric(term, termMark);
+      expectNumeric(chain, chainMark);
       
       chain.setLeftChild(term);
       return chain;
@@ -1323,26 +1364,26 @@ public class Parser {
       return null;
     }
 
-    Token nodeToken = nextToken;
+    int nodeMark = tokens.mark();
     consume(); // Consume the +/- symbol
 
     // Parse the term and recursively parse the remainder of the chain
-    Token termToken = nextToken;
+    int termMark = tokens.mark();
     Node term = parseTerm();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseExpressionPrime();
       
     // There are more nodes to come
     if (chain != null) {
-      expectNumeric(term, termToken);
-      expectNumeric(chain, chainToken);
+      expectNumeric(term, termMark);
+      expectNumeric(chain, chainMark);
 
-      AttributeUtils.propogateDataType(term, node, nodeToken);
+      propogateDataType(term, node, nodeMark);
 
       node.setLeftChild(term);
       node.setRightChild(chain);
     } else {
-      AttributeUtils.propogateDataType(term, node, nodeToken);
+      propogateDataType(term, node, nodeMark);
       node.setRightChild(term);
     }
 
@@ -1353,14 +1394,14 @@ public class Parser {
    * Parse a term.
    */
   private Node parseTerm() throws IOException, ParserException {
-    Token factToken = nextToken;
+    int factMark = tokens.mark();
     Node fact = parseFact();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseTermPrime();
 
     if (chain != null) {
-      expectNumeric(fact, factToken);
-      expectNumeric(chain, chainToken);
+      expectNumeric(fact, factMark);
+      expectNumeric(chain, chainMark);
 
       chain.setLeftChild(fact);
       return chain;
@@ -1386,26 +1427,26 @@ public class Parser {
       return null;
     }
 
-    Token nodeToken = nextToken;
+    int nodeMark = tokens.mark();
     consume(); // Consume the * / % token
 
     // Parse the term and recursively parse the remainder of the chain
-    Token termToken = nextToken;
+    int termMark = tokens.mark();
     Node term = parseFact();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseTermPrime();
 
     // There are more nodes to come
     if (chain != null) {
-      expectNumeric(term, termToken);
-      expectNumeric(chain, chainToken);
+      expectNumeric(term, termMark);
+      expectNumeric(chain, chainMark);
 
-      AttributeUtils.propogateDataType(term, node, nodeToken);
+      propogateDataType(term, node, nodeMark);
 
       node.setLeftChild(term);
       node.setRightChild(chain);
     } else {
-      AttributeUtils.propogateDataType(term, node, nodeToken);
+      propogateDataType(term, node, nodeMark);
       node.setRightChild(term);
     }
 
@@ -1416,14 +1457,14 @@ public class Parser {
    * Parse a fact.
    */
   private Node parseFact() throws IOException, ParserException {
-    Token exponentToken = nextToken;
+    int exponentMark = tokens.mark();
     Node exponent = parseExponent();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseFactPrime();
 
     if (chain != null) {
-      expectNumeric(exponent, exponentToken);
-      expectNumeric(chain, chainToken);
+      expectNumeric(exponent, exponentMark);
+      expectNumeric(chain, chainMark);
 
       chain.setLeftChild(exponent);
       return chain;
@@ -1443,11 +1484,11 @@ public class Parser {
     // Create new node for exponent
     // <fact>
     Node power = new Node(NodeType.POWER);
-    Token powerToken = nextToken;
+    int powerMark = tokens.mark();
     power.setRightChild(parseFact());
 
     // Propogate type
-    AttributeUtils.propogateDataType(power.getRightChild(), power, powerToken);
+    propogateDataType(power.getRightChild(), power, powerMark);
     
     return power;
   }
@@ -1466,7 +1507,7 @@ public class Parser {
     // Handle <int>
     if (isNext(TokenType.INTEGER_LITERAL)) {
       // Generate lexeme
-      String lexeme = nextToken.getLexeme();
+      String lexeme = tokens.getLexeme();
       if (isNegative) lexeme = "-" + lexeme;
       Node node = new Node(NodeType.INTEGER_LITERAL, lexeme);
       Symbol symbol = symbolManager.resolveConstant(lexeme);
@@ -1475,9 +1516,9 @@ public class Parser {
       if (symbol == null) {
         symbol = SymbolBuilder.fromType(SymbolType.INTEGER_CONSTANT)
           .withValue(lexeme)
-          .withTokenPosition(nextToken)
+          .withPosition(tokens.getPosition(), tokens.getLineIndex())
           .withAttribute(new IntegerConstantAttribute(lexeme))
-          .withAttribute(new DataTypeAttribute("int"))
+          .withAttribute(new DataTypeAttribute(DataType.INTEGER))
           .build();
         symbolManager.insertConstant(symbol);
       }
@@ -1490,7 +1531,7 @@ public class Parser {
     // Handle <real>
     if (isNext(TokenType.FLOAT_LITERAL)) {
       // Generate lexeme
-      String lexeme = nextToken.getLexeme();
+      String lexeme = tokens.getLexeme();
       if (isNegative) lexeme = "-" + lexeme;
       Node node = new Node(NodeType.REAL_LITERAL, lexeme);
       Symbol symbol = symbolManager.resolveConstant(lexeme);
@@ -1499,9 +1540,9 @@ public class Parser {
       if (symbol == null) {
         symbol = SymbolBuilder.fromType(SymbolType.FLOAT_CONSTANT)
           .withValue(lexeme)
-          .withTokenPosition(nextToken)
+          .withPosition(tokens.getPosition(), tokens.getLineIndex())
           .withAttribute(new FloatConstantAttribute(lexeme))
-          .withAttribute(new DataTypeAttribute("real"))
+          .withAttribute(new DataTypeAttribute(DataType.REAL))
           .build();
         symbolManager.insertConstant(symbol);
       }
@@ -1516,9 +1557,9 @@ public class Parser {
       warn(
         String.format(
           "Cannot have a negative %s.\nWill try continuing without the minus sign.",
-          nextToken.getType().getHumanReadable()
+          tokens.getType().getHumanReadable()
         ),
-        nextToken
+        tokens.getToken()
       );
     }
 
@@ -1527,8 +1568,8 @@ public class Parser {
       Node node = new Node(NodeType.TRUE);
 
       // Create symbol for type checking
-      Symbol symbol = new Symbol(SymbolType.TEMPORARY, nextToken);
-      symbol.addAttribute(new DataTypeAttribute(new DataType("bool")));
+      Symbol symbol = createTemporary();
+      symbol.addAttribute(new DataTypeAttribute(DataType.BOOLEAN));
       node.setSymbol(symbol);
 
       consume();
@@ -1540,8 +1581,8 @@ public class Parser {
       Node node = new Node(NodeType.FALSE);
 
       // Create symbol for type checking
-      Symbol symbol = new Symbol(SymbolType.TEMPORARY, nextToken);
-      symbol.addAttribute(new DataTypeAttribute(new DataType("bool")));
+      Symbol symbol = createTemporary();
+      symbol.addAttribute(new DataTypeAttribute(DataType.BOOLEAN));
       node.setSymbol(symbol);
 
       consume();
@@ -1558,13 +1599,13 @@ public class Parser {
 
     // Handle possible function call
     String lexeme = expectIdentifier();
-    Token token = nextToken;
+    int mark = tokens.mark();
     consume();
     if (isNext(TokenType.LEFT_PAREN)) {
       return parseFunctionCall(lexeme);
     }
 
-    return parseVar(lexeme, token);
+    return parseVar(lexeme, mark);
   }
 
   /**
@@ -1572,7 +1613,7 @@ public class Parser {
    * @param lexeme Function called.
    */
   private Node parseFunctionCall(String lexeme) throws IOException, ParserException {
-    Token callToken = nextToken;
+    int callMark = tokens.mark();
     Node node = new Node(NodeType.FUNC_CALL, lexeme);
     
     // Attempt to resolve symbol
@@ -1580,7 +1621,7 @@ public class Parser {
     if (symbol == null) {
       throw new SemanticException(
           String.format("Unknown function: '%s'.", lexeme),
-          callToken
+          tokens.getToken(callMark)
       );
     }
     node.setSymbol(symbol);
@@ -1606,14 +1647,14 @@ public class Parser {
    * Parse a boolean.
    */
   private Node parseBool() throws IOException, ParserException {
-    Token relToken = nextToken;
+    int relMark = tokens.mark();
     Node rel = parseRel();
-    Token chainToken = nextToken;
+    int chainMark = tokens.mark();
     Node chain = parseOptBool();
 
     if (chain != null) {
-      expectBoolean(rel, relToken);
-      expectBoolean(chain, chainToken);
+      expectBoolean(rel, relMark);
+      expectBoolean(chain, chainMark);
 
       chain.setLeftChild(rel);
       return chain;
@@ -1627,12 +1668,12 @@ public class Parser {
    */
   private Node parseOptBool() throws IOException, ParserException {
     // Attempt to parse logical operator
-    Token logicalOpToken = nextToken;
+    int logicalOpMark = tokens.mark();
     Node logicalOp = parseLogicalOp();
     if (logicalOp == null) return null;
 
     Node bool = parseBool();
-    AttributeUtils.propogateDataType(bool, logicalOp, logicalOpToken);
+    propogateDataType(bool, logicalOp, logicalOpMark);
     logicalOp.setRightChild(bool);
     return logicalOp;
   }
@@ -1642,7 +1683,7 @@ public class Parser {
    * @return A logical op {@link Node} or null.
    */
   private Node parseLogicalOp() throws IOException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case AND:
         consume();
         return new Node(NodeType.AND);
@@ -1661,21 +1702,21 @@ public class Parser {
    * Parse relational statement.
    */
   private Node parseRel() throws IOException, ParserException {
-    Token notToken = nextToken;
+    int notMark = tokens.mark();
     Node not = parseOptNot();
     Node expression = parseExpression();
 
     // Handle <optrelop>
-    Token relOpToken = notToken;
+    int relOpMark = notMark;
     Node relOp = parseOptRelOp();
     if (relOp != null) {
       relOp.setLeftChild(expression);
-      AttributeUtils.propogateDataType(expression, relOp, relOpToken);
+      propogateDataType(expression, relOp, relOpMark);
 
       // Handle possible not
       if (not != null) {
         not.setNextChild(relOp);
-        AttributeUtils.propogateDataType(relOp, not, notToken);
+        propogateDataType(relOp, not, notMark);
         return not;
       }
 
@@ -1685,7 +1726,7 @@ public class Parser {
     // Handle possible not
     if (not != null) {
       not.setNextChild(expression);
-      AttributeUtils.propogateDataType(expression, not, notToken);
+      propogateDataType(expression, not, notMark);
       return not;
     }
 
@@ -1719,7 +1760,7 @@ public class Parser {
    * @return A relative operator {@link Node} or null.
    */
   private Node parseRelOp() throws IOException {
-    switch (nextToken.getType()) {
+    switch (tokens.getType()) {
       case EQUALS_EQUALS:
         consume();
         return new Node(NodeType.EQUAL);
@@ -1748,18 +1789,19 @@ public class Parser {
    */
   private Node parseVar() throws ParserException, IOException {
     String lexeme = expectIdentifier();
-    Token token = nextToken;
+    int mark = tokens.mark();
     consume();
-    return parseVar(lexeme, token);
+    return parseVar(lexeme, mark);
   }
 
   /**
    * Parse a variable
    * @param lexeme Lexeme of the variable.
+   * @param mark Mark of the variable's token.
    */
-  private Node parseVar(String lexeme, Token token) throws ParserException, IOException {
+  private Node parseVar(String lexeme, int mark) throws ParserException, IOException {
     // Handle array variable
-    Node arrVar = parseArrayVar(nextToken.getLexeme());
+    Node arrVar = parseArrayVar(tokens.getLexeme());
     if (arrVar != null) {
       return arrVar;
     }
@@ -1769,7 +1811,7 @@ public class Parser {
     if (symbol == null) {
       throw new SemanticException(
         String.format("Variable '%s' has not been defined.", lexeme),
-        token
+        tokens.getToken(mark)
       );
     }
 
@@ -1797,7 +1839,7 @@ public class Parser {
 
     // Handle <ident>
     expect(TokenType.IDENTIFIER);
-    Node ident = new Node(NodeType.SIMPLE_VARIABLE, nextToken.getLexeme());
+    Node ident = new Node(NodeType.SIMPLE_VARIABLE, tokens.getLexeme());
     node.setRightChild(ident);
     consume();
 
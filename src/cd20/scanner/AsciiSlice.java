@@ -0,0 +1,48 @@
+package cd20.scanner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view of a run of ASCII bytes as a {@link CharSequence}.
+ * Bytes are only copied once the slice is turned into a String.
+ */
+class AsciiSlice implements CharSequence {
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int length;
+
+  AsciiSlice(ByteBuffer buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char) (buffer.get(offset + index) & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new AsciiSlice(buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+
+    byte[] bytes = new byte[length];
+    view.get(bytes);
+
+    // ISO-8859-1 maps every byte to the char of the same value, matching the
+    // decoding in MappedSourceReader
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+}
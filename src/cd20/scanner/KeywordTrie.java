@@ -0,0 +1,145 @@
+package cd20.scanner;
+
+import java.util.Arrays;
+
+/**
+ * A precomputed trie for recognising CD20 keywords.
+ *
+ * Keywords are case insensitive. The trie is walked one character at a time
+ * as an identifier is consumed, so recognising a keyword never allocates.
+ */
+public class KeywordTrie {
+  /**
+   * State before any characters have been seen.
+   */
+  public static final int START = 0;
+
+  /**
+   * State once the characters seen cannot begin any keyword.
+   */
+  public static final int DEAD = -1;
+
+  // Letters a-z, followed by digits 0-9
+  private static final int ALPHABET_SIZE = 36;
+
+  private static final Object[][] KEYWORDS = {
+    { "cd20", TokenType.CD20 },
+    { "constants", TokenType.CONSTANTS },
+    { "types", TokenType.TYPES },
+    { "is", TokenType.IS },
+    { "arrays", TokenType.ARRAYS },
+    { "main", TokenType.MAIN },
+    { "begin", TokenType.BEGIN },
+    { "end", TokenType.END },
+    { "array", TokenType.ARRAY },
+    { "of", TokenType.OF },
+    { "func", TokenType.FUNC },
+    { "void", TokenType.VOID },
+    { "const", TokenType.CONST },
+    { "int", TokenType.INT },
+    { "real", TokenType.REAL },
+    { "bool", TokenType.BOOL },
+    { "for", TokenType.FOR },
+    { "repeat", TokenType.REPEAT },
+    { "until", TokenType.UNTIL },
+    { "if", TokenType.IF },
+    { "else", TokenType.ELSE },
+    { "input", TokenType.INPUT },
+    { "print", TokenType.PRINT },
+    { "println", TokenType.PRINTLN },
+    { "return", TokenType.RETURN },
+    { "not", TokenType.NOT },
+    { "and", TokenType.AND },
+    { "or", TokenType.OR },
+    { "xor", TokenType.XOR },
+    { "true", TokenType.TRUE },
+    { "false", TokenType.FALSE },
+  };
+
+  private static int[][] transitions = new int[1][];
+  private static TokenType[] accepting = new TokenType[1];
+  private static int stateCount = 1;
+
+  static {
+    transitions[START] = newState();
+
+    for (Object[] keyword : KEYWORDS) {
+      insert((String) keyword[0], (TokenType) keyword[1]);
+    }
+
+    transitions = Arrays.copyOf(transitions, stateCount);
+    accepting = Arrays.copyOf(accepting, stateCount);
+  }
+
+  /**
+   * Advance the trie by one character.
+   * @param state Current state.
+   * @param ch Character consumed.
+   * @return Next state, or {@link #DEAD}.
+   */
+  public static int step(int state, int ch) {
+    if (state == DEAD) return DEAD;
+
+    int index = indexOf(ch);
+    if (index == -1) return DEAD;
+
+    return transitions[state][index];
+  }
+
+  /**
+   * Get the number of states in the trie. States are numbered from
+   * {@link #START}.
+   */
+  public static int getStateCount() {
+    return stateCount;
+  }
+
+  /**
+   * Get the keyword recognised by a state.
+   * @param state Final state after walking an identifier.
+   * @return Keyword {@link TokenType}, or null if not a keyword.
+   */
+  public static TokenType accept(int state) {
+    if (state == DEAD) return null;
+    return accepting[state];
+  }
+
+  private static void insert(String keyword, TokenType type) {
+    int state = START;
+
+    for (int idx = 0; idx < keyword.length(); idx++) {
+      int index = indexOf(keyword.charAt(idx));
+
+      if (transitions[state][index] == DEAD) {
+        if (stateCount == transitions.length) {
+          transitions = Arrays.copyOf(transitions, stateCount * 2);
+          accepting = Arrays.copyOf(accepting, stateCount * 2);
+        }
+
+        transitions[stateCount] = newState();
+        transitions[state][index] = stateCount++;
+      }
+
+      state = transitions[state][index];
+    }
+
+    accepting[state] = type;
+  }
+
+  private static int[] newState() {
+    int[] state = new int[ALPHABET_SIZE];
+    Arrays.fill(state, DEAD);
+    return state;
+  }
+
+  /**
+   * Map a character onto the trie's alphabet, ignoring case.
+   * @return Index into the alphabet, or -1 if not in the alphabet.
+   */
+  private static int indexOf(int ch) {
+    if (ch >= 'a' && ch <= 'z') return ch - 'a';
+    if (ch >= 'A' && ch <= 'Z') return ch - 'A';
+    if (ch >= '0' && ch <= '9') return 26 + ch - '0';
+    return -1;
+  }
+}
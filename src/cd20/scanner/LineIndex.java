@@ -0,0 +1,75 @@
+package cd20.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Records the offset at which each line of a source file starts, so that
+ * a source offset can be resolved to a line and column on demand.
+ */
+public class LineIndex {
+  private int[] lineStarts = new int[256];
+  private int lineCount = 0;
+
+  /**
+   * Begin a new line.
+   * Note: Lines must be added in order.
+   * @param offset Offset of the first character on the line.
+   */
+  public void addLine(int offset) {
+    if (lineCount == lineStarts.length) {
+      lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+    }
+
+    lineStarts[lineCount++] = offset;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Get the offset at which a line starts.
+   * @param index Zero based line index.
+   */
+  public int getLineStart(int index) {
+    return lineStarts[index];
+  }
+
+  /**
+   * Find the line containing an offset.
+   * @param offset Source offset.
+   * @return One based line number.
+   */
+  public int getLine(int offset) {
+    return indexOf(offset) + 1;
+  }
+
+  /**
+   * Find the column of an offset within its line.
+   * @param offset Source offset.
+   * @return One based column number.
+   */
+  public int getColumn(int offset) {
+    return offset - lineStarts[indexOf(offset)] + 1;
+  }
+
+  /**
+   * Binary search for the last line starting at or before an offset.
+   */
+  private int indexOf(int offset) {
+    int low = 0;
+    int high = lineCount - 1;
+
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+
+      if (lineStarts[mid] <= offset) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    return low;
+  }
+}
@@ -0,0 +1,94 @@
+package cd20.scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link SourceReader} that reads directly from a {@link ByteBuffer}.
+ *
+ * CD20 source files are ASCII, so each byte is decoded straight into
+ * a character without a {@link java.io.Reader} stack in between.
+ */
+public class MappedSourceReader implements SourceReader {
+  // Files smaller than this are read into the heap, as mapping them costs more
+  // than it saves
+  private static final long MAPPING_THRESHOLD = 64 * 1024;
+
+  private final ByteBuffer buffer;
+  private final int limit;
+  private int position;
+
+  /**
+   * Construct a reader over the remaining bytes of a buffer.
+   * @param buffer Buffer containing ASCII source.
+   */
+  public MappedSourceReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.position = buffer.position();
+    this.limit = buffer.limit();
+  }
+
+  /**
+   * Open a source file.
+   * Large files are memory mapped, while small files are read in a single
+   * pass with a {@link FileChannel}.
+   * @param path Path to source file.
+   */
+  public static MappedSourceReader open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Source file is too large: '" + path + "'");
+      }
+
+      if (size >= MAPPING_THRESHOLD) {
+        return new MappedSourceReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) != -1);
+      buffer.flip();
+
+      return new MappedSourceReader(buffer);
+    }
+  }
+
+  @Override
+  public int read() {
+    if (position >= limit) {
+      return EOF;
+    }
+
+    return buffer.get(position++) & 0xFF;
+  }
+
+  @Override
+  public int peek(int n) {
+    int index = position + n - 1;
+
+    if (index >= limit) {
+      return EOF;
+    }
+
+    return buffer.get(index) & 0xFF;
+  }
+
+  @Override
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public CharSequence slice(int start, int end) {
+    return new AsciiSlice(buffer, start, end - start);
+  }
+
+  @Override
+  public CharSequence getSource() {
+    return new AsciiSlice(buffer, 0, limit);
+  }
+}
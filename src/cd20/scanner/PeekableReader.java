@@ -1,65 +1,157 @@
 package cd20.scanner;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Reader;
 
 /**
- * A simple wrapper around a {@link BufferedReader}, which allows peeking
- * infinitely into the future.
+ * A {@link SourceReader} wrapped around a {@link Reader}.
+ *
+ * Characters are read from the underlying reader in large blocks and kept in
+ * a ring buffer, so reading and peeking never allocate. The buffer only grows
+ * if a single marked lexeme outgrows it.
+ *
+ * The whole source is only kept if it's requested with {@link #getSource()},
+ * e.g. for the listing. Each block is then also appended to a history.
  */
-public class PeekableReader {
-  private BufferedReader reader;
-  private List<Character> buffer = new ArrayList<Character>();
+public class PeekableReader implements SourceReader {
+  // Must be a power of two, so that indices can wrap with a mask
+  private static final int BUFFER_SIZE = 8192;
+  private static final int NO_MARK = -1;
 
-  public PeekableReader(BufferedReader reader) {
+  private final Reader reader;
+  private StringBuilder history;
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int mask = BUFFER_SIZE - 1;
+  private int head = 0;
+  private int count = 0;
+  private int position = 0;
+  private int mark = NO_MARK;
+  private boolean exhausted = false;
+
+  public PeekableReader(Reader reader) {
     this.reader = reader;
   }
 
-  /**
-   * Read and consume the next character
-   * @return {@link Character} next character
-   */
-  public Character read() throws IOException {
-    // Fetch from buffer first
-    if (!buffer.isEmpty()) {
-      return buffer.remove(0);
+  @Override
+  public int read() throws IOException {
+    if (count == 0 && !fill(1)) {
+      return EOF;
+    }
+
+    char ch = buffer[head];
+    head = (head + 1) & mask;
+    count--;
+    position++;
+    return ch;
+  }
+
+  @Override
+  public int peek(int n) throws IOException {
+    if (count < n && !fill(n)) {
+      return EOF;
     }
 
-    int ch = reader.read();
+    return buffer[(head + n - 1) & mask];
+  }
+
+  @Override
+  public int getPosition() {
+    return position;
+  }
+
+  @Override
+  public void mark(int offset) {
+    this.mark = offset;
+  }
+
+  @Override
+  public void clearMark() {
+    this.mark = NO_MARK;
+  }
+
+  @Override
+  public CharSequence slice(int start, int end) {
+    int from = (head - (position - start)) & mask;
+    int length = end - start;
 
-    if (ch == -1) {
-      return null;
+    // Slice does not wrap around the end of the buffer
+    if (from + length <= buffer.length) {
+      return new String(buffer, from, length);
     }
 
-    return Character.valueOf((char) ch);
+    int split = buffer.length - from;
+    char[] chars = new char[length];
+    System.arraycopy(buffer, from, chars, 0, split);
+    System.arraycopy(buffer, 0, chars, split, length - split);
+    return new String(chars);
   }
 
   /**
-   * Peek the next character
-   * @return {@link Character} next character
+   * Get the whole source read so far. The source is only kept from the first
+   * call, so this must be called before anything is read.
    */
-  public Character peek() throws IOException {
-    return peek(1);
+  @Override
+  public CharSequence getSource() {
+    if (history == null) {
+      if (position > 0 || count > 0) {
+        throw new IllegalStateException("Source must be requested before it's read");
+      }
+
+      history = new StringBuilder();
+    }
+
+    return history;
   }
 
   /**
-   * Peek the nth character
-   * @return {@link Character} at position n
+   * Read from the underlying reader until at least n characters are buffered.
+   * @param n Number of characters required.
+   * @return Whether n characters are now available.
    */
-  public Character peek(int n) throws IOException {
-    // Buffer is not large enough, expand
-    while (buffer.size() < n) {
-      int ch = reader.read();
+  private boolean fill(int n) throws IOException {
+    if (n > BUFFER_SIZE) {
+      throw new IllegalArgumentException("Cannot peek more than " + BUFFER_SIZE + " characters ahead.");
+    }
+
+    // Characters behind the head that must not be overwritten
+    int retained = mark == NO_MARK ? 0 : position - mark;
 
-      if (ch == -1) {
-        return null;
+    while (count < n && !exhausted) {
+      if (retained + count == buffer.length) {
+        grow(retained);
       }
 
-      buffer.add(Character.valueOf((char) ch));
+      // Read into the contiguous free space following the last character
+      int tail = (head + count) & mask;
+      int length = Math.min(buffer.length - retained - count, buffer.length - tail);
+      int read = reader.read(buffer, tail, length);
+
+      if (read == -1) {
+        exhausted = true;
+      } else {
+        if (history != null) history.append(buffer, tail, read);
+        count += read;
+      }
     }
 
-    return buffer.get(n - 1);
+    return count >= n;
+  }
+
+  /**
+   * Double the size of the buffer, keeping all retained and unread characters.
+   * @param retained Number of retained characters behind the head.
+   */
+  private void grow(int retained) {
+    char[] grown = new char[buffer.length * 2];
+    int from = (head - retained) & mask;
+    int length = retained + count;
+    int split = Math.min(length, buffer.length - from);
+
+    System.arraycopy(buffer, from, grown, 0, split);
+    System.arraycopy(buffer, 0, grown, split, length - split);
+
+    buffer = grown;
+    mask = grown.length - 1;
+    head = retained;
   }
 }
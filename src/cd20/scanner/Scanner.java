@@ -1,9 +1,10 @@
 package cd20.scanner;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
 
+import cd20.NamePool;
 import cd20.output.Annotation;
 import cd20.output.ListingGenerator;
 
@@ -11,10 +12,16 @@ import cd20.output.ListingGenerator;
  * A lexer for CD20
  */
 public class Scanner {
-  private PeekableReader reader;
-  private int line = 0;
-  private int column = 0;
-  private Character character;
+  private SourceReader reader;
+  private final LineIndex lines = new LineIndex();
+  private final NamePool names = new NamePool();
+  private ScannerEngine engine = ScannerEngine.HAND_WRITTEN;
+  private int character;
+
+  // Source offsets of the most recently scanned token
+  private int tokenStart;
+  private int lexemeStart;
+  private int lexemeEnd;
 
   private ListingGenerator outputController;
 
@@ -22,15 +29,51 @@ public class Scanner {
    * Constructs a new {@link Scanner}.
    */
   public Scanner(Reader reader, ListingGenerator outputController) {
-    this.reader = new PeekableReader(new BufferedReader(reader));
+    this(new PeekableReader(reader), outputController);
+  }
+
+  /**
+   * Constructs a new {@link Scanner}, which scans a file directly from
+   * a mapped buffer.
+   */
+  public Scanner(Path path, ListingGenerator outputController) throws IOException {
+    this(MappedSourceReader.open(path), outputController);
+  }
+
+  /**
+   * Constructs a new {@link Scanner}.
+   */
+  public Scanner(SourceReader reader, ListingGenerator outputController) {
+    this.reader = reader;
     this.outputController = outputController;
+    lines.addLine(reader.getPosition());
+
+    // Only ask for the source if it will be listed, as a reader may have to
+    // keep a copy of it
+    CharSequence source = outputController.isSourceListed() ? reader.getSource() : "";
+    outputController.setSource(source, lines);
+  }
+
+  /**
+   * Select the engine used to recognise tokens.
+   * Note: whitespace and comments are skipped the same way by both engines.
+   */
+  public void setEngine(ScannerEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * Get the pool that identifier names are interned into.
+   */
+  public NamePool getNamePool() {
+    return names;
   }
 
   /**
    * Determines whether end of file has been reached
    */
   public boolean eof() throws IOException {
-    return reader.peek() == null;
+    return reader.peek() == SourceReader.EOF;
   }
 
   /**
@@ -38,33 +81,104 @@ public class Scanner {
    */
   public Token nextToken() throws IOException {
     Token token = parseToken();
+    outputController.setEnd(reader.getPosition());
 
     // Print lexical error on undefined token
     if (token.getType() == TokenType.UNDEFINED) {
-      Annotation annotation = new Annotation("Error: Unknown token '" + token.getLexeme() + "'", token);
-      outputController.addAnnotation(annotation);
+      reportUndefined(token);
     }
 
     return token;
   }
 
+  /**
+   * Scan the entire source up front into a compact {@link TokenBuffer}.
+   * No {@link Token} objects are created, except for lexical errors.
+   *
+   * Note: the listing will include the whole source, even if parsing stops
+   * early.
+   */
+  public TokenBuffer tokenizeAll() throws IOException {
+    TokenBuffer tokens = new TokenBuffer(reader.getSource(), lines, names);
+
+    while (true) {
+      TokenType type = scanToken();
+
+      // Print lexical error on undefined token
+      if (type == TokenType.UNDEFINED) {
+        reportUndefined(createToken(type));
+      }
+
+      tokens.add(type, tokenStart, lexemeStart, lexemeEnd - lexemeStart);
+
+      if (type == TokenType.EOF) {
+        break;
+      }
+    }
+
+    outputController.setEnd(reader.getPosition());
+    return tokens;
+  }
+
   /**
    * Scanns in the token at the current point.
    */
   public Token parseToken() throws IOException {
+    return createToken(scanToken());
+  }
+
+  /**
+   * Annotate the listing with a lexical error.
+   */
+  private void reportUndefined(Token token) {
+    Annotation annotation = new Annotation("Error: Unknown token '" + token.getLexeme() + "'", token);
+    outputController.addAnnotation(annotation);
+  }
+
+  /**
+   * Create a {@link Token} from the most recently scanned token.
+   * @param type Type of scanned token.
+   */
+  private Token createToken(TokenType type) {
+    if (!type.hasLexeme()) {
+      return new Token(type, tokenStart, lines);
+    }
+
+    CharSequence lexeme = reader.slice(lexemeStart, lexemeEnd);
+
+    if (type == TokenType.IDENTIFIER) {
+      lexeme = names.intern(lexeme);
+    }
+
+    return new Token(type, lexeme, tokenStart, lines);
+  }
+
+  /**
+   * Scans in the token at the current point, recording its position and
+   * lexeme offsets without creating a {@link Token}.
+   * @return Type of the scanned token.
+   */
+  private TokenType scanToken() throws IOException {
+    // The previous token no longer needs its lexeme
+    reader.clearMark();
+
     // Start State
     consumeWhitespace();
 
     // Consume the next character, ready to determine which way to parse
     consumeChar();
-    
-    // Record position at token start
-    int line = this.line;
-    int column = this.column;
 
     // Handle EOF
-    if (character == null) {
-      return new Token(TokenType.EOF, line, column);
+    if (character == SourceReader.EOF) {
+      tokenStart = lexemeStart = lexemeEnd = reader.getPosition();
+      return TokenType.EOF;
+    }
+
+    tokenStart = lexemeStart = reader.getPosition() - 1;
+    reader.mark(lexemeStart);
+
+    if (engine == ScannerEngine.TABLE_DRIVEN) {
+      return scanWithTable();
     }
 
     // Handle string literal
@@ -85,120 +199,142 @@ public class Scanner {
     // Handle operator/delimiter
     TokenType operatorType = parseOperator();
     if (operatorType != null) {
-      return new Token(operatorType, line, column);
+      lexemeEnd = reader.getPosition();
+      return operatorType;
     }
 
     // Undefined
-    return new Token(TokenType.UNDEFINED, consumeUndefined(), line, column);
+    consumeUndefined();
+    return TokenType.UNDEFINED;
+  }
+
+  /**
+   * Consume the remainder of a token by running the DFA in
+   * {@link ScannerTable}, until the next character has no transition.
+   */
+  private TokenType scanWithTable() throws IOException {
+    int first = character;
+    int state = ScannerTable.step(ScannerTable.START, first);
+
+    while (true) {
+      int next = ScannerTable.step(state, reader.peek());
+      if (next == ScannerTable.DEAD) break;
+
+      consumeChar();
+      state = next;
+    }
+
+    lexemeEnd = reader.getPosition();
+    TokenType type = ScannerTable.accept(state);
+
+    // We don't want to include the quotes around a string
+    if (first == '"') {
+      lexemeStart++;
+
+      if (type == TokenType.STRING_LITERAL) {
+        lexemeEnd--;
+      }
+    }
+
+    return type;
   }
 
   /**
    * Consume an entire string literal
    */
-  private Token parseString() throws IOException {
-    // Track line & column before consuming more
-    int line = this.line;
-    int column = this.column;
-    String string = "";
+  private TokenType parseString() throws IOException {
+    // We don't want to include the opening "
+    lexemeStart++;
 
     while (true) {
-      Character ch = consumeChar();
+      int ch = consumeChar();
 
       // Check for EOF
-      if (ch == null) {
-        return new Token(TokenType.UNDEFINED, string, line, column);
+      if (ch == SourceReader.EOF) {
+        lexemeEnd = reader.getPosition();
+        return TokenType.UNDEFINED;
       }
 
       // End of string is reached
       if (ch == '"') {
-        break; // Break before adding. We don't want to include the "
+        break;
       }
 
-      string += ch;
-
       // Check for newline mid string
       if (ch == '\n') {
-        return new Token(TokenType.UNDEFINED, string, line, column);
+        lexemeEnd = reader.getPosition();
+        return TokenType.UNDEFINED;
       }
     }
 
-    return new Token(TokenType.STRING_LITERAL, string, line, column);
+    // We don't want to include the closing "
+    lexemeEnd = reader.getPosition() - 1;
+    return TokenType.STRING_LITERAL;
   }
 
   /**
    * Consume and parse an integer or float literal.
    */
-  private Token parseNumber() throws IOException {
-    // Track line & column before consuming more
-    int line = this.line;
-    int column = this.column;
-
+  private TokenType parseNumber() throws IOException {
     // Record state
     boolean isReal = false;
 
-    String string = "" + character;
-
     // Consume until delimiter
     while (reader.peek() == '.' || Character.isDigit(reader.peek())) {
       // Exit early if a second '.' is found within one real.
       if (reader.peek() == '.' && isReal) {
-        return new Token(TokenType.FLOAT_LITERAL, string, line, column);
+        lexemeEnd = reader.getPosition();
+        return TokenType.FLOAT_LITERAL;
       } 
 
-      Character ch = consumeChar();
-      string += ch;
+      int ch = consumeChar();
 
       if (ch == '.') {
         isReal = true;
       }
     }
 
+    lexemeEnd = reader.getPosition();
+
     if (isReal) {
-      return new Token(TokenType.FLOAT_LITERAL, string, line, column);
+      return TokenType.FLOAT_LITERAL;
     }
 
-    return new Token(TokenType.INTEGER_LITERAL, string, line, column);
+    return TokenType.INTEGER_LITERAL;
   }
 
   /**
    * Parses an identifier/keyword.
    */
-  private Token parseIdentifer() throws IOException {
-    // Track line & column before consuming more
-    int line = this.line;
-    int column = this.column;
-
-    String identifier = "" + character;
-
-    // Consume entire identifier first
-    while (reader.peek() != null && Character.isLetterOrDigit(reader.peek())) {
-      identifier += consumeChar();
+  private TokenType parseIdentifer() throws IOException {
+    // Consume entire identifier first, walking the keyword trie as we go
+    int state = KeywordTrie.step(KeywordTrie.START, character);
+    while (Character.isLetterOrDigit(reader.peek())) {
+      state = KeywordTrie.step(state, consumeChar());
     }
 
+    lexemeEnd = reader.getPosition();
+
     // Identify keywords from identifiers
-    TokenType keywordType = identifyKeyword(identifier);
+    TokenType keywordType = KeywordTrie.accept(state);
     if (keywordType != null) {
-      return new Token(keywordType, line, column);
+      return keywordType;
     }
 
-    return new Token(TokenType.IDENTIFIER, identifier, line, column);
+    return TokenType.IDENTIFIER;
   }
 
   /**
    * Consume a single character.
-   * @return Consumed character.
+   * @return Consumed character, or {@link SourceReader#EOF}.
    */
-  private Character consumeChar() throws IOException {
-    // Previous char was a newline, drop to the next line
-    if (line == 0 || (character != null && character == '\n')) {
-      line++;
-      column = 0;
-    }
-    
+  private int consumeChar() throws IOException {
     character = reader.read();
-    if (character != null) {
-      column++;
-      outputController.addCharacter(line, character);
+
+    // Record the start of the following line. Lines and columns are only
+    // resolved from these offsets when needed.
+    if (character == '\n') {
+      lines.addLine(reader.getPosition());
     }
 
     return character;
@@ -212,10 +348,10 @@ public class Scanner {
    */
   private void consumeWhitespace() throws IOException {
     while (true) {
-      Character nextChar = reader.peek();
+      int nextChar = reader.peek();
 
       // Handle EOF
-      if (nextChar == null) {
+      if (nextChar == SourceReader.EOF) {
         return;
       }
 
@@ -248,12 +384,12 @@ public class Scanner {
     do {
       consumeChar();
     } while (
-      reader.peek() != null && reader.peek(2) != null && reader.peek(3) != null &&
+      reader.peek(3) != SourceReader.EOF &&
       !(reader.peek(1) == '*' && reader.peek(2) == '*' && reader.peek(3) == '/')
     );
 
     for (int i = 0; i < 3; i++) {
-      if (reader.peek() == null) break;
+      if (reader.peek() == SourceReader.EOF) break;
       consumeChar();
     }
   }
@@ -261,20 +397,19 @@ public class Scanner {
   /**
    * Consume the remainder of an undefined token.
    */
-  private String consumeUndefined() throws IOException {
-    String word = "" + character;
-    Character nextChar = reader.peek();
+  private void consumeUndefined() throws IOException {
+    int nextChar = reader.peek();
 
     while (
       !ScannerUtils.isWhitespace(nextChar) &&
       !Character.isLetterOrDigit(nextChar) &&
       !ScannerUtils.isSpecialCharacter(nextChar)
     ) {
-      word += consumeChar();
+      consumeChar();
       nextChar = reader.peek();
     }
 
-    return word;
+    lexemeEnd = reader.getPosition();
   }
 
   /**
@@ -283,7 +418,7 @@ public class Scanner {
   private void consumeLine() throws IOException {
     do {
       consumeChar();
-    } while (character != null && character != '\n');
+    } while (character != SourceReader.EOF && character != '\n');
   }
 
   /**
@@ -375,73 +510,4 @@ public class Scanner {
         return null;
     }
   }
-
-  private TokenType identifyKeyword(String identifier) {
-    switch (identifier.toLowerCase()) {
-      case "cd20":
-        return TokenType.CD20;
-      case "constants":
-        return TokenType.CONSTANTS;
-      case "types":
-        return TokenType.TYPES;
-      case "is":
-        return TokenType.IS;
-      case "arrays":
-        return TokenType.ARRAYS;
-      case "main":
-        return TokenType.MAIN;
-      case "begin":
-        return TokenType.BEGIN;
-      case "end":
-        return TokenType.END;
-      case "array":
-        return TokenType.ARRAY;
-      case "of":
-        return TokenType.OF;
-      case "func":
-        return TokenType.FUNC;
-      case "void":
-        return TokenType.VOID;
-      case "const":
-        return TokenType.CONST;
-      case "int":
-        return TokenType.INT;
-      case "real":
-        return TokenType.REAL;
-      case "bool":
-        return TokenType.BOOL;
-      case "for":
-        return TokenType.FOR;
-      case "repeat":
-        return TokenType.REPEAT;
-      case "until":
-        return TokenType.UNTIL;
-      case "if":
-        return TokenType.IF;
-      case "else":
-        return TokenType.ELSE;
-      case "input":
-        return TokenType.INPUT;
-      case "print":
-        return TokenType.PRINT;
-      case "println":
-        return TokenType.PRINTLN;
-      case "return":
-        return TokenType.RETURN;
-      case "not":
-        return TokenType.NOT;
-      case "and":
-        return TokenType.AND;
-      case "or":
-        return TokenType.OR;
-      case "xor":
-        return TokenType.XOR;
-      case "true":
-        return TokenType.TRUE;
-      case "false":
-        return TokenType.FALSE;
-      default:
-        return null;
-    }
-  }
 }
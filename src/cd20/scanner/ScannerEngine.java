@@ -0,0 +1,12 @@
+package cd20.scanner;
+
+/**
+ * Engines a {@link Scanner} may use to recognise tokens.
+ */
+public enum ScannerEngine {
+  // Recognises tokens with hand-written branches
+  HAND_WRITTEN,
+
+  // Recognises tokens with the DFA in ScannerTable
+  TABLE_DRIVEN,
+}
@@ -0,0 +1,268 @@
+package cd20.scanner;
+
+import java.util.Arrays;
+
+/**
+ * A DFA for recognising a single CD20 token.
+ *
+ * Characters are first mapped onto a small set of character classes, which
+ * index the columns of the transition table. The table is generated once,
+ * from {@link KeywordTrie} and the operator spellings in {@link TokenType},
+ * and recognises exactly the tokens the hand-written {@link Scanner} does.
+ *
+ * Note: whitespace and comments are not handled here.
+ */
+public class ScannerTable {
+  /**
+   * State before any characters have been seen.
+   */
+  public static final int START = 0;
+
+  /**
+   * State once no further characters can be part of the token.
+   */
+  public static final int DEAD = -1;
+
+  // ASCII letters and digits each get their own class, so that keywords can
+  // be recognised
+  private static final String ALPHANUMERIC = "abcdefghijklmnopqrstuvwxyz0123456789";
+  private static final int FIRST_DIGIT = 26;
+
+  private static final int OTHER_LETTER = ALPHANUMERIC.length();
+  private static final int OTHER_DIGIT = OTHER_LETTER + 1;
+  private static final int WHITESPACE = OTHER_LETTER + 2;
+  private static final int NEWLINE = OTHER_LETTER + 3;
+  private static final int QUOTE = OTHER_LETTER + 4;
+  private static final int OTHER = OTHER_LETTER + 5;
+  private static final int END = OTHER_LETTER + 6;
+  private static final int FIRST_OPERATOR = OTHER_LETTER + 7;
+
+  // Characters that appear in operators, each of which gets its own class
+  private static final String OPERATOR_CHARS = findOperatorChars();
+  private static final int CLASS_COUNT = FIRST_OPERATOR + OPERATOR_CHARS.length();
+  private static final byte[] CLASSES = new byte[256];
+
+  private static final int[][] TRANSITIONS;
+  private static final TokenType[] ACCEPTING;
+
+  static {
+    for (int ch = 0; ch < CLASSES.length; ch++) {
+      CLASSES[ch] = (byte) classify(ch);
+    }
+
+    Builder builder = new Builder();
+    builder.buildStates();
+
+    TRANSITIONS = Arrays.copyOf(builder.transitions, builder.stateCount);
+    ACCEPTING = Arrays.copyOf(builder.accepting, builder.stateCount);
+  }
+
+  /**
+   * Advance the DFA by one character.
+   * @param state Current state.
+   * @param ch Next character, or {@link SourceReader#EOF}.
+   * @return Next state, or {@link #DEAD}.
+   */
+  public static int step(int state, int ch) {
+    if (state == DEAD) return DEAD;
+    return TRANSITIONS[state][classOf(ch)];
+  }
+
+  /**
+   * Get the token recognised by a state.
+   * @param state Final state after walking a token.
+   * @return Recognised {@link TokenType}, or null if the state does not
+   * accept.
+   */
+  public static TokenType accept(int state) {
+    if (state == DEAD) return null;
+    return ACCEPTING[state];
+  }
+
+  /**
+   * Determines whether characters of a class may continue an undefined token.
+   */
+  private static boolean continuesUndefined(int cls) {
+    if (cls >= FIRST_OPERATOR) {
+      return !ScannerUtils.isSpecialCharacter(OPERATOR_CHARS.charAt(cls - FIRST_OPERATOR));
+    }
+
+    return cls == QUOTE || cls == OTHER;
+  }
+
+  /**
+   * Grows the transition table one state at a time, while it is built.
+   */
+  private static class Builder {
+    private int[][] transitions = new int[64][];
+    private TokenType[] accepting = new TokenType[64];
+    private int stateCount = 0;
+
+    private void buildStates() {
+      newState(null);
+
+      // Identifiers and keywords. Each keyword trie state has a matching state
+      // here, which falls back to a plain identifier once the trie dies.
+      int identifier = newState(TokenType.IDENTIFIER);
+      int keywordBase = stateCount;
+      for (int state = 0; state < KeywordTrie.getStateCount(); state++) {
+        TokenType keyword = KeywordTrie.accept(state);
+        newState(keyword != null ? keyword : TokenType.IDENTIFIER);
+      }
+
+      int[] identifierClasses = { OTHER_LETTER, OTHER_DIGIT };
+      for (int cls : identifierClasses) {
+        transitions[identifier][cls] = identifier;
+      }
+
+      for (int cls = 0; cls < ALPHANUMERIC.length(); cls++) {
+        transitions[identifier][cls] = identifier;
+      }
+
+      for (int state = 0; state < KeywordTrie.getStateCount(); state++) {
+        int[] row = transitions[keywordBase + state];
+
+        for (int cls = 0; cls < ALPHANUMERIC.length(); cls++) {
+          int next = KeywordTrie.step(state, ALPHANUMERIC.charAt(cls));
+          row[cls] = next == KeywordTrie.DEAD ? identifier : keywordBase + next;
+        }
+
+        for (int cls : identifierClasses) {
+          row[cls] = identifier;
+        }
+      }
+
+      // Identifiers must start with a letter
+      for (int cls = 0; cls < FIRST_DIGIT; cls++) {
+        transitions[START][cls] = transitions[keywordBase + KeywordTrie.START][cls];
+      }
+      transitions[START][OTHER_LETTER] = identifier;
+
+      // Integer and float literals. A float ends at its second '.'
+      int integer = newState(TokenType.INTEGER_LITERAL);
+      int real = newState(TokenType.FLOAT_LITERAL);
+      int dot = FIRST_OPERATOR + OPERATOR_CHARS.indexOf('.');
+
+      for (int cls = FIRST_DIGIT; cls < ALPHANUMERIC.length(); cls++) {
+        transitions[START][cls] = integer;
+        transitions[integer][cls] = integer;
+        transitions[real][cls] = real;
+      }
+
+      transitions[START][OTHER_DIGIT] = integer;
+      transitions[integer][OTHER_DIGIT] = integer;
+      transitions[real][OTHER_DIGIT] = real;
+      transitions[integer][dot] = real;
+
+      // String literals. Reaching a newline or the end of file inside a string
+      // is a lexical error.
+      int string = newState(TokenType.UNDEFINED);
+      int stringEnd = newState(TokenType.STRING_LITERAL);
+      int stringError = newState(TokenType.UNDEFINED);
+
+      Arrays.fill(transitions[string], string);
+      transitions[string][QUOTE] = stringEnd;
+      transitions[string][NEWLINE] = stringError;
+      transitions[string][END] = DEAD;
+      transitions[START][QUOTE] = string;
+
+      // Operators and delimiters
+      for (TokenType type : TokenType.values()) {
+        if (type.getSpelling() != null) {
+          insertOperator(type.getSpelling(), type);
+        }
+      }
+
+      // Undefined tokens run until whitespace, a letter or digit, or a special
+      // character
+      int undefined = newState(TokenType.UNDEFINED);
+
+      for (int cls = 0; cls < CLASS_COUNT; cls++) {
+        if (transitions[START][cls] == DEAD) {
+          transitions[START][cls] = undefined;
+        }
+
+        if (continuesUndefined(cls)) {
+          transitions[undefined][cls] = undefined;
+        }
+      }
+
+      transitions[START][END] = DEAD;
+    }
+
+    private void insertOperator(String operator, TokenType type) {
+      int state = START;
+
+      for (int idx = 0; idx < operator.length(); idx++) {
+        int cls = FIRST_OPERATOR + OPERATOR_CHARS.indexOf(operator.charAt(idx));
+
+        if (transitions[state][cls] == DEAD) {
+          int next = newState(null);
+          transitions[state][cls] = next;
+        }
+
+        state = transitions[state][cls];
+      }
+
+      accepting[state] = type;
+    }
+
+    private int newState(TokenType type) {
+      if (stateCount == transitions.length) {
+        transitions = Arrays.copyOf(transitions, stateCount * 2);
+        accepting = Arrays.copyOf(accepting, stateCount * 2);
+      }
+
+      int[] row = new int[CLASS_COUNT];
+      Arrays.fill(row, DEAD);
+
+      transitions[stateCount] = row;
+      accepting[stateCount] = type;
+      return stateCount++;
+    }
+  }
+
+  /**
+   * Map a character onto its class.
+   */
+  private static int classOf(int ch) {
+    if (ch == SourceReader.EOF) return END;
+    if (ch < CLASSES.length) return CLASSES[ch];
+    return classify(ch);
+  }
+
+  private static int classify(int ch) {
+    if (ch >= 'a' && ch <= 'z') return ch - 'a';
+    if (ch >= 'A' && ch <= 'Z') return ch - 'A';
+    if (ch >= '0' && ch <= '9') return FIRST_DIGIT + ch - '0';
+    if (ch == '\n') return NEWLINE;
+    if (ch == '"') return QUOTE;
+
+    int operator = OPERATOR_CHARS.indexOf(ch);
+    if (operator != -1) return FIRST_OPERATOR + operator;
+
+    if (Character.isWhitespace(ch)) return WHITESPACE;
+    if (Character.isLetter(ch)) return OTHER_LETTER;
+    if (Character.isDigit(ch)) return OTHER_DIGIT;
+    return OTHER;
+  }
+
+  /**
+   * Collect the distinct characters of every operator's spelling.
+   */
+  private static String findOperatorChars() {
+    StringBuilder chars = new StringBuilder();
+
+    for (TokenType type : TokenType.values()) {
+      if (type.getSpelling() == null) continue;
+
+      for (char ch : type.getSpelling().toCharArray()) {
+        if (chars.indexOf(String.valueOf(ch)) == -1) {
+          chars.append(ch);
+        }
+      }
+    }
+
+    return chars.toString();
+  }
+}
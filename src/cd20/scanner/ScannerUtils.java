@@ -1,32 +1,22 @@
 package cd20.scanner;
 
-import java.util.Arrays;
-
 public class ScannerUtils {
-  private static final Character[] specialChars = {
-    ',', '[', ']', '(', ')', '=', '+', '-', '*',
-    '%', '^', '<', '>', ':', '!', ';', '.'
-  };
+  private static final String specialChars = ",[]()=+-*%^<>:!;.";
 
   /**
    * Determines whether the given character is whitespace, and correctly handles
-   * null.
+   * {@link SourceReader#EOF}.
    */
-  public static boolean isWhitespace(Character ch) {
-    return ch == null || Character.isWhitespace(ch);
+  public static boolean isWhitespace(int ch) {
+    return ch == SourceReader.EOF || Character.isWhitespace(ch);
   }
 
   /**
    * Determines whether the given character is a special operator/delimiter
    * character in CD20.
    */
-  public static boolean isSpecialCharacter(Character ch) {
-    if (ch == null) return false;
-
-    if (Arrays.asList(specialChars).contains(ch)) {
-      return true;
-    }
-
-    return false;
+  public static boolean isSpecialCharacter(int ch) {
+    if (ch == SourceReader.EOF) return false;
+    return specialChars.indexOf(ch) != -1;
   }
 }
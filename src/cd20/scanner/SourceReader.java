@@ -0,0 +1,71 @@
+package cd20.scanner;
+
+import java.io.IOException;
+
+/**
+ * A source of characters for the {@link Scanner}, which allows peeking a short
+ * distance into the future.
+ *
+ * Characters are returned as ints, so that the end of input can be signalled
+ * without boxing.
+ */
+public interface SourceReader {
+  /**
+   * Returned by {@link #read()} and {@link #peek(int)} once the end of the
+   * source has been reached.
+   */
+  public static final int EOF = -1;
+
+  /**
+   * Read and consume the next character
+   * @return Next character, or {@link #EOF}.
+   */
+  public int read() throws IOException;
+
+  /**
+   * Peek the nth character
+   * @return Character at position n, or {@link #EOF}.
+   */
+  public int peek(int n) throws IOException;
+
+  /**
+   * Peek the next character
+   * @return Next character, or {@link #EOF}.
+   */
+  public default int peek() throws IOException {
+    return peek(1);
+  }
+
+  /**
+   * Get the offset of the next character to be read.
+   */
+  public int getPosition();
+
+  /**
+   * Retain all characters from the given offset onwards, so that they may be
+   * sliced later. The offset must not precede the most recently read
+   * character.
+   * @param offset Offset of the first character to retain.
+   */
+  public default void mark(int offset) {}
+
+  /**
+   * Stop retaining characters from the last mark.
+   */
+  public default void clearMark() {}
+
+  /**
+   * Get the characters between two offsets. Only characters at or after the
+   * last mark are guaranteed to be available.
+   * @param start Offset of the first character (inclusive).
+   * @param end Offset of the last character (exclusive).
+   */
+  public CharSequence slice(int start, int end);
+
+  /**
+   * Get the whole source read so far, indexed by offset.
+   * The returned sequence grows as more of the source is read. Readers may
+   * only start keeping the source once it's requested.
+   */
+  public CharSequence getSource();
+}
@@ -0,0 +1,80 @@
+package cd20.scanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link TokenCursor} that pulls tokens from a {@link Scanner} one at
+ * a time.
+ *
+ * The scanner creates a {@link Token} for every token anyway, so marked
+ * tokens are simply kept until the marks are cleared.
+ */
+public class StreamTokenCursor implements TokenCursor {
+  private final Scanner scanner;
+  private Token token;
+
+  private final List<Token> marked = new ArrayList<>();
+  private int clearedMarks = 0;
+
+  public StreamTokenCursor(Scanner scanner) {
+    this.scanner = scanner;
+  }
+
+  @Override
+  public void advance() throws IOException {
+    token = scanner.nextToken();
+  }
+
+  @Override
+  public TokenType getType() {
+    return token.getType();
+  }
+
+  @Override
+  public String getLexeme() {
+    return token.getLexeme();
+  }
+
+  @Override
+  public Token getToken() {
+    return token;
+  }
+
+  @Override
+  public int getPosition() {
+    return token.getOffset();
+  }
+
+  @Override
+  public LineIndex getLineIndex() {
+    return token.getLineIndex();
+  }
+
+  @Override
+  public int mark() {
+    marked.add(token);
+    return clearedMarks + marked.size() - 1;
+  }
+
+  @Override
+  public int getPosition(int mark) {
+    return getToken(mark).getOffset();
+  }
+
+  @Override
+  public Token getToken(int mark) {
+    if (mark < clearedMarks) {
+      throw new IllegalStateException("Mark has been cleared: " + mark);
+    }
+
+    return marked.get(mark - clearedMarks);
+  }
+
+  @Override
+  public void clearMarks() {
+    clearedMarks += marked.size();
+    marked.clear();
+  }
+}
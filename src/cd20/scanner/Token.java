@@ -5,24 +5,31 @@ package cd20.scanner;
  */
 public class Token {
   private final TokenType type;
-  private final String lexeme;
-  private final int line;
-  private final int column;
+  private CharSequence lexeme;
+  private final int offset;
+  private final LineIndex lines;
 
-  public Token(TokenType type, int line, int column) {
-    this(type, null, line, column);
+  public Token(TokenType type, int offset, LineIndex lines) {
+    this(type, null, offset, lines);
   }
 
-  public Token(TokenType type, String lexeme, int line, int column) {
+  /**
+   * Construct a token.
+   * @param lexeme Lexeme, which is only turned into a String when requested.
+   * @param offset Source offset of the first character of this token.
+   * @param lines Index used to resolve the offset to a line and column.
+   */
+  public Token(TokenType type, CharSequence lexeme, int offset, LineIndex lines) {
     this.type = type;
     this.lexeme = lexeme;
-    this.line = line;
-    this.column = column;
+    this.offset = offset;
+    this.lines = lines;
   }
 
   @Override
   public String toString() {
     String out = type.toString();
+    String lexeme = getLexeme();
 
     if (lexeme != null) {
       out += " ";
@@ -49,7 +56,7 @@ public class Token {
       return type.getHumanReadable();
     }
 
-    return "'" + lexeme + "'";
+    return "'" + getLexeme() + "'";
   }
 
   public TokenType getType() {
@@ -57,7 +64,14 @@ public class Token {
   }
 
   public String getLexeme() {
-    return this.lexeme;
+    if (lexeme == null) {
+      return null;
+    }
+
+    // Materialise slice on first use
+    String string = lexeme.toString();
+    this.lexeme = string;
+    return string;
   }
 
   /**
@@ -84,11 +98,25 @@ public class Token {
     return lexeme.length();
   }
 
+  public int getOffset() {
+    return offset;
+  }
+
+  public LineIndex getLineIndex() {
+    return lines;
+  }
+
+  /**
+   * Get the line of this token. Resolved from the line index on each call.
+   */
   public int getLine() {
-    return this.line;
+    return lines.getLine(offset);
   }
 
+  /**
+   * Get the column of this token. Resolved from the line index on each call.
+   */
   public int getColumn() {
-    return this.column;
+    return lines.getColumn(offset);
   }
 }
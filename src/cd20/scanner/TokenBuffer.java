@@ -0,0 +1,202 @@
+package cd20.scanner;
+
+import java.util.Arrays;
+
+import cd20.NamePool;
+
+/**
+ * A compact buffer of scanned tokens.
+ *
+ * Tokens are stored as parallel arrays rather than as {@link Token} objects.
+ * Positions and lexemes are stored as offsets into the source, and are only
+ * turned into lines, columns and Strings when requested.
+ */
+public class TokenBuffer {
+  private static final TokenType[] TYPES = TokenType.values();
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final CharSequence source;
+  private final LineIndex lines;
+  private final NamePool names;
+  private int[] types = new int[INITIAL_CAPACITY];
+  private int[] positions = new int[INITIAL_CAPACITY];
+  private int[] offsets = new int[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Construct a new token buffer.
+   * @param source Source text that offsets refer to.
+   * @param lines Index used to resolve offsets to lines and columns.
+   * @param names Pool that identifiers are interned into.
+   */
+  public TokenBuffer(CharSequence source, LineIndex lines, NamePool names) {
+    this.source = source;
+    this.lines = lines;
+    this.names = names;
+  }
+
+  /**
+   * Append a token.
+   * @param type Token type.
+   * @param position Source offset of the first character of the token.
+   * @param offset Source offset of the lexeme.
+   * @param length Length of the lexeme.
+   */
+  public void add(TokenType type, int position, int offset, int length) {
+    if (size == types.length) {
+      int capacity = size * 2;
+      types = Arrays.copyOf(types, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+      offsets = Arrays.copyOf(offsets, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    }
+
+    types[size] = type.ordinal();
+    positions[size] = position;
+    offsets[size] = offset;
+    lengths[size] = length;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public TokenType getType(int index) {
+    return TYPES[types[index]];
+  }
+
+  public int getPosition(int index) {
+    return positions[index];
+  }
+
+  public int getLine(int index) {
+    return lines.getLine(positions[index]);
+  }
+
+  public int getColumn(int index) {
+    return lines.getColumn(positions[index]);
+  }
+
+  public int getOffset(int index) {
+    return offsets[index];
+  }
+
+  public int getLength(int index) {
+    return lengths[index];
+  }
+
+  /**
+   * Get the lexeme of a token. Identifiers are interned.
+   * @param index Token index.
+   * @return Lexeme, or null if the token has none.
+   */
+  public String getLexeme(int index) {
+    TokenType type = getType(index);
+    if (!type.hasLexeme()) return null;
+
+    CharSequence lexeme = slice(index);
+    if (type == TokenType.IDENTIFIER) {
+      return names.intern(lexeme);
+    }
+
+    return lexeme.toString();
+  }
+
+  /**
+   * Create a {@link Token} object for a token.
+   * @param index Token index.
+   */
+  public Token getToken(int index) {
+    TokenType type = getType(index);
+
+    if (!type.hasLexeme()) {
+      return new Token(type, positions[index], lines);
+    }
+
+    return new Token(type, getLexeme(index), positions[index], lines);
+  }
+
+  /**
+   * Get a cursor positioned before the first token.
+   */
+  public TokenCursor cursor() {
+    return new Cursor();
+  }
+
+  private CharSequence slice(int index) {
+    return source.subSequence(offsets[index], offsets[index] + lengths[index]);
+  }
+
+  /**
+   * A cursor that walks the buffer by index. Lexemes and tokens are created
+   * at most once per position, and only if requested. Marks are simply
+   * token indices.
+   */
+  private class Cursor implements TokenCursor {
+    private int index = -1;
+    private String lexeme;
+    private Token token;
+
+    @Override
+    public void advance() {
+      if (index < size - 1) {
+        index++;
+        lexeme = null;
+        token = null;
+      }
+    }
+
+    @Override
+    public TokenType getType() {
+      return TokenBuffer.this.getType(index);
+    }
+
+    @Override
+    public String getLexeme() {
+      if (lexeme == null) {
+        lexeme = TokenBuffer.this.getLexeme(index);
+      }
+
+      return lexeme;
+    }
+
+    @Override
+    public Token getToken() {
+      if (token == null) {
+        TokenType type = getType();
+        token = type.hasLexeme()
+          ? new Token(type, getLexeme(), positions[index], lines)
+          : new Token(type, positions[index], lines);
+      }
+
+      return token;
+    }
+
+    @Override
+    public int getPosition() {
+      return positions[index];
+    }
+
+    @Override
+    public LineIndex getLineIndex() {
+      return lines;
+    }
+
+    @Override
+    public int mark() {
+      return index;
+    }
+
+    @Override
+    public int getPosition(int mark) {
+      return positions[mark];
+    }
+
+    @Override
+    public Token getToken(int mark) {
+      return mark == index ? getToken() : TokenBuffer.this.getToken(mark);
+    }
+  }
+}
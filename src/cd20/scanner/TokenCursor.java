@@ -0,0 +1,63 @@
+package cd20.scanner;
+
+import java.io.IOException;
+
+/**
+ * A cursor over a stream of tokens, as consumed by the parser.
+ *
+ * The cursor starts before the first token. Once the end of file is reached,
+ * it remains on the {@link TokenType#EOF} token.
+ */
+public interface TokenCursor {
+  /**
+   * Move to the next token.
+   */
+  public void advance() throws IOException;
+
+  /**
+   * Get the type of the current token.
+   */
+  public TokenType getType();
+
+  /**
+   * Get the lexeme of the current token, or null if it has none.
+   */
+  public String getLexeme();
+
+  /**
+   * Get the source offset of the current token.
+   */
+  public int getPosition();
+
+  /**
+   * Get the index used to resolve source offsets to lines and columns.
+   */
+  public LineIndex getLineIndex();
+
+  /**
+   * Get the current token as a {@link Token}, for use in annotations.
+   */
+  public Token getToken();
+
+  /**
+   * Mark the current token, so that it can be turned into a {@link Token}
+   * later if it's needed, e.g. to report an error.
+   * @return Mark, which stays valid until {@link #clearMarks()}.
+   */
+  public int mark();
+
+  /**
+   * Get the source offset of a marked token.
+   */
+  public int getPosition(int mark);
+
+  /**
+   * Get a marked token as a {@link Token}.
+   */
+  public Token getToken(int mark);
+
+  /**
+   * Release all marks taken so far, which won't be used again.
+   */
+  public default void clearMarks() {}
+}
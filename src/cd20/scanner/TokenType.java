@@ -37,32 +37,32 @@ public enum TokenType {
   FALSE            ("TFALS", "'false'"),
 
   // Operators and delimiters
-  COMMA            ("TCOMA"),
-  LEFT_BRACKET     ("TLBRK", "'['"),
-  RIGHT_BRACKET    ("TRBRK", "']'"),
-  LEFT_PAREN       ("TLPAR", "'('"),
-  RIGHT_PAREN      ("TRPAR", "')'"),
-  ASSIGN           ("TEQUL", "'='"),
-  PLUS             ("TPLUS", "'+'"),
-  MINUS            ("TMINS", "'-'"),
-  STAR             ("TSTAR", "'*'"),
-  DIVIDE           ("TDIVD", "'/'"),
-  PERCENT          ("TPERC", "'%'"),
-  CARAT            ("TCART", "'^'"),
-  LESS             ("TLESS", "'<'"),
-  GREATER          ("TGRTR", "'>'"),
-  COLON            ("TCOLN", "':'"),
-  LESS_OR_EQUAL    ("TLEQL", "'<='"),
-  GREATER_OR_EQUAL ("TGEQL", "'>='"),
-  NOT_EQUAL        ("TNEQL", "'!='"),
-  EQUALS_EQUALS    ("TEQEQ", "'=='"),
-  INCREMENT        ("TPLEQ", "'+='"),
-  DECREMENT        ("TMNEQ", "'-='"),
-  STAR_EQUALS      ("TSTEQ", "'*='"),
-  DIVIDE_EQUALS    ("TDVEQ", "'/='"),
-  BANG             ("TBANG", "'!'"),
-  SEMI_COLON       ("TSEMI", "';'"),
-  DOT              ("TDOTT", "'.'"),
+  COMMA            ("TCOMA", null, ","),
+  LEFT_BRACKET     ("TLBRK", "'['", "["),
+  RIGHT_BRACKET    ("TRBRK", "']'", "]"),
+  LEFT_PAREN       ("TLPAR", "'('", "("),
+  RIGHT_PAREN      ("TRPAR", "')'", ")"),
+  ASSIGN           ("TEQUL", "'='", "="),
+  PLUS             ("TPLUS", "'+'", "+"),
+  MINUS            ("TMINS", "'-'", "-"),
+  STAR             ("TSTAR", "'*'", "*"),
+  DIVIDE           ("TDIVD", "'/'", "/"),
+  PERCENT          ("TPERC", "'%'", "%"),
+  CARAT            ("TCART", "'^'", "^"),
+  LESS             ("TLESS", "'<'", "<"),
+  GREATER          ("TGRTR", "'>'", ">"),
+  COLON            ("TCOLN", "':'", ":"),
+  LESS_OR_EQUAL    ("TLEQL", "'<='", "<="),
+  GREATER_OR_EQUAL ("TGEQL", "'>='", ">="),
+  NOT_EQUAL        ("TNEQL", "'!='", "!="),
+  EQUALS_EQUALS    ("TEQEQ", "'=='", "=="),
+  INCREMENT        ("TPLEQ", "'+='", "+="),
+  DECREMENT        ("TMNEQ", "'-='", "-="),
+  STAR_EQUALS      ("TSTEQ", "'*='", "*="),
+  DIVIDE_EQUALS    ("TDVEQ", "'/='", "/="),
+  BANG             ("TBANG", "'!'", "!"),
+  SEMI_COLON       ("TSEMI", "';'", ";"),
+  DOT              ("TDOTT", "'.'", "."),
 
   // Tokens that need tuple values
   IDENTIFIER       ("TIDEN", "identifier"),
@@ -73,14 +73,23 @@ public enum TokenType {
 
   private final String token;
   private final String humanReadable;
+  private final String spelling;
 
   TokenType(String token) {
     this(token, null);
   }
 
   TokenType(String token, String humanReadable) {
+    this(token, humanReadable, null);
+  }
+
+  /**
+   * @param spelling Exact text of an operator or delimiter.
+   */
+  TokenType(String token, String humanReadable, String spelling) {
     this.token = token;
     this.humanReadable = humanReadable;
+    this.spelling = spelling;
   }
 
   @Override
@@ -88,6 +97,22 @@ public enum TokenType {
     return this.token;
   }
 
+  /**
+   * Determines whether tokens of this type carry a lexeme.
+   */
+  public boolean hasLexeme() {
+    switch (this) {
+      case IDENTIFIER:
+      case INTEGER_LITERAL:
+      case FLOAT_LITERAL:
+      case STRING_LITERAL:
+      case UNDEFINED:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   public String getHumanReadable() {
     if (humanReadable == null) {
       return toString();
@@ -95,4 +120,12 @@ public enum TokenType {
 
     return humanReadable;
   }
+
+  /**
+   * Get the exact text of an operator or delimiter, e.g. "+=".
+   * @return Spelling, or null for tokens that aren't operators or delimiters.
+   */
+  public String getSpelling() {
+    return spelling;
+  }
 }
@@ -1,21 +1,28 @@
 package cd20.symboltable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringJoiner;
 
+import cd20.scanner.LineIndex;
 import cd20.scanner.Token;
 import cd20.symboltable.attribute.Attribute;
+import cd20.symboltable.attribute.AttributeSlots;
 
 public class Symbol {
   private final SymbolType type;
   private final String name;
-  private final int line;
-  private final int column;
+  private final int sourceOffset;
+  private final LineIndex lines;
 
   private String scope;
   private List<Attribute> attributes = new ArrayList<>();
 
+  // First attribute of each slotted type, see AttributeSlots
+  private final Attribute[] slots = new Attribute[AttributeSlots.COUNT];
+
   private BaseRegister register;
   private int offset = Integer.MIN_VALUE;
 
@@ -35,21 +42,22 @@ public class Symbol {
    * @param token Token to use as basis for symbol.
    */
   public Symbol(SymbolType type, String name, Token token) {
-    this(type, name, token.getLine(), token.getColumn());
+    this(type, name, token.getOffset(), token.getLineIndex());
   }
 
   /**
    * Construct a symbol.
    * @param type Symbol type.
    * @param name Symbol's unique name within the current scope.
-   * @param line Line that symbol was encountered.
-   * @param column Column that symbol was encountere.
+   * @param sourceOffset Source offset that symbol was encountered at.
+   * @param lines Index used to resolve the offset to a line and column, or
+   * null if the symbol has no position.
    */
-  public Symbol(SymbolType type, String name, int line, int column) {
+  public Symbol(SymbolType type, String name, int sourceOffset, LineIndex lines) {
     this.type = type;
     this.name = name;
-    this.line = line;
-    this.column = column;
+    this.sourceOffset = sourceOffset;
+    this.lines = lines;
   }
 
   /**
@@ -58,6 +66,19 @@ public class Symbol {
    */
   public void addAttribute(Attribute attribute) {
     attributes.add(attribute);
+    index(attribute);
+  }
+
+  /**
+   * Record an attribute in its slot, unless the slot is already taken.
+   * @param attribute Attribute to index.
+   */
+  private void index(Attribute attribute) {
+    int slot = AttributeSlots.slotOf(attribute.getClass());
+
+    if (slot != AttributeSlots.NONE && slots[slot] == null) {
+      slots[slot] = attribute;
+    }
   }
 
   public void setScope(String scope) {
@@ -72,16 +93,21 @@ public class Symbol {
     return type;
   }
 
+  /**
+   * Get this symbol's name.
+   * Names taken from identifiers are interned by the scanner's
+   * {@link cd20.NamePool}.
+   */
   public String getName() {
     return name;
   }
 
   public int getLine() {
-    return line;
+    return lines != null ? lines.getLine(sourceOffset) : 0;
   }
 
   public int getColumn() {
-    return column;
+    return lines != null ? lines.getColumn(sourceOffset) : 0;
   }
 
   public BaseRegister getRegister() {
@@ -100,6 +126,11 @@ public class Symbol {
     this.offset = offset;
   }
 
+  /**
+   * Get all attributes, in the order they were added.
+   * Note: add attributes through {@link #addAttribute}, not this list, so they
+   * can be found by type.
+   */
   public List<Attribute> getAttributes() {
     return attributes;
   }
@@ -110,6 +141,11 @@ public class Symbol {
    * @return A list of matching attributes.
    */
   public <T extends Attribute> List<Attribute> getAttributes(Class<T> clazz) {
+    int slot = AttributeSlots.slotOf(clazz);
+    if (slot != AttributeSlots.NONE && slots[slot] == null) {
+      return Collections.emptyList();
+    }
+
     List<Attribute> matching = new ArrayList<>();
 
     for (Attribute attribute : attributes) {
@@ -127,6 +163,11 @@ public class Symbol {
    * @return Matching attribute or null.
    */
   public <T extends Attribute> T getFirstAttribute(Class<T> clazz) {
+    int slot = AttributeSlots.slotOf(clazz);
+    if (slot != AttributeSlots.NONE) {
+      return clazz.cast(slots[slot]);
+    }
+
     for (Attribute attribute : attributes) {
       if (clazz.isInstance(attribute)) {
         return clazz.cast(attribute);
@@ -141,6 +182,11 @@ public class Symbol {
    * @param clazz Class of attribute to search for.
    */
   public <T extends Attribute> boolean hasAttribute(Class<T> clazz) {
+    int slot = AttributeSlots.slotOf(clazz);
+    if (slot != AttributeSlots.NONE) {
+      return slots[slot] != null;
+    }
+
     for (Attribute attribute : attributes) {
       if (clazz.isInstance(attribute)) {
         return true;
@@ -152,6 +198,11 @@ public class Symbol {
 
   public void setAttributes(List<Attribute> attributes) {
     this.attributes = attributes;
+
+    Arrays.fill(slots, null);
+    for (Attribute attribute : attributes) {
+      index(attribute);
+    }
   }
 
   @Override
@@ -3,14 +3,14 @@ package cd20.symboltable;
 import java.util.ArrayList;
 import java.util.List;
 
-import cd20.scanner.Token;
+import cd20.scanner.LineIndex;
 import cd20.symboltable.attribute.Attribute;
 
 public class SymbolBuilder {
   private final SymbolType type;
   private String value;
-  private int line;
-  private int column;
+  private int sourceOffset;
+  private LineIndex lines;
   private List<Attribute> attributes = new ArrayList<>();
 
   public SymbolBuilder(SymbolType type) {
@@ -26,9 +26,14 @@ public class SymbolBuilder {
     return this;
   }
 
-  public SymbolBuilder withTokenPosition(Token token) {
-    this.line = token.getLine();
-    this.column = token.getColumn();
+  /**
+   * Place the symbol at a source offset.
+   * @param sourceOffset Source offset that symbol was encountered at.
+   * @param lines Index used to resolve the offset to a line and column.
+   */
+  public SymbolBuilder withPosition(int sourceOffset, LineIndex lines) {
+    this.sourceOffset = sourceOffset;
+    this.lines = lines;
     return this;
   }
 
@@ -38,7 +43,7 @@ public class SymbolBuilder {
   }
 
   public Symbol build() {
-    Symbol symbol = new Symbol(type, value, line, column);
+    Symbol symbol = new Symbol(type, value, sourceOffset, lines);
     symbol.setAttributes(attributes);
     return symbol;
   }
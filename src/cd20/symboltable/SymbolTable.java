@@ -4,6 +4,12 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * A table of symbols within a single scope.
+ *
+ * Symbols are hashed by name for constant time lookup, while iteration keeps
+ * insertion order.
+ */
 public class SymbolTable {
   private final Map<String, Symbol> symbols = new LinkedHashMap<>();
   private final String scope;
@@ -26,13 +32,9 @@ public class SymbolTable {
    * @return Matching symbol of Null if not found.
    */
   public Symbol resolve(String name) {
-    for (String symbolName : symbols.keySet()) {
-      if (symbolName.equals(name)) {
-        return symbols.get(symbolName);
-      }
-    }
-
-    return null;
+    // Identifier names are interned by the scanner, so their hash codes are
+    // already cached and equal names usually match by reference
+    return symbols.get(name);
   }
 
   /**
@@ -47,8 +49,8 @@ public class SymbolTable {
   }
 
   public void printDebug() {
-    for (String name : symbols.keySet()) {
-      System.out.println(name + ": " + symbols.get(name).toString());
+    for (Map.Entry<String, Symbol> entry : symbols.entrySet()) {
+      System.out.println(entry.getKey() + ": " + entry.getValue().toString());
     }
   }
 }
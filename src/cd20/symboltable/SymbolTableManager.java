@@ -1,9 +1,10 @@
 package cd20.symboltable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 import cd20.symboltable.attribute.IsParamAttribute;
 
@@ -11,7 +12,8 @@ import cd20.symboltable.attribute.IsParamAttribute;
  * A class which manages a collection of symbol tables and scope.
  */
 public class SymbolTableManager {
-  private final Stack<SymbolTable> scope = new Stack<>();
+  // Stack of entered scopes, innermost last
+  private final List<SymbolTable> scope = new ArrayList<>();
   private final Map<String, SymbolTable> tables = new LinkedHashMap<>();
   private final SymbolTable constants = new SymbolTable("constants");
 
@@ -27,7 +29,14 @@ public class SymbolTableManager {
       return null;
     }
 
-    return scope.peek().getScope();
+    return currentTable().getScope();
+  }
+
+  /**
+   * Get the symbol table of the innermost scope.
+   */
+  private SymbolTable currentTable() {
+    return scope.get(scope.size() - 1);
   }
 
   /**
@@ -50,15 +59,16 @@ public class SymbolTableManager {
     registerTwoParamCounter = -8;
     registerTwoCounter = 16;
 
-    this.scope.push(tables.get(scope));
-    return tables.get(scope);
+    SymbolTable table = tables.get(scope);
+    this.scope.add(table);
+    return table;
   }
 
   /**
    * Leave the current scope.
    */
   public void leaveScope() {
-    scope.pop();
+    scope.remove(scope.size() - 1);
   }
 
   /**
@@ -82,7 +92,7 @@ public class SymbolTableManager {
       symbol.setOffset(getNextAvailableOffset(symbol, register));
     }
 
-    scope.peek().insertSymbol(symbol);
+    currentTable().insertSymbol(symbol);
   }
 
   /**
@@ -129,16 +139,11 @@ public class SymbolTableManager {
    * @return Found symbol or null.
    */
   public Symbol resolve(String name) {
-    // Clone the stack so that we can pop freely. We're just cloning references
-    // (I believe) so this shouldn't cost too much space.
-    Stack<SymbolTable> stack = (Stack<SymbolTable>) scope.clone();
-    
     // Start at the current scope, moving gradually higher until we find
     // a matching symbol.
-    while (stack.size() > 0) {
-      SymbolTable table = stack.pop();
-      Symbol symbol = table.resolve(name);
-      
+    for (int i = scope.size() - 1; i >= 0; i--) {
+      Symbol symbol = scope.get(i).resolve(name);
+
       if (symbol != null) {
         return symbol;
       }
@@ -161,8 +166,7 @@ public class SymbolTableManager {
    * @return Whether the symbol exists within the current scope.
    */
   public boolean containsSymbol(String name) {
-    SymbolTable table = scope.peek();
-    return table.resolve(name) != null;
+    return currentTable().resolve(name) != null;
   }
 
   public Collection<SymbolTable> getTables() {
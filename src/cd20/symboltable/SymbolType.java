@@ -17,14 +17,15 @@ public enum SymbolType {
   STRUCT_OR_ARRAY_VARIABLE;
 
   public static SymbolType fromDataType(DataType type) {
-    if (type.isInteger()) {
-      return SymbolType.INTEGER_VARIABLE;
-    } else if (type.isReal()) {
-      return SymbolType.FLOAT_VARIABLE;
-    } else if (type.isBoolean()) {
-      return SymbolType.BOOLEAN_VARIABLE;
-    } else {
-      return SymbolType.STRUCT_OR_ARRAY_VARIABLE;
+    switch (type.getKind()) {
+      case INTEGER:
+        return SymbolType.INTEGER_VARIABLE;
+      case REAL:
+        return SymbolType.FLOAT_VARIABLE;
+      case BOOLEAN:
+        return SymbolType.BOOLEAN_VARIABLE;
+      default:
+        return SymbolType.STRUCT_OR_ARRAY_VARIABLE;
     }
   }
 
@@ -0,0 +1,45 @@
+package cd20.symboltable.attribute;
+
+/**
+ * Assigns each single-valued attribute type a fixed slot, so a symbol can
+ * find its attributes by index rather than scanning them.
+ *
+ * Slots are resolved once per class and cached.
+ */
+public class AttributeSlots {
+  public static final int NONE = -1;
+
+  public static final int DATA_TYPE = 0;
+  public static final int RETURN_TYPE = 1;
+  public static final int INTEGER_CONSTANT = 2;
+  public static final int FLOAT_CONSTANT = 3;
+  public static final int STRING_CONSTANT = 4;
+  public static final int IS_PARAM = 5;
+  public static final int IMMUTABLE = 6;
+
+  public static final int COUNT = 7;
+
+  private static final ClassValue<Integer> SLOTS = new ClassValue<Integer>() {
+    @Override
+    protected Integer computeValue(Class<?> clazz) {
+      if (clazz == DataTypeAttribute.class) return DATA_TYPE;
+      if (clazz == ReturnTypeAttribute.class) return RETURN_TYPE;
+      if (clazz == IntegerConstantAttribute.class) return INTEGER_CONSTANT;
+      if (clazz == FloatConstantAttribute.class) return FLOAT_CONSTANT;
+      if (clazz == StringConstantAttribute.class) return STRING_CONSTANT;
+      if (clazz == IsParamAttribute.class) return IS_PARAM;
+      if (clazz == ImmutableAttribute.class) return IMMUTABLE;
+      return NONE;
+    }
+  };
+
+  /**
+   * Get the slot for an attribute type.
+   * @param clazz Attribute class.
+   * @return Slot index, or {@link #NONE} if the type has no slot (e.g.
+   * {@link ParameterAttribute}, of which a symbol may have many).
+   */
+  public static int slotOf(Class<?> clazz) {
+    return SLOTS.get(clazz);
+  }
+}
@@ -2,7 +2,7 @@ package cd20.symboltable.attribute;
 
 import cd20.parser.DataType;
 import cd20.parser.Node;
-import cd20.scanner.Token;
+import cd20.scanner.LineIndex;
 import cd20.symboltable.Symbol;
 import cd20.symboltable.SymbolType;
 
@@ -17,11 +17,17 @@ public class AttributeUtils {
     return attr.getType();
   }
 
-  public static void propogateDataType(Node child, Node parent, Token parentToken) {
+  /**
+   * Give a parent node the data type of its child.
+   * @param sourceOffset Source offset of the parent, in case it needs a new
+   * symbol.
+   * @param lines Index used to resolve the offset to a line and column.
+   */
+  public static void propogateDataType(Node child, Node parent, int sourceOffset, LineIndex lines) {
     DataType type = getDataType(child);
 
     if (parent.getSymbol() == null) {
-      parent.setSymbol(new Symbol(SymbolType.TEMPORARY, parentToken));
+      parent.setSymbol(new Symbol(SymbolType.TEMPORARY, null, sourceOffset, lines));
     }
 
     parent.getSymbol().addAttribute(new DataTypeAttribute(type));
@@ -0,0 +1,1281 @@
+package cd20.vm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+
+/**
+ * An SM20 stack machine, which executes a loaded module in-process.
+ *
+ * Memory is a single array of tagged 64 bit words, addressed by byte. The
+ * instruction area (b0) holds the code followed by the integer, float and
+ * string constants. The stack starts straight after it, at b1, and grows up.
+ * The stack pointer always points at the latest item pushed.
+ *
+ * Code is decoded into a {@link Program} when the module is loaded. The
+ * interpreter keeps its registers in locals, and executes common operations
+ * inline in a single loop, which HotSpot compiles as a whole. Everything else
+ * is executed out of line, by methods which work on the registers' fields.
+ * Internally, the stack pointer and frame pointer (b2) are word indices.
+ *
+ * Any use of data that its tag doesn't allow is a fatal fault, reported with
+ * an {@link SM20Exception}.
+ */
+public class Machine {
+  private static final int WORD_SIZE = 8;
+  private static final int INITIAL_STACK_WORDS = 4096;
+  private static final double FLOAT_TOLERANCE = 0.000001;
+
+  // Entries into a function or loop before it's compiled
+  private static final int COMPILE_THRESHOLD = 1000;
+
+  // Bound memory, so that runaway recursion faults rather than exhausting the
+  // heap
+  private static final int MAX_WORDS = 1 << 24;
+
+  private final Program program;
+
+  // Byte image of the instruction area, for printing strings
+  private final byte[] instructions;
+  private final int instructionLimit;
+
+  private long[] values;
+  private byte[] tags;
+
+  private final int b1;
+  private final int base;
+
+  // Registers, which are only up to date outside of the interpreter loop
+  private int frame = 0;
+  private int top;
+  private int pc = 0;
+  private boolean isHalted = false;
+
+  private final ValueReader input;
+  private final Writer output;
+
+  // Compiled functions and loops, by the stream index of their entry
+  private boolean isCompilerEnabled = true;
+  private RegionCompiler compiler;
+  private final int[] entryCounts;
+  private final MethodHandle[] regions;
+  private final int[] registers = new int[2];
+
+  /**
+   * Load a module, ready to run from its entry point.
+   * @param module Module to load.
+   * @param input Source of values for READI and READF.
+   * @param output Destination of printed output. It is flushed, but not
+   * closed, when the program stops.
+   */
+  public Machine(Module module, Reader input, Writer output) {
+    this.input = new ValueReader(input);
+    this.output = output;
+
+    byte[] code = module.getCode();
+    int size = module.getSize();
+
+    program = Program.decode(code, code.length);
+    entryCounts = new int[program.getCode().length];
+    regions = new MethodHandle[entryCounts.length];
+    instructions = Arrays.copyOf(code, size);
+    instructionLimit = code.length;
+    values = new long[size / WORD_SIZE + INITIAL_STACK_WORDS];
+    tags = new byte[values.length];
+
+    int word = 0;
+    for (; word < code.length / WORD_SIZE; word++) {
+      loadWord(word, Tag.INST);
+    }
+
+    for (long integer : module.getIntegers()) {
+      storeConstant(word++, Tag.INTG, integer);
+    }
+
+    for (double real : module.getFloats()) {
+      storeConstant(word++, Tag.FLOT, Double.doubleToRawLongBits(real));
+    }
+
+    byte[] strings = module.getStrings();
+    System.arraycopy(strings, 0, instructions, word * WORD_SIZE, strings.length);
+    for (; word < size / WORD_SIZE; word++) {
+      loadWord(word, Tag.STRG);
+    }
+
+    b1 = size;
+    base = b1 / WORD_SIZE;
+    top = base - 1;
+  }
+
+  /**
+   * Set a word of the instruction area from its bytes.
+   */
+  private void loadWord(int word, byte tag) {
+    long value = 0;
+    for (int i = 0; i < WORD_SIZE; i++) {
+      value = (value << 8) | (instructions[word * WORD_SIZE + i] & 0xFF);
+    }
+
+    values[word] = value;
+    tags[word] = tag;
+  }
+
+  /**
+   * Set a word of the instruction area, and its bytes.
+   */
+  private void storeConstant(int word, byte tag, long value) {
+    values[word] = value;
+    tags[word] = tag;
+
+    for (int i = WORD_SIZE - 1; i >= 0; i--) {
+      instructions[word * WORD_SIZE + i] = (byte) value;
+      value >>>= 8;
+    }
+  }
+
+  /**
+   * Set whether hot functions and loops are compiled to JVM bytecode. It's
+   * enabled by default.
+   */
+  public void setCompilerEnabled(boolean isCompilerEnabled) {
+    this.isCompilerEnabled = isCompilerEnabled;
+  }
+
+  /**
+   * Run the program until it halts.
+   * @throws SM20Exception If the program faults.
+   */
+  public void run() {
+    try {
+      if (!isHalted) {
+        execute();
+      }
+    } finally {
+      flush();
+    }
+  }
+
+  /**
+   * The interpreter loop.
+   */
+  private void execute() {
+    final int[] code = program.getCode();
+    final int[] entries = program.getEntries();
+    final int base = this.base;
+
+    long[] values = this.values;
+    byte[] tags = this.tags;
+    int pc = this.pc;
+    int top = this.top;
+    int frame = this.frame;
+
+    while (true) {
+      // No instruction grows the stack by more than a word
+      if (top + 1 >= values.length) {
+        this.top = top;
+        grow(pc, top + 1);
+        values = this.values;
+        tags = this.tags;
+      }
+
+      int operation = code[pc];
+
+      switch (operation) {
+        case Opcode.HALT:
+          this.pc = pc;
+          this.top = top;
+          this.frame = frame;
+          isHalted = true;
+          return;
+
+        case Opcode.NOOP:
+          pc++;
+          continue;
+
+        case Opcode.ZERO:
+        case Opcode.FALSE:
+          top++;
+          values[top] = 0;
+          tags[top] = operation == Opcode.ZERO ? Tag.INTG : Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.TRUE:
+          top++;
+          values[top] = 1;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.LB:
+        case Opcode.LH:
+          top++;
+          values[top] = code[pc + 1];
+          tags[top] = Tag.INTG;
+          pc += 2;
+          continue;
+
+        case Opcode.LA0:
+          top++;
+          values[top] = code[pc + 1];
+          tags[top] = Tag.ADDR;
+          pc += 2;
+          continue;
+
+        case Opcode.LA1:
+          top++;
+          values[top] = b1 + code[pc + 1];
+          tags[top] = Tag.ADDR;
+          pc += 2;
+          continue;
+
+        case Opcode.LA2:
+          top++;
+          values[top] = frame * WORD_SIZE + code[pc + 1];
+          tags[top] = Tag.ADDR;
+          pc += 2;
+          continue;
+
+        case Opcode.LV0: {
+          int word = code[pc + 1];
+          if (word < 0 || word > top || tags[word] == Tag.INST) throw invalidLoad(pc, word);
+
+          top++;
+          values[top] = values[word];
+          tags[top] = tags[word];
+          pc += 2;
+          continue;
+        }
+
+        case Opcode.LV1: {
+          int word = base + code[pc + 1];
+          if (word < 0 || word > top || tags[word] == Tag.INST) throw invalidLoad(pc, word);
+
+          top++;
+          values[top] = values[word];
+          tags[top] = tags[word];
+          pc += 2;
+          continue;
+        }
+
+        case Opcode.LV2: {
+          int word = frame + code[pc + 1];
+          if (word < 0 || word > top || tags[word] == Tag.INST) throw invalidLoad(pc, word);
+
+          top++;
+          values[top] = values[word];
+          tags[top] = tags[word];
+          pc += 2;
+          continue;
+        }
+
+        case Opcode.L: {
+          if (top < base) throw fault(pc, "Stack underflow");
+          int word = toWord(pc, top, top - 1);
+          if (tags[word] == Tag.INST) throw invalidLoad(pc, word);
+
+          values[top] = values[word];
+          tags[top] = tags[word];
+          pc++;
+          continue;
+        }
+
+        case Opcode.ST: {
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+          requireValue(pc, tags[top], "store");
+
+          int word = toWord(pc, top - 1, top - 2);
+          if (word < base) throw fault(pc, "Cannot store into the instruction area: " + word * WORD_SIZE);
+
+          values[word] = values[top];
+          tags[word] = tags[top];
+          top -= 2;
+          pc++;
+          continue;
+        }
+
+        case Opcode.DUP:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top + 1] = values[top];
+          tags[top + 1] = tags[top];
+          top++;
+          pc++;
+          continue;
+
+        case Opcode.ADD:
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+
+          if (tags[top - 1] == Tag.INTG && tags[top] == Tag.INTG) {
+            values[top - 1] += values[top];
+          } else {
+            floatArithmetic(pc, operation, top - 1, top);
+          }
+
+          top--;
+          pc++;
+          continue;
+
+        case Opcode.SUB:
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+
+          if (tags[top - 1] == Tag.INTG && tags[top] == Tag.INTG) {
+            values[top - 1] -= values[top];
+          } else {
+            floatArithmetic(pc, operation, top - 1, top);
+          }
+
+          top--;
+          pc++;
+          continue;
+
+        case Opcode.MUL:
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+
+          if (tags[top - 1] == Tag.INTG && tags[top] == Tag.INTG) {
+            values[top - 1] *= values[top];
+          } else {
+            floatArithmetic(pc, operation, top - 1, top);
+          }
+
+          top--;
+          pc++;
+          continue;
+
+        case Opcode.DIV:
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+
+          if (tags[top - 1] == Tag.INTG && tags[top] == Tag.INTG) {
+            if (values[top] == 0) throw fault(pc, "Division by zero");
+            values[top - 1] /= values[top];
+          } else {
+            floatArithmetic(pc, operation, top - 1, top);
+          }
+
+          top--;
+          pc++;
+          continue;
+
+        case Opcode.GT:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] > 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.GE:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] >= 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.LT:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] < 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.LE:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] <= 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.EQ:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] == 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.NE:
+          if (top < base) throw fault(pc, "Stack underflow");
+          values[top] = (tags[top] == Tag.INTG ? values[top] != 0 : compare(pc, operation, top)) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc++;
+          continue;
+
+        case Opcode.AND:
+        case Opcode.OR:
+        case Opcode.XOR:
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+          require(pc, top - 1, Tag.BOOL);
+          require(pc, top, Tag.BOOL);
+
+          if (operation == Opcode.AND) {
+            values[top - 1] &= values[top];
+          } else if (operation == Opcode.OR) {
+            values[top - 1] |= values[top];
+          } else {
+            values[top - 1] ^= values[top];
+          }
+
+          top--;
+          pc++;
+          continue;
+
+        case Opcode.NOT:
+          if (top < base) throw fault(pc, "Stack underflow");
+          require(pc, top, Tag.BOOL);
+          values[top] ^= 1;
+          pc++;
+          continue;
+
+        case Opcode.BT:
+        case Opcode.BF: {
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+          require(pc, top, Tag.BOOL);
+          require(pc, top - 1, Tag.ADDR);
+
+          boolean isTaken = (values[top] != 0) == (operation == Opcode.BT);
+          top -= 2;
+          int next = isTaken ? jump(pc, entries, values[top + 1]) : pc + 1;
+
+          // Loops branch backwards
+          if (next <= pc) {
+            MethodHandle region = profile(next, pc + 1);
+            if (region != null) {
+              next = enter(region, top, frame);
+              top = registers[0];
+            }
+          }
+
+          pc = next;
+          continue;
+        }
+
+        case Opcode.BR:
+          if (top < base) throw fault(pc, "Stack underflow");
+          require(pc, top, Tag.ADDR);
+          top--;
+          pc = jump(pc, entries, values[top + 1]);
+          continue;
+
+        case Opcode.JS2: {
+          if (top - 1 < base) throw fault(pc, "Stack underflow");
+          require(pc, top, Tag.ADDR);
+          require(pc, top - 1, Tag.INTG);
+
+          int target = jump(pc, entries, values[top]);
+          long parameters = values[top - 1];
+
+          // Replace the operands with the call frame and number of parameters
+          values[top - 1] = ((long) frame * WORD_SIZE << 32) | code[pc + 1];
+          tags[top - 1] = Tag.MSCW;
+          values[top] = parameters;
+          tags[top] = Tag.INTG;
+
+          frame = top - 1;
+          pc = target;
+
+          MethodHandle region = profile(target, -1);
+          if (region != null) {
+            pc = enter(region, top, frame);
+            top = registers[0];
+          }
+          continue;
+        }
+
+        case Opcode.RVAL: {
+          if (top < base) throw fault(pc, "Stack underflow");
+          requireValue(pc, tags[top], "return");
+
+          int word = returnWord(pc, frame);
+          if (word < base) throw fault(pc, "Cannot store into the instruction area: " + word * WORD_SIZE);
+
+          values[word] = values[top];
+          tags[word] = tags[top];
+          top--;
+          pc++;
+          continue;
+        }
+
+        case Opcode.RETN: {
+          long control = values[frame];
+          top = returnWord(pc, frame);
+          frame = (int) (control >>> 32) / WORD_SIZE;
+          pc = jump(pc, entries, (int) control);
+          continue;
+        }
+
+        // Superinstructions only handle integers, and valid operands. Anything
+        // else executes their first instruction on its own.
+        case Opcode.COMPARE:
+          if (top - 1 < base || tags[top - 1] != Tag.INTG || tags[top] != Tag.INTG) {
+            operation = Opcode.SUB;
+            break;
+          }
+
+          top--;
+          values[top] = test(code[pc + 1], values[top] - values[top + 1]) ? 1 : 0;
+          tags[top] = Tag.BOOL;
+          pc += 2;
+          continue;
+
+        case Opcode.COMPARE_BRANCH: {
+          if (top - 2 < base || tags[top - 2] != Tag.ADDR || tags[top - 1] != Tag.INTG || tags[top] != Tag.INTG) {
+            operation = Opcode.SUB;
+            break;
+          }
+
+          boolean result = test(code[pc + 1], values[top - 1] - values[top]);
+          boolean isTaken = result == (code[pc + 2] == Opcode.BT);
+          top -= 3;
+          int next = isTaken ? jump(pc + 2, entries, values[top + 1]) : pc + 3;
+
+          if (next <= pc) {
+            MethodHandle region = profile(next, pc + 3);
+            if (region != null) {
+              next = enter(region, top, frame);
+              top = registers[0];
+            }
+          }
+
+          pc = next;
+          continue;
+        }
+
+        case Opcode.JUMP:
+          pc = code[pc + 1];
+          continue;
+
+        case Opcode.ADD_STORE:
+        case Opcode.SUB_STORE: {
+          int word = storeTarget(top - 2, top - 3);
+          if (word < 0 || tags[top - 1] != Tag.INTG || tags[top] != Tag.INTG) {
+            operation = operation == Opcode.ADD_STORE ? Opcode.ADD : Opcode.SUB;
+            break;
+          }
+
+          values[word] = operation == Opcode.ADD_STORE
+            ? values[top - 1] + values[top]
+            : values[top - 1] - values[top];
+          tags[word] = Tag.INTG;
+          top -= 3;
+          pc += 2;
+          continue;
+        }
+
+        case Opcode.ADD_LITERAL:
+          if (top < base || tags[top] != Tag.INTG) {
+            operation = Opcode.LB;
+            break;
+          }
+
+          values[top] += code[pc + 1];
+          pc += 3;
+          continue;
+
+        case Opcode.SUB_LITERAL:
+          if (top < base || tags[top] != Tag.INTG) {
+            operation = Opcode.LB;
+            break;
+          }
+
+          values[top] -= code[pc + 1];
+          pc += 3;
+          continue;
+
+        case Opcode.MUL_LITERAL:
+          if (top < base || tags[top] != Tag.INTG) {
+            operation = Opcode.LB;
+            break;
+          }
+
+          values[top] *= code[pc + 1];
+          pc += 3;
+          continue;
+
+        case Opcode.DIV_LITERAL:
+          if (top < base || tags[top] != Tag.INTG) {
+            operation = Opcode.LB;
+            break;
+          }
+
+          values[top] /= code[pc + 1];
+          pc += 3;
+          continue;
+
+        default:
+          break;
+      }
+
+      this.pc = pc;
+      this.top = top;
+      this.frame = frame;
+
+      executeSlow(operation);
+
+      values = this.values;
+      tags = this.tags;
+      pc = this.pc;
+      top = this.top;
+      frame = this.frame;
+    }
+  }
+
+  /**
+   * Count an entry into a function or loop, and compile it once it's hot.
+   * @param start Stream index of the entry.
+   * @param end Stream index just past the end of a loop, or -1 for a
+   * function.
+   * @return The compiled region, or null if it should be interpreted.
+   */
+  private MethodHandle profile(int start, int end) {
+    MethodHandle region = regions[start];
+    if (region != null || !isCompilerEnabled || entryCounts[start] >= COMPILE_THRESHOLD) {
+      return region;
+    }
+
+    if (++entryCounts[start] < COMPILE_THRESHOLD) return null;
+
+    if (compiler == null) {
+      compiler = new RegionCompiler(program, values, tags, b1);
+    }
+
+    // Regions which can't be compiled stay interpreted
+    region = end < 0 ? compiler.compileFunction(start) : compiler.compile(start, end);
+    regions[start] = region;
+    return region;
+  }
+
+  /**
+   * Run a compiled region. The new stack pointer is left in the first
+   * register.
+   * @return Stream index to continue interpreting from.
+   */
+  private int enter(MethodHandle region, int top, int frame) {
+    registers[0] = top;
+    registers[1] = frame;
+
+    try {
+      return (int) region.invokeExact(values, tags, registers);
+    } catch (RuntimeException | Error exception) {
+      throw exception;
+    } catch (Throwable throwable) {
+      throw new IllegalStateException(throwable);
+    }
+  }
+
+  /**
+   * Execute an uncommon operation, or the first instruction of a
+   * superinstruction, using the register fields.
+   */
+  private void executeSlow(int operation) {
+    switch (operation) {
+      case Opcode.LB:
+        push(Tag.INTG, program.getCode()[pc + 1]);
+        pc++;
+        break;
+      case Opcode.ADD:
+      case Opcode.SUB:
+        arithmetic(operation);
+        break;
+      case Opcode.TRAP:
+        throw fault("Program aborted");
+      case Opcode.TYPE:
+        convert(requireArithmetic(topWord()) == Tag.INTG ? Tag.FLOT : Tag.INTG);
+        break;
+      case Opcode.ITYPE:
+        convert(Tag.INTG);
+        break;
+      case Opcode.FTYPE:
+        convert(Tag.FLOT);
+        break;
+      case Opcode.REM:
+        remainder();
+        break;
+      case Opcode.POWER:
+        power();
+        break;
+      case Opcode.CHS:
+      case Opcode.ABS:
+        negate(operation);
+        break;
+      case Opcode.STEP:
+        allocate(1);
+        break;
+      case Opcode.ALLOC:
+        allocate(popCount());
+        break;
+      case Opcode.ARRAY:
+        array();
+        break;
+      case Opcode.INDEX:
+        index();
+        break;
+      case Opcode.SIZE:
+        push(Tag.INTG, popDescriptor() >>> 32);
+        break;
+      case Opcode.READF:
+        readFloat();
+        break;
+      case Opcode.READI:
+        readInteger();
+        break;
+      case Opcode.VALPR:
+        printValue();
+        break;
+      case Opcode.STRPR:
+        printString(popAddress());
+        break;
+      case Opcode.CHRPR:
+        print((char) (instructionByte(popAddress()) & 0xFF));
+        break;
+      case Opcode.NEWLN:
+        print('\n');
+        break;
+      case Opcode.SPACE:
+        print(' ');
+        break;
+      case Opcode.END:
+        throw fault("Program counter is outside the instruction area");
+      case Opcode.MISALIGNED:
+        throw fault("Invalid address: offset " + program.getCode()[pc + 1]);
+      default:
+        throw fault("Invalid instruction: " + operation);
+    }
+
+    pc++;
+  }
+
+  /**
+   * Map a branch target to its stream index.
+   * @param pc Index of the branching instruction.
+   * @param entries Stream index of each byte address.
+   * @param address Target byte address.
+   */
+  private int jump(int pc, int[] entries, long address) {
+    if (address < 0 || address >= entries.length || entries[(int) address] < 0) {
+      throw fault(pc, "Branch target is not an instruction: " + address);
+    }
+
+    return entries[(int) address];
+  }
+
+  /**
+   * Get the index of the word that an address on the stack refers to.
+   * @param pc Index of the current instruction.
+   * @param index Index of the address on the stack.
+   * @param top Highest index the address may refer to.
+   */
+  private int toWord(int pc, int index, int top) {
+    require(pc, index, Tag.ADDR);
+
+    long address = values[index];
+    if (address < 0 || address > (long) top * WORD_SIZE || address % WORD_SIZE != 0) {
+      throw fault(pc, "Invalid address: " + address);
+    }
+
+    return (int) (address / WORD_SIZE);
+  }
+
+  /**
+   * Get the index of the current function's return value, which sits just
+   * before its parameters. This is also where the stack ends after the
+   * function returns.
+   */
+  private int returnWord(int pc, int frame) {
+    if (frame < base || tags[frame] != Tag.MSCW) {
+      throw fault(pc, "Not within a subprogram");
+    }
+
+    long parameters = values[frame + 1];
+    if (parameters < 0 || parameters > frame - base) {
+      throw fault(pc, "Invalid number of parameters: " + parameters);
+    }
+
+    return frame - (int) parameters - 1;
+  }
+
+  private SM20Exception invalidLoad(int pc, int word) {
+    if (word >= 0 && word < tags.length && tags[word] == Tag.INST) {
+      return fault(pc, "Cannot load an instruction as data: " + (long) word * WORD_SIZE);
+    }
+
+    return fault(pc, "Invalid address: " + (long) word * WORD_SIZE);
+  }
+
+  /**
+   * Check that a tag may be stored in memory.
+   * @param action What's being done with the value, for the fault message.
+   */
+  private void requireValue(int pc, byte tag, String action) {
+    if (tag != Tag.INTG && tag != Tag.FLOT && tag != Tag.BOOL) {
+      throw fault(pc, String.format("Cannot %s a value tagged %s", action, Tag.toString(tag)));
+    }
+  }
+
+  /**
+   * Get the word that ST would store into, without faulting.
+   * @param index Index of the address on the stack.
+   * @param top Highest index the address may refer to.
+   * @return Index of the word, or -1 if the store would fault.
+   */
+  private int storeTarget(int index, int top) {
+    if (index < base || tags[index] != Tag.ADDR) return -1;
+
+    long address = values[index];
+    if (address < b1 || address > (long) top * WORD_SIZE || address % WORD_SIZE != 0) return -1;
+
+    return (int) (address / WORD_SIZE);
+  }
+
+  /**
+   * Perform ADD or SUB, using the register fields.
+   */
+  private void arithmetic(int operation) {
+    if (top - 1 < base) throw fault("Stack underflow");
+
+    if (tags[top - 1] == Tag.INTG && tags[top] == Tag.INTG) {
+      values[top - 1] = operation == Opcode.ADD
+        ? values[top - 1] + values[top]
+        : values[top - 1] - values[top];
+    } else {
+      floatArithmetic(pc, operation, top - 1, top);
+    }
+
+    top--;
+  }
+
+  /**
+   * Perform ADD, SUB, MUL or DIV where at least one operand isn't an integer.
+   * Integers are promoted to floats.
+   * @param left Index of the left operand, which receives the result.
+   * @param right Index of the right operand.
+   */
+  private void floatArithmetic(int pc, int operation, int left, int right) {
+    requireArithmetic(pc, left);
+    requireArithmetic(pc, right);
+
+    double a = toDouble(left);
+    double b = toDouble(right);
+    double result;
+
+    switch (operation) {
+      case Opcode.ADD:
+        result = a + b;
+        break;
+      case Opcode.SUB:
+        result = a - b;
+        break;
+      case Opcode.MUL:
+        result = a * b;
+        break;
+      default:
+        result = a / b;
+        break;
+    }
+
+    values[left] = Double.doubleToRawLongBits(result);
+    tags[left] = Tag.FLOT;
+  }
+
+  /**
+   * Compare an arithmetic word against zero. Floats are equal to zero within
+   * a small tolerance.
+   */
+  private boolean compare(int pc, int operation, int index) {
+    if (requireArithmetic(pc, index) == Tag.INTG) {
+      return test(operation, values[index]);
+    }
+
+    double value = Double.longBitsToDouble(values[index]);
+
+    switch (operation) {
+      case Opcode.GT:
+        return value > 0;
+      case Opcode.GE:
+        return value >= 0;
+      case Opcode.LT:
+        return value < 0;
+      case Opcode.LE:
+        return value <= 0;
+      case Opcode.EQ:
+        return Math.abs(value) < FLOAT_TOLERANCE;
+      default:
+        return Math.abs(value) > FLOAT_TOLERANCE;
+    }
+  }
+
+  /**
+   * Compare an integer against zero.
+   */
+  static boolean test(int operation, long value) {
+    switch (operation) {
+      case Opcode.GT:
+        return value > 0;
+      case Opcode.GE:
+        return value >= 0;
+      case Opcode.LT:
+        return value < 0;
+      case Opcode.LE:
+        return value <= 0;
+      case Opcode.EQ:
+        return value == 0;
+      default:
+        return value != 0;
+    }
+  }
+
+  /**
+   * Check the tag of a word.
+   */
+  private void require(int pc, int index, byte tag) {
+    if (tags[index] != tag) {
+      throw fault(pc, String.format("Expected %s, but found %s", Tag.toString(tag), Tag.toString(tags[index])));
+    }
+  }
+
+  /**
+   * Check that a word is an integer or a float.
+   * @return Tag of the word.
+   */
+  private byte requireArithmetic(int pc, int index) {
+    byte tag = tags[index];
+    if (tag != Tag.INTG && tag != Tag.FLOT) {
+      throw fault(pc, "Expected an arithmetic value, but found " + Tag.toString(tag));
+    }
+
+    return tag;
+  }
+
+  private byte requireArithmetic(int index) {
+    return requireArithmetic(pc, index);
+  }
+
+  /**
+   * Get the value of an arithmetic word as a double, promoting integers.
+   */
+  private double toDouble(int index) {
+    return tags[index] == Tag.INTG
+      ? (double) values[index]
+      : Double.longBitsToDouble(values[index]);
+  }
+
+  /**
+   * Push a word onto the stack.
+   */
+  private void push(byte tag, long value) {
+    top++;
+    ensureCapacity(top);
+
+    values[top] = value;
+    tags[top] = tag;
+  }
+
+  /**
+   * Pop a word off the stack. Its value and tag remain available at the
+   * returned index until the next push.
+   * @return Index of the popped word.
+   */
+  private int pop() {
+    int index = topWord();
+    top--;
+    return index;
+  }
+
+  /**
+   * Get the index of the word at the top of the stack.
+   */
+  private int topWord() {
+    if (top < base) {
+      throw fault("Stack underflow");
+    }
+
+    return top;
+  }
+
+  private int popAddress() {
+    int index = pop();
+    require(pc, index, Tag.ADDR);
+    return (int) values[index];
+  }
+
+  private long popInteger() {
+    int index = pop();
+    require(pc, index, Tag.INTG);
+    return values[index];
+  }
+
+  private long popDescriptor() {
+    int index = pop();
+    require(pc, index, Tag.DESC);
+    return values[index];
+  }
+
+  /**
+   * Pop a non-negative number of words.
+   */
+  private int popCount() {
+    long count = popInteger();
+    if (count < 0 || count > MAX_WORDS) {
+      throw fault("Invalid number of words: " + count);
+    }
+
+    return (int) count;
+  }
+
+  /**
+   * Convert the top of the stack to an integer or a float.
+   */
+  private void convert(byte tag) {
+    int index = topWord();
+    if (requireArithmetic(index) == tag) return;
+
+    values[index] = tag == Tag.FLOT
+      ? Double.doubleToRawLongBits((double) values[index])
+      : (long) Double.longBitsToDouble(values[index]);
+    tags[index] = tag;
+  }
+
+  /**
+   * Perform REM on the top two words, which must be integers.
+   */
+  private void remainder() {
+    long b = popInteger();
+    long a = popInteger();
+    if (b == 0) throw fault("Division by zero");
+
+    push(Tag.INTG, a % b);
+  }
+
+  /**
+   * Raise the second word to the power of the top word, an integer.
+   */
+  private void power() {
+    long exponent = popInteger();
+    int base = pop();
+
+    if (requireArithmetic(base) == Tag.INTG && exponent >= 0) {
+      long result = 1;
+      long factor = values[base];
+      for (long remaining = exponent; remaining > 0; remaining >>= 1) {
+        if ((remaining & 1) != 0) result *= factor;
+        factor *= factor;
+      }
+
+      push(Tag.INTG, result);
+      return;
+    }
+
+    double result = Math.pow(toDouble(base), exponent);
+    push(Tag.FLOT, Double.doubleToRawLongBits(result));
+  }
+
+  /**
+   * Perform CHS or ABS on the top word.
+   */
+  private void negate(int operation) {
+    int index = topWord();
+
+    if (requireArithmetic(index) == Tag.INTG) {
+      long value = values[index];
+      values[index] = operation == Opcode.CHS ? -value : Math.abs(value);
+    } else {
+      double value = Double.longBitsToDouble(values[index]);
+      values[index] = Double.doubleToRawLongBits(operation == Opcode.CHS ? -value : Math.abs(value));
+    }
+  }
+
+  /**
+   * Store a word at an address outside the instruction area.
+   */
+  private void storeWord(int address, byte tag, long value) {
+    if (address < b1) {
+      throw fault("Cannot store into the instruction area: " + address);
+    }
+
+    if (address > top * WORD_SIZE || address % WORD_SIZE != 0) {
+      throw fault("Invalid address: " + address);
+    }
+
+    values[address / WORD_SIZE] = value;
+    tags[address / WORD_SIZE] = tag;
+  }
+
+  /**
+   * Push undefined words.
+   */
+  private void allocate(int count) {
+    int start = top + 1;
+    ensureCapacity(top + count);
+
+    // Memory above the stack may still hold words from earlier calls
+    Arrays.fill(values, start, start + count, 0);
+    Arrays.fill(tags, start, start + count, Tag.UNDF);
+    top += count;
+  }
+
+  /**
+   * Pop a size and an address, store a descriptor for a new array at the
+   * address, and allocate its elements.
+   */
+  private void array() {
+    int size = popCount();
+    int address = popAddress();
+    long start = ((long) (top + 1) * WORD_SIZE) & 0xFFFFFFFFL;
+
+    storeWord(address, Tag.DESC, ((long) size << 32) | start);
+    allocate(size);
+  }
+
+  /**
+   * Pop an element number and a descriptor, and push the element's address.
+   */
+  private void index() {
+    long element = popInteger();
+    long descriptor = popDescriptor();
+    long size = descriptor >>> 32;
+
+    if (element < 0 || element >= size) {
+      throw fault(String.format("Index %d out of bounds for array of size %d", element, size));
+    }
+
+    push(Tag.ADDR, (int) descriptor + element * WORD_SIZE);
+  }
+
+  private void readInteger() {
+    try {
+      push(Tag.INTG, input.nextLong());
+    } catch (IOException exception) {
+      throw fault("Cannot read input: " + exception.getMessage());
+    }
+  }
+
+  private void readFloat() {
+    try {
+      push(Tag.FLOT, Double.doubleToRawLongBits(input.nextDouble()));
+    } catch (IOException exception) {
+      throw fault("Cannot read input: " + exception.getMessage());
+    }
+  }
+
+  /**
+   * Pop a value and print a space followed by it. VALPR is only defined for
+   * arithmetic values, and the reference simulator prints nothing at all for
+   * a boolean, so neither does this.
+   */
+  private void printValue() {
+    int index = pop();
+    long value = values[index];
+
+    switch (tags[index]) {
+      case Tag.INTG:
+        print(" " + value);
+        return;
+      case Tag.FLOT:
+        print(" " + Double.longBitsToDouble(value));
+        return;
+      case Tag.BOOL:
+        return;
+      default:
+        throw fault("Cannot print a value tagged " + Tag.toString(tags[index]));
+    }
+  }
+
+  /**
+   * Print the null terminated string constant at an address.
+   */
+  private void printString(int address) {
+    for (int i = address; instructionByte(i) != 0; i++) {
+      print((char) (instructions[i] & 0xFF));
+    }
+  }
+
+  /**
+   * Get a byte of the constant area.
+   */
+  private byte instructionByte(int address) {
+    if (address < instructionLimit || address >= b1) {
+      throw fault("Address is outside the constant area: " + address);
+    }
+
+    return instructions[address];
+  }
+
+  private void print(char character) {
+    try {
+      output.write(character);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private void print(String text) {
+    try {
+      output.write(text);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private void flush() {
+    try {
+      output.flush();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  /**
+   * Grow memory to fit the word at the given index, from the interpreter
+   * loop.
+   */
+  private void grow(int pc, int index) {
+    this.pc = pc;
+    ensureCapacity(index);
+  }
+
+  /**
+   * Grow memory to fit the word at the given index.
+   */
+  private void ensureCapacity(int index) {
+    if (index < values.length) return;
+
+    if (index >= MAX_WORDS) {
+      throw fault("Stack overflow");
+    }
+
+    int length = Math.min(Math.max(values.length * 2, index + 1), MAX_WORDS);
+    values = Arrays.copyOf(values, length);
+    tags = Arrays.copyOf(tags, length);
+  }
+
+  /**
+   * Create an exception for a fault in the instruction at the given index.
+   */
+  private SM20Exception fault(int pc, String message) {
+    return new SM20Exception(message, program.addressOf(pc));
+  }
+
+  /**
+   * Create an exception for a fault in the current instruction.
+   */
+  private SM20Exception fault(String message) {
+    return fault(pc, message);
+  }
+
+  public boolean isHalted() {
+    return isHalted;
+  }
+
+  /**
+   * Get the address of the next instruction to execute.
+   */
+  public int getProgramCounter() {
+    return program.addressOf(pc);
+  }
+
+  /**
+   * Get the address of the word at the top of the stack.
+   */
+  public int getStackPointer() {
+    return top * WORD_SIZE;
+  }
+}
@@ -0,0 +1,125 @@
+package cd20.vm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A loaded SM20 module: the contents of the instruction (b0) area.
+ *
+ * See {@link cd20.codegen.ModuleWriter} for the file format. Any sections
+ * after the four that the SM20 loader expects, such as relocations, are
+ * ignored.
+ */
+public class Module {
+  private static final int WORD_SIZE = 8;
+
+  private final byte[] code;
+  private final long[] integers;
+  private final double[] floats;
+  private final byte[] strings;
+
+  /**
+   * @param code Instruction bytes, a whole number of words long.
+   * @param integers Integer constants.
+   * @param floats Floating point constants.
+   * @param strings String constant bytes, a whole number of words long.
+   */
+  public Module(byte[] code, long[] integers, double[] floats, byte[] strings) {
+    this.code = code;
+    this.integers = integers;
+    this.floats = floats;
+    this.strings = strings;
+  }
+
+  /**
+   * Read a module file.
+   * @param path Path of module file.
+   */
+  public static Module read(Path path) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+      return read(reader);
+    }
+  }
+
+  /**
+   * Read a module in its textual format.
+   * @param reader Reader to read from. The reader is not closed.
+   * @throws IOException If the module is malformed.
+   */
+  public static Module read(Reader reader) throws IOException {
+    ValueReader values = new ValueReader(reader);
+
+    byte[] code = readWords(values);
+
+    long[] integers = new long[readCount(values)];
+    for (int i = 0; i < integers.length; i++) {
+      integers[i] = values.nextLong();
+    }
+
+    double[] floats = new double[readCount(values)];
+    for (int i = 0; i < floats.length; i++) {
+      floats[i] = values.nextDouble();
+    }
+
+    byte[] strings = readWords(values);
+    return new Module(code, integers, floats, strings);
+  }
+
+  /**
+   * Read a word-filled section of bytes.
+   */
+  private static byte[] readWords(ValueReader values) throws IOException {
+    byte[] bytes = new byte[readCount(values) * WORD_SIZE];
+
+    for (int i = 0; i < bytes.length; i++) {
+      long value = values.nextLong();
+      if (value < 0 || value > 255) {
+        throw new IOException("Expected a byte, but found: " + value);
+      }
+
+      bytes[i] = (byte) value;
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Read the controlling value of a section.
+   */
+  private static int readCount(ValueReader values) throws IOException {
+    long count = values.nextLong();
+    if (count < 0 || count > Integer.MAX_VALUE / WORD_SIZE) {
+      throw new IOException("Invalid section length: " + count);
+    }
+
+    return (int) count;
+  }
+
+  public byte[] getCode() {
+    return code;
+  }
+
+  public long[] getIntegers() {
+    return integers;
+  }
+
+  public double[] getFloats() {
+    return floats;
+  }
+
+  public byte[] getStrings() {
+    return strings;
+  }
+
+  /**
+   * Get the size of the instruction area, in bytes. This is where the stack
+   * starts.
+   */
+  public int getSize() {
+    return code.length + (integers.length + floats.length) * WORD_SIZE + strings.length;
+  }
+}
@@ -0,0 +1,107 @@
+package cd20.vm;
+
+/**
+ * Opcodes of a decoded {@link Program}.
+ *
+ * SM20 operations keep their {@link cd20.codegen.Operation} codes, so that
+ * they can be used as switch labels. Codes from 120 are pseudo operations,
+ * which only exist in decoded programs, and codes from 128 are
+ * superinstructions.
+ *
+ * A superinstruction replaces only the first instruction of the sequence it
+ * executes. The rest of the sequence is left in place, both as operands for
+ * the superinstruction and so that branches into the sequence still work.
+ */
+final class Opcode {
+  static final int HALT = 0;
+  static final int NOOP = 1;
+  static final int TRAP = 2;
+  static final int ZERO = 3;
+  static final int FALSE = 4;
+  static final int TRUE = 5;
+  static final int TYPE = 7;
+  static final int ITYPE = 8;
+  static final int FTYPE = 9;
+  static final int ADD = 11;
+  static final int SUB = 12;
+  static final int MUL = 13;
+  static final int DIV = 14;
+  static final int REM = 15;
+  static final int POWER = 16;
+  static final int CHS = 17;
+  static final int ABS = 18;
+  static final int GT = 21;
+  static final int GE = 22;
+  static final int LT = 23;
+  static final int LE = 24;
+  static final int EQ = 25;
+  static final int NE = 26;
+  static final int AND = 31;
+  static final int OR = 32;
+  static final int XOR = 33;
+  static final int NOT = 34;
+  static final int BT = 35;
+  static final int BF = 36;
+  static final int BR = 37;
+  static final int L = 40;
+  static final int LB = 41;
+  static final int LH = 42;
+  static final int ST = 43;
+  static final int STEP = 51;
+  static final int ALLOC = 52;
+  static final int ARRAY = 53;
+  static final int INDEX = 54;
+  static final int SIZE = 55;
+  static final int DUP = 56;
+  static final int READF = 60;
+  static final int READI = 61;
+  static final int VALPR = 62;
+  static final int STRPR = 63;
+  static final int CHRPR = 64;
+  static final int NEWLN = 65;
+  static final int SPACE = 66;
+  static final int RVAL = 70;
+  static final int RETN = 71;
+  static final int JS2 = 72;
+  static final int LV0 = 80;
+  static final int LV1 = 81;
+  static final int LV2 = 82;
+  static final int LA0 = 90;
+  static final int LA1 = 91;
+  static final int LA2 = 92;
+
+  /** Execution ran past the last instruction. */
+  static final int END = 120;
+
+  /** A load whose offset isn't word aligned. */
+  static final int MISALIGNED = 121;
+
+  /** SUB, then GT, GE, LT, LE, EQ or NE. */
+  static final int COMPARE = 128;
+
+  /** SUB, then a comparison, then BT or BF. */
+  static final int COMPARE_BRANCH = 129;
+
+  /** LA0, then BR. The LA0 operand is replaced by the target's index. */
+  static final int JUMP = 130;
+
+  /** ADD, then ST. */
+  static final int ADD_STORE = 131;
+
+  /** SUB, then ST. */
+  static final int SUB_STORE = 132;
+
+  /** LB or LH, then ADD. */
+  static final int ADD_LITERAL = 133;
+
+  /** LB or LH, then SUB. */
+  static final int SUB_LITERAL = 134;
+
+  /** LB or LH, then MUL. */
+  static final int MUL_LITERAL = 135;
+
+  /** LB or LH, then DIV, by anything other than zero. */
+  static final int DIV_LITERAL = 136;
+
+  private Opcode() {}
+}
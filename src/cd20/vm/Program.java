@@ -0,0 +1,228 @@
+package cd20.vm;
+
+import java.util.Arrays;
+
+import cd20.codegen.Operation;
+
+/**
+ * SM20 code, decoded ahead of time into a stream of ints for the interpreter.
+ *
+ * Each instruction is an {@link Opcode}, followed by its operand if it has
+ * one. Operands are decoded once, rather than on every execution:
+ * 1. LB and LH hold their sign extended value.
+ * 2. LA0, LA1 and LA2 hold their byte offset.
+ * 3. LV0, LV1 and LV2 hold their offset in words. Unaligned loads decode to
+ *    {@link Opcode#MISALIGNED}.
+ * 4. JS2 holds the address of the following instruction, to return to.
+ *
+ * Branch targets remain byte addresses at runtime, since they're data on the
+ * stack, so they're mapped to stream indices as they're taken. Code is
+ * decoded from its first byte onwards, so branching into the middle of an
+ * instruction is a fault.
+ *
+ * Sequences that SM20Generator emits for comparisons, branches, compound
+ * assignments and arithmetic on literals are then fused into
+ * superinstructions, which the interpreter dispatches once.
+ */
+class Program {
+  private final int[] code;
+  private final int[] entries;
+  private final int[] addresses;
+
+  private Program(int[] code, int[] entries, int[] addresses) {
+    this.code = code;
+    this.entries = entries;
+    this.addresses = addresses;
+  }
+
+  /**
+   * Decode a code segment.
+   * @param bytes Instruction bytes.
+   * @param length Number of bytes to decode.
+   */
+  static Program decode(byte[] bytes, int length) {
+    // Every instruction takes at most two ints, plus the final END
+    int[] code = new int[length * 2 + 1];
+    int[] addresses = new int[code.length];
+    int[] entries = new int[length];
+    Arrays.fill(entries, -1);
+
+    int size = 0;
+    int address = 0;
+
+    while (address < length) {
+      int opcode = bytes[address] & 0xFF;
+      Operation operation = Operation.fromCode(opcode);
+      int operandSize = operation == null ? 0 : operation.getOperandSize();
+      int next = address + 1 + operandSize;
+
+      entries[address] = size;
+      addresses[size] = address;
+
+      // An operand cut off by the end of the code can't be executed
+      if (next > length) break;
+
+      // Sign extend from the first byte
+      int operand = 0;
+      if (operandSize > 0) {
+        operand = bytes[address + 1];
+        for (int i = address + 2; i < next; i++) {
+          operand = (operand << 8) | (bytes[i] & 0xFF);
+        }
+      }
+
+      switch (opcode) {
+        case Opcode.LV0:
+        case Opcode.LV1:
+        case Opcode.LV2:
+          if (operand % 8 != 0) {
+            code[size++] = Opcode.MISALIGNED;
+            code[size++] = operand;
+          } else {
+            code[size++] = opcode;
+            code[size++] = operand / 8;
+          }
+          break;
+        case Opcode.JS2:
+          code[size++] = opcode;
+          code[size++] = next;
+          break;
+        default:
+          code[size++] = opcode;
+          if (operandSize > 0) {
+            code[size++] = operand;
+          }
+          break;
+      }
+
+      address = next;
+    }
+
+    addresses[size] = address;
+    code[size++] = Opcode.END;
+
+    fuse(code, size, entries);
+
+    return new Program(Arrays.copyOf(code, size), entries, Arrays.copyOf(addresses, size));
+  }
+
+  /**
+   * Replace the first instruction of each fusable sequence with its
+   * superinstruction.
+   * @param code Decoded instruction stream.
+   * @param size Length of the stream.
+   * @param entries Stream index of each byte address.
+   */
+  private static void fuse(int[] code, int size, int[] entries) {
+    int index = 0;
+
+    while (index < size) {
+      int opcode = code[index];
+      int next = index + width(opcode);
+
+      int second = next < size ? code[next] : Opcode.END;
+      int third = next + width(second) < size ? code[next + width(second)] : Opcode.END;
+
+      switch (opcode) {
+        case Opcode.SUB:
+          if (isComparison(second)) {
+            code[index] = third == Opcode.BT || third == Opcode.BF ? Opcode.COMPARE_BRANCH : Opcode.COMPARE;
+          } else if (second == Opcode.ST) {
+            code[index] = Opcode.SUB_STORE;
+          }
+          break;
+        case Opcode.ADD:
+          if (second == Opcode.ST) {
+            code[index] = Opcode.ADD_STORE;
+          }
+          break;
+        case Opcode.LB:
+        case Opcode.LH:
+          // Leave SUB to be fused with a comparison
+          if (second == Opcode.ADD) {
+            code[index] = Opcode.ADD_LITERAL;
+          } else if (second == Opcode.SUB && !isComparison(third)) {
+            code[index] = Opcode.SUB_LITERAL;
+          } else if (second == Opcode.MUL) {
+            code[index] = Opcode.MUL_LITERAL;
+          } else if (second == Opcode.DIV && code[index + 1] != 0) {
+            code[index] = Opcode.DIV_LITERAL;
+          }
+          break;
+        case Opcode.LA0: {
+          int target = code[index + 1];
+          if (second == Opcode.BR && target >= 0 && target < entries.length && entries[target] >= 0) {
+            code[index] = Opcode.JUMP;
+            code[index + 1] = entries[target];
+          }
+          break;
+        }
+        default:
+          break;
+      }
+
+      index = next;
+    }
+  }
+
+  private static boolean isComparison(int opcode) {
+    return opcode >= Opcode.GT && opcode <= Opcode.NE;
+  }
+
+  /**
+   * Get the first instruction of a superinstruction. Other opcodes are
+   * returned as they are.
+   */
+  static int unfused(int opcode) {
+    switch (opcode) {
+      case Opcode.COMPARE:
+      case Opcode.COMPARE_BRANCH:
+      case Opcode.SUB_STORE:
+        return Opcode.SUB;
+      case Opcode.ADD_STORE:
+        return Opcode.ADD;
+      case Opcode.ADD_LITERAL:
+      case Opcode.SUB_LITERAL:
+      case Opcode.MUL_LITERAL:
+      case Opcode.DIV_LITERAL:
+        return Opcode.LB;
+      case Opcode.JUMP:
+        return Opcode.LA0;
+      default:
+        return opcode;
+    }
+  }
+
+  /**
+   * Get the number of ints an instruction takes up in the stream.
+   */
+  static int width(int opcode) {
+    opcode = unfused(opcode);
+    if (opcode == Opcode.MISALIGNED) return 2;
+
+    Operation operation = Operation.fromCode(opcode);
+    return operation != null && operation.getOperandSize() > 0 ? 2 : 1;
+  }
+
+  /**
+   * Get the decoded instruction stream.
+   */
+  int[] getCode() {
+    return code;
+  }
+
+  /**
+   * Get the stream index of each instruction, by byte address. Addresses
+   * within an instruction map to -1.
+   */
+  int[] getEntries() {
+    return entries;
+  }
+
+  /**
+   * Get the byte address of the instruction at a stream index.
+   */
+  int addressOf(int index) {
+    return addresses[index];
+  }
+}
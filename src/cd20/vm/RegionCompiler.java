@@ -0,0 +1,1015 @@
+package cd20.vm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cd20.codegen.Bytecode;
+import cd20.codegen.ClassFile;
+
+/**
+ * Compiles hot regions of a {@link Program} to JVM methods, which HotSpot
+ * then compiles to machine code.
+ *
+ * A region is a range of the instruction stream, entered at its first
+ * instruction. Branches within the region become jumps, and the top of the
+ * SM20 stack is kept in JVM locals until it has to be stored in memory, at
+ * branches and when leaving the region.
+ *
+ * Compiled code only handles the common case: integers and booleans, and
+ * operands which won't fault. Anything else, such as a float, a call or I/O,
+ * leaves the region just before the instruction, so that the interpreter
+ * executes it. Results and faults are the same as if the region had been
+ * interpreted.
+ *
+ * Each region is a static method, called with the machine's memory and an
+ * array holding the stack and frame word indices. It returns the stream
+ * index to resume interpreting from, and leaves the new stack index in the
+ * array.
+ */
+final class RegionCompiler {
+  private static final MethodType TYPE = MethodType.methodType(int.class, long[].class, byte[].class, int[].class);
+  private static final String DESCRIPTOR = "([J[B[I)I";
+  private static final String METHOD_NAME = "execute";
+
+  // HotSpot doesn't compile methods larger than 8000 bytes
+  private static final int MAX_CODE_SIZE = 7900;
+  private static final int MAX_REGION_LENGTH = 1500;
+
+  private static final int WORD_SIZE = 8;
+
+  /** Most stack items held in locals before they're stored. */
+  private static final int MAX_PENDING = 16;
+
+  // Local variables of the compiled method
+  private static final int VALUES = 0;
+  private static final int TAGS = 1;
+  private static final int REGISTERS = 2;
+  private static final int TOP = 3;
+  private static final int FRAME = 4;
+  private static final int WORD = 5;
+  private static final int FIRST_SLOT = 6;
+
+  // Each slot holds an item's value (a long), then its tag
+  private static final int SLOT_SIZE = 3;
+  private static final int SLOT_COUNT = MAX_PENDING * 2 + 1;
+  private static final int MAX_LOCALS = FIRST_SLOT + SLOT_COUNT * SLOT_SIZE;
+  private static final int MAX_STACK = 8;
+
+  // Kinds of stack item
+  private static final int CONSTANT = 0;
+  private static final int FRAME_ADDRESS = 1;
+  private static final int LOCAL = 2;
+
+  private static final byte UNKNOWN = -1;
+
+  /**
+   * The stack items held in locals, from the bottom up.
+   */
+  private static final class Items {
+    int depth = 0;
+    final int[] kinds = new int[MAX_PENDING];
+    final long[] constants = new long[MAX_PENDING];
+    final byte[] tags = new byte[MAX_PENDING];
+    final int[] slots = new int[MAX_PENDING];
+
+    void copyTo(Items items) {
+      items.depth = depth;
+      System.arraycopy(kinds, 0, items.kinds, 0, depth);
+      System.arraycopy(constants, 0, items.constants, 0, depth);
+      System.arraycopy(tags, 0, items.tags, 0, depth);
+      System.arraycopy(slots, 0, items.slots, 0, depth);
+    }
+  }
+
+  /**
+   * A way out of the region, which stores the items that were held in
+   * locals, and resumes the interpreter at an instruction.
+   */
+  private static final class Exit {
+    final Bytecode.Label label = new Bytecode.Label();
+    final Items items = new Items();
+    final int index;
+
+    Exit(int index) {
+      this.index = index;
+    }
+  }
+
+  private static final class Loader extends ClassLoader {
+    Loader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  private final int[] code;
+  private final int[] entries;
+  private final long[] values;
+  private final byte[] tags;
+  private final int b1;
+  private final int base;
+  private final Loader loader = new Loader(RegionCompiler.class.getClassLoader());
+
+  // State of the region being compiled
+  private ClassFile file;
+  private Bytecode bytecode;
+  private int start;
+  private int end;
+  private Bytecode.Label[] labels;
+  private List<Exit> exits;
+  private int index;
+  private boolean isReachable;
+  private boolean needsCapacityCheck;
+
+  private final Items items = new Items();
+
+  // Items at the start of the current instruction, and its exit if needed
+  private final Items checkpoint = new Items();
+  private Exit exit;
+
+  /**
+   * @param program Program to compile regions of.
+   * @param values Values of the machine's memory. Only the instruction
+   * area is kept, since it never changes.
+   * @param tags Tags of the machine's memory.
+   * @param b1 Address of the bottom of the stack.
+   */
+  RegionCompiler(Program program, long[] values, byte[] tags, int b1) {
+    this.code = program.getCode();
+    this.entries = program.getEntries();
+    this.b1 = b1;
+    this.base = b1 / WORD_SIZE;
+    this.values = Arrays.copyOf(values, base);
+    this.tags = Arrays.copyOf(tags, base);
+  }
+
+  /**
+   * Compile a function, up to the RETN which ends it.
+   * @param start Stream index of the function's first instruction.
+   * @return Handle to the compiled region, or null if it couldn't be compiled.
+   */
+  MethodHandle compileFunction(int start) {
+    int furthest = start;
+
+    // Functions end with RETN, but may return earlier too. The last RETN is
+    // the first that no forward branch skips over.
+    for (int index = start; index < code.length; index += Program.width(code[index])) {
+      int operation = Program.unfused(code[index]);
+
+      if (operation == Opcode.LA0) {
+        furthest = Math.max(furthest, target(index));
+      } else if ((operation == Opcode.RETN && index >= furthest) || operation == Opcode.END) {
+        return compile(start, index + 1);
+      }
+    }
+
+    return compile(start, code.length);
+  }
+
+  /**
+   * Compile a range of the instruction stream.
+   * @param start Stream index of the first instruction.
+   * @param end Stream index just past the last instruction.
+   * @return Handle to the compiled region, or null if it couldn't be compiled.
+   */
+  MethodHandle compile(int start, int end) {
+    this.start = start;
+    this.end = Math.min(end, start + MAX_REGION_LENGTH);
+
+    file = new ClassFile("SM20Region" + start);
+    bytecode = new Bytecode(file);
+    labels = new Bytecode.Label[this.end - start];
+    exits = new ArrayList<>();
+    items.depth = 0;
+    checkpoint.depth = 0;
+
+    findLabels();
+
+    bytecode.local(Bytecode.ALOAD, REGISTERS);
+    bytecode.pushInt(0);
+    bytecode.op(Bytecode.IALOAD);
+    bytecode.local(Bytecode.ISTORE, TOP);
+    bytecode.local(Bytecode.ALOAD, REGISTERS);
+    bytecode.pushInt(1);
+    bytecode.op(Bytecode.IALOAD);
+    bytecode.local(Bytecode.ISTORE, FRAME);
+
+    isReachable = true;
+
+    for (index = start; index < this.end; index += Program.width(code[index])) {
+      Bytecode.Label label = labels[index - start];
+      if (label != null) {
+        // Nothing is held in locals at a label. Any items left after leaving
+        // the region are dead.
+        if (isReachable) flush();
+        items.depth = 0;
+        bytecode.mark(label);
+        isReachable = true;
+        needsCapacityCheck = true;
+      }
+
+      if (!isReachable) continue;
+
+      // No instruction pushes more than one item
+      if (items.depth == MAX_PENDING) flush();
+      checkpoint();
+
+      if (needsCapacityCheck) {
+        checkCapacity();
+        needsCapacityCheck = false;
+      }
+
+      compileInstruction(Program.unfused(code[index]));
+
+      if (bytecode.size() > MAX_CODE_SIZE) return null;
+    }
+
+    if (isReachable) {
+      flush();
+      checkpoint();
+      bytecode.jump(Bytecode.GOTO, exit());
+    }
+
+    for (Exit exit : exits) {
+      bytecode.mark(exit.label);
+      store(exit.items);
+      bytecode.local(Bytecode.ALOAD, REGISTERS);
+      bytecode.pushInt(0);
+      bytecode.local(Bytecode.ILOAD, TOP);
+      bytecode.pushInt(exit.items.depth);
+      bytecode.op(Bytecode.IADD);
+      bytecode.op(Bytecode.IASTORE);
+      bytecode.pushInt(exit.index);
+      bytecode.op(Bytecode.IRETURN);
+    }
+
+    if (bytecode.size() > MAX_CODE_SIZE) return null;
+    return load();
+  }
+
+  /**
+   * Place a label at each instruction that a branch within the region
+   * targets.
+   */
+  private void findLabels() {
+    labels[0] = new Bytecode.Label();
+
+    for (int index = start; index < end; index += Program.width(code[index])) {
+      if (Program.unfused(code[index]) != Opcode.LA0) continue;
+
+      int target = target(index);
+      if (target >= start && target < end && labels[target - start] == null) {
+        labels[target - start] = new Bytecode.Label();
+      }
+    }
+  }
+
+  /**
+   * Get the stream index that an LA0 or JUMP refers to, or -1 if it doesn't
+   * refer to an instruction.
+   */
+  private int target(int index) {
+    if (code[index] == Opcode.JUMP) return code[index + 1];
+    return entryOf(code[index + 1]);
+  }
+
+  private int entryOf(long address) {
+    return address >= 0 && address < entries.length ? entries[(int) address] : -1;
+  }
+
+  private void compileInstruction(int operation) {
+    switch (operation) {
+      case Opcode.NOOP:
+        return;
+      case Opcode.ZERO:
+        pushConstant(0, Tag.INTG);
+        return;
+      case Opcode.FALSE:
+        pushConstant(0, Tag.BOOL);
+        return;
+      case Opcode.TRUE:
+        pushConstant(1, Tag.BOOL);
+        return;
+      case Opcode.LB:
+      case Opcode.LH:
+        pushConstant(code[index + 1], Tag.INTG);
+        return;
+      case Opcode.LA0:
+        if (code[index] == Opcode.JUMP) {
+          branch(code[index + 1]);
+        } else {
+          pushConstant(code[index + 1], Tag.ADDR);
+        }
+        return;
+      case Opcode.LA1:
+        pushConstant(b1 + code[index + 1], Tag.ADDR);
+        return;
+      case Opcode.LA2:
+        push(FRAME_ADDRESS, code[index + 1], Tag.ADDR);
+        return;
+      case Opcode.LV0:
+        load(code[index + 1]);
+        return;
+      case Opcode.LV1:
+        load(base + code[index + 1]);
+        return;
+      case Opcode.LV2:
+        loadFromFrame(code[index + 1]);
+        return;
+      case Opcode.L:
+        compileLoad();
+        return;
+      case Opcode.ST:
+        compileStore();
+        return;
+      case Opcode.DUP:
+        compileDuplicate();
+        return;
+      case Opcode.ADD:
+        compileArithmetic(Bytecode.LADD);
+        return;
+      case Opcode.SUB:
+        compileArithmetic(Bytecode.LSUB);
+        return;
+      case Opcode.MUL:
+        compileArithmetic(Bytecode.LMUL);
+        return;
+      case Opcode.DIV:
+        compileArithmetic(Bytecode.LDIV);
+        return;
+      case Opcode.GT:
+      case Opcode.GE:
+      case Opcode.LT:
+      case Opcode.LE:
+      case Opcode.EQ:
+      case Opcode.NE:
+        compileComparison(operation);
+        return;
+      case Opcode.AND:
+        compileLogic(Bytecode.LAND);
+        return;
+      case Opcode.OR:
+        compileLogic(Bytecode.LOR);
+        return;
+      case Opcode.XOR:
+        compileLogic(Bytecode.LXOR);
+        return;
+      case Opcode.NOT:
+        compileNot();
+        return;
+      case Opcode.BT:
+      case Opcode.BF:
+        compileConditionalBranch(operation == Opcode.BT);
+        return;
+      case Opcode.BR:
+        compileBranch();
+        return;
+      default:
+        // Everything else is left to the interpreter
+        exitNow();
+        return;
+    }
+  }
+
+  /**
+   * Push the word at a fixed index.
+   */
+  private void load(int word) {
+    if (word < base) {
+      // The instruction area can't be stored to, so its words are constants
+      if (word < 0 || word >= tags.length || tags[word] == Tag.INST) {
+        exitNow();
+        return;
+      }
+
+      pushConstant(values[word], tags[word]);
+      return;
+    }
+
+    // The word must already be in memory, rather than held in a local
+    bytecode.local(Bytecode.ILOAD, TOP);
+    bytecode.pushInt(word);
+    bytecode.jump(Bytecode.IF_ICMPLT, exit());
+
+    int slot = pushLocal(UNKNOWN);
+    loadSlot(slot, () -> bytecode.pushInt(word));
+  }
+
+  /**
+   * Push the word at an offset from the frame pointer.
+   */
+  private void loadFromFrame(int offset) {
+    computeWord(offset);
+
+    bytecode.local(Bytecode.ILOAD, WORD);
+    bytecode.jump(Bytecode.IFLT, exit());
+    bytecode.local(Bytecode.ILOAD, WORD);
+    bytecode.local(Bytecode.ILOAD, TOP);
+    bytecode.jump(Bytecode.IF_ICMPGT, exit());
+
+    int slot = pushLocal(UNKNOWN);
+    loadSlot(slot, () -> bytecode.local(Bytecode.ILOAD, WORD));
+
+    // Frames may be below the stack, in main
+    bytecode.local(Bytecode.ILOAD, slot + 2);
+    bytecode.pushInt(Tag.INST);
+    bytecode.jump(Bytecode.IF_ICMPEQ, exit());
+  }
+
+  private void compileLoad() {
+    if (!require(1)) return;
+
+    int address = items.depth - 1;
+    long value = items.constants[address];
+
+    if (tagOf(address) != Tag.ADDR || value % WORD_SIZE != 0 || items.kinds[address] == LOCAL) {
+      exitNow();
+      return;
+    }
+
+    items.depth--;
+
+    if (items.kinds[address] == CONSTANT) {
+      load((int) (value / WORD_SIZE));
+    } else {
+      loadFromFrame((int) (value / WORD_SIZE));
+    }
+  }
+
+  private void compileStore() {
+    if (!require(2)) return;
+
+    int value = items.depth - 1;
+    int address = value - 1;
+    long target = items.constants[address];
+    byte tag = tagOf(value);
+
+    // Integers, floats and booleans are adjacent tags
+    if (tag != UNKNOWN && (tag < Tag.INTG || tag > Tag.BOOL)) {
+      exitNow();
+      return;
+    }
+
+    if (tagOf(address) != Tag.ADDR || target % WORD_SIZE != 0 || items.kinds[address] == LOCAL) {
+      exitNow();
+      return;
+    }
+
+    if (items.kinds[address] == CONSTANT) {
+      if (target < b1) {
+        exitNow();
+        return;
+      }
+
+      bytecode.pushInt((int) (target / WORD_SIZE));
+      bytecode.local(Bytecode.ISTORE, WORD);
+    } else {
+      computeWord((int) (target / WORD_SIZE));
+      bytecode.local(Bytecode.ILOAD, WORD);
+      bytecode.pushInt(base);
+      bytecode.jump(Bytecode.IF_ICMPLT, exit());
+    }
+
+    // The word must already be in memory, rather than held in a local
+    bytecode.local(Bytecode.ILOAD, WORD);
+    bytecode.local(Bytecode.ILOAD, TOP);
+    bytecode.jump(Bytecode.IF_ICMPGT, exit());
+
+    if (tag == UNKNOWN) {
+      bytecode.local(Bytecode.ILOAD, items.slots[value] + 2);
+      bytecode.pushInt(Tag.INTG);
+      bytecode.jump(Bytecode.IF_ICMPLT, exit());
+      bytecode.local(Bytecode.ILOAD, items.slots[value] + 2);
+      bytecode.pushInt(Tag.BOOL);
+      bytecode.jump(Bytecode.IF_ICMPGT, exit());
+    }
+
+    bytecode.local(Bytecode.ALOAD, VALUES);
+    bytecode.local(Bytecode.ILOAD, WORD);
+    pushValue(items, value);
+    bytecode.op(Bytecode.LASTORE);
+    bytecode.local(Bytecode.ALOAD, TAGS);
+    bytecode.local(Bytecode.ILOAD, WORD);
+    pushTag(items, value);
+    bytecode.op(Bytecode.BASTORE);
+
+    items.depth -= 2;
+  }
+
+  private void compileDuplicate() {
+    if (!require(1)) return;
+
+    int item = items.depth - 1;
+    if (items.kinds[item] != LOCAL) {
+      push(items.kinds[item], items.constants[item], items.tags[item]);
+      return;
+    }
+
+    byte tag = items.tags[item];
+    int source = items.slots[item];
+    int slot = pushLocal(tag);
+    bytecode.local(Bytecode.LLOAD, source);
+    bytecode.local(Bytecode.LSTORE, slot);
+
+    if (tag == UNKNOWN) {
+      bytecode.local(Bytecode.ILOAD, source + 2);
+      bytecode.local(Bytecode.ISTORE, slot + 2);
+    }
+  }
+
+  /**
+   * Compile ADD, SUB, MUL or DIV on integers.
+   */
+  private void compileArithmetic(int opcode) {
+    if (!require(2)) return;
+
+    int right = items.depth - 1;
+    int left = right - 1;
+
+    if (!canBe(left, Tag.INTG) || !canBe(right, Tag.INTG)) {
+      exitNow();
+      return;
+    }
+
+    boolean isDivision = opcode == Bytecode.LDIV;
+    if (isDivision && items.kinds[right] == CONSTANT && items.constants[right] == 0) {
+      exitNow();
+      return;
+    }
+
+    if (items.kinds[left] == CONSTANT && items.kinds[right] == CONSTANT) {
+      long a = items.constants[left];
+      long b = items.constants[right];
+      items.depth -= 2;
+
+      switch (opcode) {
+        case Bytecode.LADD:
+          pushConstant(a + b, Tag.INTG);
+          break;
+        case Bytecode.LSUB:
+          pushConstant(a - b, Tag.INTG);
+          break;
+        case Bytecode.LMUL:
+          pushConstant(a * b, Tag.INTG);
+          break;
+        default:
+          pushConstant(a / b, Tag.INTG);
+          break;
+      }
+      return;
+    }
+
+    requireTag(left, Tag.INTG);
+    requireTag(right, Tag.INTG);
+
+    if (isDivision && items.kinds[right] != CONSTANT) {
+      pushValue(items, right);
+      bytecode.op(Bytecode.LCONST_0);
+      bytecode.op(Bytecode.LCMP);
+      bytecode.jump(Bytecode.IFEQ, exit());
+    }
+
+    pushValue(items, left);
+    pushValue(items, right);
+    bytecode.op(opcode);
+
+    items.depth -= 2;
+    bytecode.local(Bytecode.LSTORE, pushLocal(Tag.INTG));
+  }
+
+  /**
+   * Compile a comparison of an integer against zero.
+   */
+  private void compileComparison(int operation) {
+    if (!require(1)) return;
+
+    int item = items.depth - 1;
+    if (!canBe(item, Tag.INTG)) {
+      exitNow();
+      return;
+    }
+
+    if (items.kinds[item] == CONSTANT) {
+      long value = items.constants[item];
+      items.depth--;
+      pushConstant(Machine.test(operation, value) ? 1 : 0, Tag.BOOL);
+      return;
+    }
+
+    requireTag(item, Tag.INTG);
+
+    Bytecode.Label isTrue = new Bytecode.Label();
+    Bytecode.Label done = new Bytecode.Label();
+
+    pushValue(items, item);
+    bytecode.op(Bytecode.LCONST_0);
+    bytecode.op(Bytecode.LCMP);
+    bytecode.jump(comparisonOpcode(operation), isTrue);
+    bytecode.op(Bytecode.LCONST_0);
+    bytecode.jump(Bytecode.GOTO, done);
+    bytecode.mark(isTrue);
+    bytecode.op(Bytecode.LCONST_1);
+    bytecode.mark(done);
+
+    items.depth--;
+    bytecode.local(Bytecode.LSTORE, pushLocal(Tag.BOOL));
+  }
+
+  private static int comparisonOpcode(int operation) {
+    switch (operation) {
+      case Opcode.GT:
+        return Bytecode.IFGT;
+      case Opcode.GE:
+        return Bytecode.IFGE;
+      case Opcode.LT:
+        return Bytecode.IFLT;
+      case Opcode.LE:
+        return Bytecode.IFLE;
+      case Opcode.EQ:
+        return Bytecode.IFEQ;
+      default:
+        return Bytecode.IFNE;
+    }
+  }
+
+  /**
+   * Compile AND, OR or XOR.
+   */
+  private void compileLogic(int opcode) {
+    if (!require(2)) return;
+
+    int right = items.depth - 1;
+    int left = right - 1;
+
+    if (!canBe(left, Tag.BOOL) || !canBe(right, Tag.BOOL)) {
+      exitNow();
+      return;
+    }
+
+    requireTag(left, Tag.BOOL);
+    requireTag(right, Tag.BOOL);
+
+    pushValue(items, left);
+    pushValue(items, right);
+    bytecode.op(opcode);
+
+    items.depth -= 2;
+    bytecode.local(Bytecode.LSTORE, pushLocal(Tag.BOOL));
+  }
+
+  private void compileNot() {
+    if (!require(1)) return;
+
+    int item = items.depth - 1;
+    if (!canBe(item, Tag.BOOL)) {
+      exitNow();
+      return;
+    }
+
+    requireTag(item, Tag.BOOL);
+
+    pushValue(items, item);
+    bytecode.op(Bytecode.LCONST_1);
+    bytecode.op(Bytecode.LXOR);
+
+    items.depth--;
+    bytecode.local(Bytecode.LSTORE, pushLocal(Tag.BOOL));
+  }
+
+  private void compileConditionalBranch(boolean isBranchIfTrue) {
+    if (!require(2)) return;
+
+    int condition = items.depth - 1;
+    int address = condition - 1;
+    int target = branchTarget(address);
+
+    if (target < 0 || !canBe(condition, Tag.BOOL)) {
+      exitNow();
+      return;
+    }
+
+    requireTag(condition, Tag.BOOL);
+    items.depth -= 2;
+
+    if (items.kinds[condition] == CONSTANT) {
+      if ((items.constants[condition] != 0) == isBranchIfTrue) {
+        branch(target);
+      } else {
+        flush();
+      }
+      return;
+    }
+
+    // The condition's slot isn't reused by storing the other items
+    flush();
+    bytecode.local(Bytecode.LLOAD, items.slots[condition]);
+    bytecode.op(Bytecode.LCONST_0);
+    bytecode.op(Bytecode.LCMP);
+    bytecode.jump(isBranchIfTrue ? Bytecode.IFNE : Bytecode.IFEQ, labelOf(target));
+  }
+
+  private void compileBranch() {
+    if (!require(1)) return;
+
+    int target = branchTarget(items.depth - 1);
+    if (target < 0) {
+      exitNow();
+      return;
+    }
+
+    items.depth--;
+    branch(target);
+  }
+
+  /**
+   * Get the stream index that a constant address item refers to, or -1.
+   */
+  private int branchTarget(int item) {
+    if (items.kinds[item] != CONSTANT || items.tags[item] != Tag.ADDR) return -1;
+    return entryOf(items.constants[item]);
+  }
+
+  /**
+   * Jump unconditionally to an instruction.
+   */
+  private void branch(int target) {
+    flush();
+    bytecode.jump(Bytecode.GOTO, labelOf(target));
+    isReachable = false;
+  }
+
+  /**
+   * Get the label of an instruction in the region, or an exit to it
+   * otherwise. No items may be held in locals.
+   */
+  private Bytecode.Label labelOf(int target) {
+    if (target >= start && target < end && labels[target - start] != null) {
+      return labels[target - start];
+    }
+
+    Exit exit = new Exit(target);
+    exits.add(exit);
+    return exit.label;
+  }
+
+  /**
+   * Make sure that a number of items are held in locals, by loading them
+   * from the stack if necessary.
+   * @return False if the stack can't have enough items, in which case the
+   * instruction has been left to the interpreter.
+   */
+  private boolean require(int count) {
+    int missing = count - items.depth;
+    if (missing <= 0) return true;
+
+    // Stack underflow
+    bytecode.local(Bytecode.ILOAD, TOP);
+    bytecode.pushInt(base + missing - 1);
+    bytecode.jump(Bytecode.IF_ICMPLT, exit());
+
+    System.arraycopy(items.kinds, 0, items.kinds, missing, items.depth);
+    System.arraycopy(items.constants, 0, items.constants, missing, items.depth);
+    System.arraycopy(items.tags, 0, items.tags, missing, items.depth);
+    System.arraycopy(items.slots, 0, items.slots, missing, items.depth);
+    items.depth += missing;
+
+    for (int item = 0; item < missing; item++) {
+      items.kinds[item] = CONSTANT;
+    }
+
+    for (int item = 0; item < missing; item++) {
+      int offset = item - missing + 1;
+      int slot = allocateSlot();
+
+      items.kinds[item] = LOCAL;
+      items.tags[item] = UNKNOWN;
+      items.slots[item] = slot;
+
+      loadSlot(slot, () -> {
+        bytecode.local(Bytecode.ILOAD, TOP);
+        if (offset != 0) {
+          bytecode.pushInt(offset);
+          bytecode.op(Bytecode.IADD);
+        }
+      });
+    }
+
+    bytecode.increment(TOP, -missing);
+
+    // The items are now held in locals, which exits will store again
+    checkpoint();
+    return true;
+  }
+
+  /**
+   * Load a word of memory into a slot.
+   * @param word Pushes the word's index.
+   */
+  private void loadSlot(int slot, Runnable word) {
+    bytecode.local(Bytecode.ALOAD, VALUES);
+    word.run();
+    bytecode.op(Bytecode.LALOAD);
+    bytecode.local(Bytecode.LSTORE, slot);
+    bytecode.local(Bytecode.ALOAD, TAGS);
+    word.run();
+    bytecode.op(Bytecode.BALOAD);
+    bytecode.local(Bytecode.ISTORE, slot + 2);
+  }
+
+  /**
+   * Set WORD to the frame pointer plus an offset in words.
+   */
+  private void computeWord(int offset) {
+    bytecode.local(Bytecode.ILOAD, FRAME);
+    bytecode.pushInt(offset);
+    bytecode.op(Bytecode.IADD);
+    bytecode.local(Bytecode.ISTORE, WORD);
+  }
+
+  /**
+   * Get the tag of an item, or UNKNOWN if it's only known at runtime.
+   */
+  private byte tagOf(int item) {
+    return items.tags[item];
+  }
+
+  private boolean canBe(int item, byte tag) {
+    return tagOf(item) == tag || tagOf(item) == UNKNOWN;
+  }
+
+  /**
+   * Leave the region if an item's tag turns out not to match.
+   */
+  private void requireTag(int item, byte tag) {
+    if (tagOf(item) != UNKNOWN) return;
+
+    bytecode.local(Bytecode.ILOAD, items.slots[item] + 2);
+    bytecode.pushInt(tag);
+    bytecode.jump(Bytecode.IF_ICMPNE, exit());
+  }
+
+  private void pushConstant(long value, byte tag) {
+    push(CONSTANT, value, tag);
+  }
+
+  private void push(int kind, long constant, byte tag) {
+    items.kinds[items.depth] = kind;
+    items.constants[items.depth] = constant;
+    items.tags[items.depth] = tag;
+    items.depth++;
+  }
+
+  /**
+   * Push an item held in a slot.
+   * @return The slot, which the caller must fill.
+   */
+  private int pushLocal(byte tag) {
+    int slot = allocateSlot();
+    push(LOCAL, 0, tag);
+    items.slots[items.depth - 1] = slot;
+    return slot;
+  }
+
+  /**
+   * Find a slot that neither the current items nor the checkpoint use.
+   */
+  private int allocateSlot() {
+    boolean[] isUsed = new boolean[SLOT_COUNT];
+    markSlots(items, isUsed);
+    markSlots(checkpoint, isUsed);
+
+    for (int slot = 0; slot < SLOT_COUNT; slot++) {
+      if (!isUsed[slot]) return FIRST_SLOT + slot * SLOT_SIZE;
+    }
+
+    throw new IllegalStateException("Out of slots");
+  }
+
+  private static void markSlots(Items items, boolean[] isUsed) {
+    for (int item = 0; item < items.depth; item++) {
+      if (items.kinds[item] == LOCAL) {
+        isUsed[(items.slots[item] - FIRST_SLOT) / SLOT_SIZE] = true;
+      }
+    }
+  }
+
+  /**
+   * Store all items held in locals onto the stack.
+   */
+  private void flush() {
+    if (items.depth == 0) return;
+
+    store(items);
+    bytecode.increment(TOP, items.depth);
+    items.depth = 0;
+    needsCapacityCheck = true;
+  }
+
+  /**
+   * Store items above the top of the stack, without moving it.
+   */
+  private void store(Items items) {
+    for (int item = 0; item < items.depth; item++) {
+      bytecode.local(Bytecode.ALOAD, VALUES);
+      bytecode.local(Bytecode.ILOAD, TOP);
+      bytecode.pushInt(item + 1);
+      bytecode.op(Bytecode.IADD);
+      pushValue(items, item);
+      bytecode.op(Bytecode.LASTORE);
+
+      bytecode.local(Bytecode.ALOAD, TAGS);
+      bytecode.local(Bytecode.ILOAD, TOP);
+      bytecode.pushInt(item + 1);
+      bytecode.op(Bytecode.IADD);
+      pushTag(items, item);
+      bytecode.op(Bytecode.BASTORE);
+    }
+  }
+
+  private void pushValue(Items items, int item) {
+    switch (items.kinds[item]) {
+      case CONSTANT:
+        bytecode.pushLong(items.constants[item]);
+        break;
+      case FRAME_ADDRESS:
+        bytecode.local(Bytecode.ILOAD, FRAME);
+        bytecode.pushInt(3);
+        bytecode.op(Bytecode.ISHL);
+        bytecode.pushInt((int) items.constants[item]);
+        bytecode.op(Bytecode.IADD);
+        bytecode.op(Bytecode.I2L);
+        break;
+      default:
+        bytecode.local(Bytecode.LLOAD, items.slots[item]);
+        break;
+    }
+  }
+
+  private void pushTag(Items items, int item) {
+    if (items.tags[item] == UNKNOWN) {
+      bytecode.local(Bytecode.ILOAD, items.slots[item] + 2);
+    } else {
+      bytecode.pushInt(items.tags[item]);
+    }
+  }
+
+  /**
+   * Leave the region unless there's room on the stack to store every item
+   * that could be held in locals.
+   */
+  private void checkCapacity() {
+    bytecode.local(Bytecode.ILOAD, TOP);
+    bytecode.pushInt(MAX_PENDING + 1);
+    bytecode.op(Bytecode.IADD);
+    bytecode.local(Bytecode.ALOAD, VALUES);
+    bytecode.op(Bytecode.ARRAYLENGTH);
+    bytecode.jump(Bytecode.IF_ICMPGE, exit());
+  }
+
+  /**
+   * Record the items at the start of an instruction, which its exit stores.
+   */
+  private void checkpoint() {
+    items.copyTo(checkpoint);
+    exit = null;
+  }
+
+  /**
+   * Get the exit to the current instruction.
+   */
+  private Bytecode.Label exit() {
+    if (exit == null) {
+      exit = new Exit(index);
+      checkpoint.copyTo(exit.items);
+      exits.add(exit);
+    }
+
+    return exit.label;
+  }
+
+  /**
+   * Leave the current instruction to the interpreter.
+   */
+  private void exitNow() {
+    bytecode.jump(Bytecode.GOTO, exit());
+    isReachable = false;
+  }
+
+  private MethodHandle load() {
+    file.addMethod(ClassFile.ACC_PUBLIC, METHOD_NAME, DESCRIPTOR, bytecode, MAX_STACK, MAX_LOCALS);
+    byte[] bytes = file.toByteArray();
+
+    try {
+      return MethodHandles.publicLookup().findStatic(loader.define(file.getName(), bytes), METHOD_NAME, TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package cd20.vm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Runs an SM20 module from the command line, in place of the SM20 simulator.
+ *
+ * Usage: SM20 module.mod [input.txt] [output.txt]
+ * Input is read from stdin and output written to stdout, unless files are
+ * given.
+ */
+public class SM20 {
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Module path not provided.");
+      return;
+    }
+
+    Module module = Module.read(Paths.get(args[0]));
+
+    try (
+      Reader input = args.length > 1
+        ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.ISO_8859_1)
+        : new BufferedReader(new InputStreamReader(System.in));
+      Writer output = args.length > 2
+        ? Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.ISO_8859_1)
+        : new BufferedWriter(new OutputStreamWriter(System.out))
+    ) {
+      new Machine(module, input, output).run();
+    } catch (SM20Exception exception) {
+      System.err.println(exception.getMessage());
+    }
+  }
+}
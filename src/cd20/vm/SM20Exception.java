@@ -0,0 +1,22 @@
+package cd20.vm;
+
+/**
+ * A fatal SM20 exception, thrown when a program uses data in a way that its
+ * tag doesn't allow, or otherwise cannot continue.
+ */
+public class SM20Exception extends RuntimeException {
+  private final int programCounter;
+
+  /**
+   * @param message Description of the fault.
+   * @param programCounter Address of the instruction that faulted.
+   */
+  public SM20Exception(String message, int programCounter) {
+    super(String.format("Fatal SM20 Exception at %d: %s", programCounter, message));
+    this.programCounter = programCounter;
+  }
+
+  public int getProgramCounter() {
+    return programCounter;
+  }
+}
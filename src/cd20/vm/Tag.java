@@ -0,0 +1,52 @@
+package cd20.vm;
+
+/**
+ * SM20 memory protection tags.
+ *
+ * Every word of memory carries a tag, which shows the type of its contents.
+ * Tags are stored as bytes alongside each word, so they're plain constants
+ * rather than an enum.
+ */
+public final class Tag {
+  /** Allocated, but not yet initialised. */
+  public static final byte UNDF = 0;
+
+  /** Instructions, which only the fetch-execute cycle may use. */
+  public static final byte INST = 1;
+
+  public static final byte INTG = 2;
+
+  /** Floating point, stored as the bits of a double. */
+  public static final byte FLOT = 3;
+
+  /** Boolean, stored as 1 or 0. */
+  public static final byte BOOL = 4;
+
+  /** String constants, within the instruction area. */
+  public static final byte STRG = 5;
+
+  /** Address of a target for a store or a branch. */
+  public static final byte ADDR = 6;
+
+  /** Array descriptor: size in the high 32 bits, start in the low 32 bits. */
+  public static final byte DESC = 7;
+
+  /**
+   * Mark stack control word: the caller's b2 in the high 32 bits, and its
+   * return address in the low 32 bits.
+   */
+  public static final byte MSCW = 8;
+
+  private static final String[] names = {
+    "UNDF", "INST", "INTG", "FLOT", "BOOL", "STRG", "ADDR", "DESC", "MSCW"
+  };
+
+  private Tag() {}
+
+  /**
+   * Get the name of a tag, e.g. "INTG".
+   */
+  public static String toString(byte tag) {
+    return tag >= 0 && tag < names.length ? names[tag] : "????";
+  }
+}
@@ -0,0 +1,91 @@
+package cd20.vm;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads whitespace separated values, as found in module and input files.
+ *
+ * Unlike a {@link java.io.StreamTokenizer}, integers are parsed exactly, and
+ * floating point values may use exponents, e.g. "1.0E-5".
+ */
+class ValueReader {
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int position = 0;
+  private int limit = 0;
+
+  private final StringBuilder token = new StringBuilder();
+
+  ValueReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Read the next value.
+   * @return Value's text, or null at the end of input.
+   */
+  String next() throws IOException {
+    int character = read();
+    while (character != -1 && Character.isWhitespace(character)) {
+      character = read();
+    }
+
+    if (character == -1) return null;
+
+    token.setLength(0);
+    while (character != -1 && !Character.isWhitespace(character)) {
+      token.append((char) character);
+      character = read();
+    }
+
+    return token.toString();
+  }
+
+  /**
+   * Read the next value as an integer.
+   * @throws IOException If there's no next value, or it isn't an integer.
+   */
+  long nextLong() throws IOException {
+    String value = next();
+    if (value == null) {
+      throw new IOException("Expected an integer, but reached the end of input");
+    }
+
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException exception) {
+      throw new IOException("Expected an integer, but found: " + value);
+    }
+  }
+
+  /**
+   * Read the next value as a floating point number.
+   * @throws IOException If there's no next value, or it isn't a number.
+   */
+  double nextDouble() throws IOException {
+    String value = next();
+    if (value == null) {
+      throw new IOException("Expected a number, but reached the end of input");
+    }
+
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException exception) {
+      throw new IOException("Expected a number, but found: " + value);
+    }
+  }
+
+  private int read() throws IOException {
+    if (position == limit) {
+      limit = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+
+    return buffer[position++];
+  }
+}
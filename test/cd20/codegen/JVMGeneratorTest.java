@@ -0,0 +1,158 @@
+package cd20.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import cd20.output.ListingGenerator;
+import cd20.parser.Node;
+import cd20.parser.Parser;
+import cd20.symboltable.SymbolTableManager;
+import cd20.vm.Machine;
+import cd20.vm.Module;
+
+/**
+ * Checks that programs compiled to a class print exactly what their SM20
+ * modules print.
+ */
+public class JVMGeneratorTest {
+  @Test
+  public void realLiteralsMatchModules() throws Exception {
+    assertSameOutput(
+      "CD20 reals\n" +
+      "main\n" +
+      "  r: real,\n" +
+      "  q: real\n" +
+      "begin\n" +
+      "  r = 750.5;\n" +
+      "  r = r * 1.0001;\n" +
+      "  println r;\n" +
+      "  q = 1.0001;\n" +
+      "  println q;\n" +
+      "end\n" +
+      "CD20 reals\n"
+    );
+  }
+
+  @Test
+  public void boolsAreNotPrinted() throws Exception {
+    assertSameOutput(
+      "CD20 bools\n" +
+      "main\n" +
+      "  b: bool\n" +
+      "begin\n" +
+      "  b = true;\n" +
+      "  print \"Is true equal to false? \";\n" +
+      "  println false;\n" +
+      "  print b, 1;\n" +
+      "end\n" +
+      "CD20 bools\n"
+    );
+  }
+
+  @Test
+  public void loopsAndFunctionsMatchModules() throws Exception {
+    assertSameOutput(
+      "CD20 loops\n" +
+      "func tri(n: int): int\n" +
+      "  r: int\n" +
+      "begin\n" +
+      "  for (r = 0; n > 0)\n" +
+      "    r += n;\n" +
+      "    n -= 1;\n" +
+      "  end\n" +
+      "  return r;\n" +
+      "end\n" +
+      "main\n" +
+      "  i: int,\n" +
+      "  x: real\n" +
+      "begin\n" +
+      "  x = 0.1;\n" +
+      "  for (i = 0; i < 3000)\n" +
+      "    x = x * 1.0001 + 0.3;\n" +
+      "    i += 1;\n" +
+      "  end\n" +
+      "  println x, tri(i);\n" +
+      "end\n" +
+      "CD20 loops\n"
+    );
+  }
+
+  @Test
+  public void orderingBoolsIsUnsupported() throws IOException {
+    Parser parser = parse(
+      "CD20 order\n" +
+      "main\n" +
+      "  b: bool\n" +
+      "begin\n" +
+      "  b = true;\n" +
+      "  if (b < false)\n" +
+      "    println 1;\n" +
+      "  end\n" +
+      "end\n" +
+      "CD20 order\n"
+    );
+    Node root = parser.parse();
+    assertNotNull("Program doesn't compile", root);
+
+    JVMGenerator generator = new JVMGenerator(parser.getSymbolManager(), root);
+    assertEquals("ordering bools with <, <=, > or >=", generator.findUnsupported());
+  }
+
+  private static void assertSameOutput(String source) throws Exception {
+    assertEquals(runModule(source), runClass(source));
+  }
+
+  private static Parser parse(String source) {
+    return new Parser(new StringReader(source), new SymbolTableManager(), new ListingGenerator(false));
+  }
+
+  private static String runModule(String source) throws IOException {
+    Parser parser = parse(source);
+    Node root = parser.parse();
+    assertNotNull("Program doesn't compile", root);
+
+    String module = new SM20Generator(parser.getSymbolManager(), root).generateModule();
+
+    StringWriter output = new StringWriter();
+    new Machine(Module.read(new StringReader(module)), new StringReader(""), output).run();
+    return output.toString();
+  }
+
+  private static String runClass(String source) throws Exception {
+    Parser parser = parse(source);
+    Node root = parser.parse();
+    assertNotNull("Program doesn't compile", root);
+
+    JVMGenerator generator = new JVMGenerator(parser.getSymbolManager(), root);
+    assertNull("Program isn't supported", generator.findUnsupported());
+
+    byte[] bytes = generator.generateClass();
+    Class<?> program = new ClassLoader(JVMGeneratorTest.class.getClassLoader()) {
+      Class<?> define() {
+        return defineClass(root.getValue(), bytes, 0, bytes.length);
+      }
+    }.define();
+
+    // Generated classes write to whatever System.out is when main starts
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(output, true));
+
+    try {
+      program.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+    } finally {
+      System.setOut(stdout);
+    }
+
+    return output.toString();
+  }
+}
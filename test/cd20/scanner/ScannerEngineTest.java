@@ -0,0 +1,76 @@
+package cd20.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import cd20.output.ListingGenerator;
+
+/**
+ * Checks that the table-driven engine scans exactly the same tokens as the
+ * hand-written one.
+ */
+public class ScannerEngineTest {
+  @Test
+  public void samplesScanIdentically() throws IOException {
+    assertScanIdentically(Paths.get("samples"));
+  }
+
+  @Test
+  public void a1SamplesScanIdentically() throws IOException {
+    assertScanIdentically(Paths.get("samples", "a1"));
+  }
+
+  /**
+   * Scan every file in a directory with both engines, and compare each token.
+   */
+  private static void assertScanIdentically(Path directory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.list(directory)) {
+      files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+
+    assertTrue("No samples in " + directory, !files.isEmpty());
+
+    for (Path file : files) {
+      List<Token> expected = scan(file, ScannerEngine.HAND_WRITTEN);
+      List<Token> actual = scan(file, ScannerEngine.TABLE_DRIVEN);
+
+      assertEquals(file + ": token count", expected.size(), actual.size());
+
+      for (int idx = 0; idx < expected.size(); idx++) {
+        Token want = expected.get(idx);
+        Token got = actual.get(idx);
+        String where = file + ": token " + idx;
+
+        assertEquals(where + " type", want.getType(), got.getType());
+        assertEquals(where + " lexeme", want.getLexeme(), got.getLexeme());
+        assertEquals(where + " offset", want.getOffset(), got.getOffset());
+        assertEquals(where + " line", want.getLine(), got.getLine());
+        assertEquals(where + " column", want.getColumn(), got.getColumn());
+      }
+    }
+  }
+
+  private static List<Token> scan(Path file, ScannerEngine engine) throws IOException {
+    Scanner scanner = new Scanner(file, new ListingGenerator(false));
+    scanner.setEngine(engine);
+
+    List<Token> tokens = new ArrayList<>();
+    while (!scanner.eof()) {
+      tokens.add(scanner.nextToken());
+    }
+
+    return tokens;
+  }
+}
@@ -0,0 +1,321 @@
+package cd20.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import cd20.bench.ProgramGenerator;
+import cd20.codegen.SM20Generator;
+import cd20.output.ListingGenerator;
+import cd20.parser.Node;
+import cd20.parser.Parser;
+import cd20.symboltable.SymbolTableManager;
+
+/**
+ * Checks that superinstructions and compiled regions behave like the
+ * instructions they replace.
+ */
+public class MachineTest {
+  // Numbers for the modules that read input
+  private static final String INPUT = "8 5 45 13 15 5 40 18\n";
+
+  @Test
+  public void samplesMatchWhenCompiled() throws IOException {
+    assertModulesMatch(Paths.get("samples"));
+    assertModulesMatch(Paths.get("SM20"));
+  }
+
+  @Test
+  public void generatedProgramsMatchWhenCompiled() throws IOException {
+    // Loops run past the compile threshold, so they're compiled part way
+    for (int seed = 0; seed < 5; seed++) {
+      String source = new ProgramGenerator()
+        .withSeed(seed)
+        .withDepth(1)
+        .withIterations(1500)
+        .generate();
+
+      assertSameOutput("Seed " + seed, compile(source));
+    }
+  }
+
+  @Test
+  public void realsLeaveCompiledLoops() throws IOException {
+    // x is an int until the loop has been compiled, then becomes a real in
+    // the middle of an expression
+    assertOutput(
+      " 4002.5\n",
+      compile(
+        "CD20 exits\n" +
+        "main\n" +
+        "  i: int,\n" +
+        "  x: real\n" +
+        "begin\n" +
+        "  x = 0;\n" +
+        "  for (i = 0; i < 3000)\n" +
+        "    x = x + i / 1000;\n" +
+        "    if (i == 2000)\n" +
+        "      x = x * 2 + 0.5;\n" +
+        "    end\n" +
+        "    i += 1;\n" +
+        "  end\n" +
+        "  println x;\n" +
+        "end\n" +
+        "CD20 exits\n"
+      )
+    );
+  }
+
+  @Test
+  public void realsFallBackFromFusedSequences() throws IOException {
+    Module module = compile(
+      "CD20 reals\n" +
+      "main\n" +
+      "  x: real\n" +
+      "begin\n" +
+      "  x = 1.5;\n" +
+      "  if (x < 2.5)\n" +
+      "    println 1;\n" +
+      "  end\n" +
+      "  if (x > 2.5)\n" +
+      "    println 2;\n" +
+      "  else\n" +
+      "    println 3;\n" +
+      "  end\n" +
+      "  x = x - 1.5;\n" +
+      "  x = x + 0.5;\n" +
+      "  x -= 1;\n" +
+      "  println x;\n" +
+      "end\n" +
+      "CD20 reals\n"
+    );
+
+    assertFused(module, Opcode.COMPARE_BRANCH, Opcode.SUB_STORE, Opcode.ADD_STORE, Opcode.SUB_LITERAL);
+    assertOutput(" 1\n 3\n -0.5\n", module);
+  }
+
+  @Test
+  public void realsFallBackFromFusedComparisons() {
+    // LT is followed by NOT rather than a branch, so this is a COMPARE
+    Module module = assemble(
+      new double[] { 2.5 },
+      Opcode.LA0, 0, 0, 0, 20,
+      Opcode.LB, 1,
+      Opcode.LV0, 0, 0, 0, 24,
+      Opcode.SUB,
+      Opcode.LT,
+      Opcode.NOT,
+      Opcode.BF,
+      Opcode.LB, 0,
+      Opcode.VALPR,
+      Opcode.HALT,
+      Opcode.LB, 1,
+      Opcode.VALPR,
+      Opcode.HALT
+    );
+
+    assertFused(module, Opcode.COMPARE);
+    assertOutput(" 1", module);
+  }
+
+  @Test
+  public void boolsFaultInFusedComparisons() {
+    assertOutput(
+      "Fatal SM20 Exception at 2: Expected an arithmetic value, but found BOOL",
+      assemble(
+        Opcode.TRUE,
+        Opcode.FALSE,
+        Opcode.SUB,
+        Opcode.EQ,
+        Opcode.HALT
+      )
+    );
+
+    assertOutput(
+      "Fatal SM20 Exception at 7: Expected an arithmetic value, but found BOOL",
+      assemble(
+        Opcode.LA0, 0, 0, 0, 0,
+        Opcode.TRUE,
+        Opcode.FALSE,
+        Opcode.SUB,
+        Opcode.EQ,
+        Opcode.BT,
+        Opcode.HALT
+      )
+    );
+  }
+
+  @Test
+  public void divisionByZeroLiteralIsNotFused() throws IOException {
+    Module module = compile(
+      "CD20 zero\n" +
+      "main\n" +
+      "  i: int\n" +
+      "begin\n" +
+      "  i = 7;\n" +
+      "  println i;\n" +
+      "  i = i / 0;\n" +
+      "  println i;\n" +
+      "end\n" +
+      "CD20 zero\n"
+    );
+
+    assertNotFused(module, Opcode.DIV_LITERAL);
+    assertOutput(" 7\nFatal SM20 Exception at 30: Division by zero", module);
+  }
+
+  @Test
+  public void fusedComparisonsNeedTwoOperands() {
+    assertOutput(
+      "Fatal SM20 Exception at 2: Stack underflow",
+      assemble(
+        Opcode.LB, 1,
+        Opcode.SUB,
+        Opcode.LT,
+        Opcode.HALT
+      )
+    );
+  }
+
+  @Test
+  public void jumpsCanEnterFusedSequences() {
+    // The jump skips the SUB that starts a COMPARE_BRANCH, landing on its LT
+    Module module = assemble(
+      Opcode.LA0, 0, 0, 0, 22,
+      Opcode.LB, -3,
+      Opcode.LA0, 0, 0, 0, 16,
+      Opcode.BR,
+      Opcode.LB, 1,
+      Opcode.SUB,
+      Opcode.LT,
+      Opcode.BT,
+      Opcode.LB, 0,
+      Opcode.VALPR,
+      Opcode.HALT,
+      Opcode.LB, 1,
+      Opcode.VALPR,
+      Opcode.HALT
+    );
+
+    assertFused(module, Opcode.JUMP, Opcode.COMPARE_BRANCH);
+    assertOutput(" 1", module);
+  }
+
+  @Test
+  public void branchesIntoInstructionsAreNotFused() {
+    Module module = assemble(
+      Opcode.LA0, 0, 0, 0, 7,
+      Opcode.BR,
+      Opcode.LB, 9,
+      Opcode.VALPR,
+      Opcode.HALT
+    );
+
+    assertNotFused(module, Opcode.JUMP);
+    assertOutput("Fatal SM20 Exception at 5: Branch target is not an instruction: 7", module);
+  }
+
+  private static void assertModulesMatch(Path directory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.list(directory)) {
+      files = paths.filter(path -> path.toString().endsWith(".mod")).sorted().collect(Collectors.toList());
+    }
+
+    assertTrue("No modules in " + directory, !files.isEmpty());
+
+    for (Path file : files) {
+      assertSameOutput(file.toString(), Module.read(file));
+    }
+  }
+
+  private static void assertSameOutput(String message, Module module) {
+    assertEquals(message, run(module, false), run(module, true));
+  }
+
+  /**
+   * Check what a module prints, and the fault it ends with if any, with and
+   * without compiling its loops.
+   */
+  private static void assertOutput(String expected, Module module) {
+    assertEquals("Interpreted", expected, run(module, false));
+    assertEquals("Compiled", expected, run(module, true));
+  }
+
+  private static void assertFused(Module module, int... opcodes) {
+    for (int opcode : opcodes) {
+      assertTrue("Expected opcode " + opcode, contains(module, opcode));
+    }
+  }
+
+  private static void assertNotFused(Module module, int opcode) {
+    assertFalse("Unexpected opcode " + opcode, contains(module, opcode));
+  }
+
+  /**
+   * Check whether a module's decoded instruction stream contains an opcode.
+   */
+  private static boolean contains(Module module, int opcode) {
+    int[] code = Program.decode(module.getCode(), module.getCode().length).getCode();
+
+    for (int index = 0; index < code.length; index += Program.width(code[index])) {
+      if (code[index] == opcode) return true;
+    }
+
+    return false;
+  }
+
+  private static String run(Module module, boolean isCompilerEnabled) {
+    StringWriter output = new StringWriter();
+    Machine machine = new Machine(module, new StringReader(INPUT), output);
+    machine.setCompilerEnabled(isCompilerEnabled);
+
+    try {
+      machine.run();
+    } catch (SM20Exception exception) {
+      output.write(exception.getMessage());
+    }
+
+    return output.toString();
+  }
+
+  private static Module compile(String source) throws IOException {
+    Parser parser = new Parser(new StringReader(source), new SymbolTableManager(), new ListingGenerator(false));
+    Node root = parser.parse();
+    assertNotNull("Program doesn't compile", root);
+
+    String module = new SM20Generator(parser.getSymbolManager(), root).generateModule();
+    return Module.read(new StringReader(module));
+  }
+
+  /**
+   * Build a module from instruction bytes, padded with HALT to a whole word.
+   */
+  private static Module assemble(int... bytes) {
+    return assemble(new double[0], bytes);
+  }
+
+  /**
+   * Build a module from instruction bytes and the reals that follow them.
+   */
+  private static Module assemble(double[] floats, int... bytes) {
+    byte[] code = new byte[(bytes.length + 7) / 8 * 8];
+    for (int i = 0; i < bytes.length; i++) {
+      code[i] = (byte) bytes[i];
+    }
+
+    return new Module(code, new long[0], floats, new byte[0]);
+  }
+}